@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+
+/**
+ * Synthetic corpora for the benchmarks.
+ * Tokens are drawn with Zipf distributed frequencies, like words in natural
+ * text, from fixed seeds, so that results are comparable across changes and
+ * machines.
+ * 
+ * @author Sebastian Gössl
+ */
+final class Corpora {
+    
+    /**
+     * Not instantiable.
+     */
+    private Corpora() {
+    }
+    
+    
+    
+    /**
+     * Returns the probabilities of a Zipf distribution (exponent 1) over
+     * the given number of ranks.
+     * 
+     * @param n number of ranks
+     * @return probability of every rank
+     */
+    static double[] zipf(int n) {
+        final double[] p = new double[n];
+        double sum = 0;
+        for(int i=0; i<n; i++) {
+            p[i] = 1.0 / (i+1);
+            sum += p[i];
+        }
+        for(int i=0; i<n; i++) {
+            p[i] /= sum;
+        }
+        return p;
+    }
+    
+    /**
+     * Generates a random corpus of the given length, whose tokens are drawn
+     * from a vocabulary of the given size with Zipf distributed frequencies.
+     * 
+     * @param length number of tokens
+     * @param vocabulary number of distinct tokens
+     * @param seed seed for the random number generator
+     * @return random corpus
+     */
+    static int[] corpus(int length, int vocabulary, long seed) {
+        final double[] cumulative = zipf(vocabulary);
+        for(int i=1; i<vocabulary; i++) {
+            cumulative[i] += cumulative[i-1];
+        }
+        
+        final Random rand = new Random(seed);
+        final int[] corpus = new int[length];
+        for(int i=0; i<length; i++) {
+            final int index =
+                    Arrays.binarySearch(cumulative, rand.nextDouble());
+            corpus[i] = Math.min(vocabulary-1,
+                    index < 0 ? -index-1 : index);
+        }
+        return corpus;
+    }
+    
+    /**
+     * Boxes the tokens of the given corpus, sharing one instance per
+     * token, so that benchmarks don't measure boxing.
+     * 
+     * @param corpus corpus
+     * @param vocabulary number of distinct tokens
+     * @return boxed corpus
+     */
+    static Integer[] box(int[] corpus, int vocabulary) {
+        final Integer[] tokens = new Integer[vocabulary];
+        for(int i=0; i<vocabulary; i++) {
+            tokens[i] = i;
+        }
+        final Integer[] boxed = new Integer[corpus.length];
+        for(int i=0; i<corpus.length; i++) {
+            boxed[i] = tokens[corpus[i]];
+        }
+        return boxed;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+
+/**
+ * Benchmarks of the generation from a chain trained on a synthetic corpus,
+ * one operation per generated token:
+ * <ul>
+ * <li><code>MarkovIterator.next</code> and <code>FrozenIterator.next</code>
+ * of one long sequence
+ * <li>The same iterators reset and reused for short sequences
+ * <li><code>FrozenChain.generate</code> of a batch of sequences
+ * </ul>
+ * Run with <code>-prof gc</code> to see the allocations per token; walking
+ * a chain allocates nothing. The pool of <code>FrozenChain.generate</code>
+ * works on other threads, whose allocations aren't attributed to it.
+ * 
+ * @author Sebastian Gössl
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GenerationBenchmark {
+    
+    /** Length of the short sequences. */
+    private static final int LENGTH = 20;
+    /** Number of sequences of a batch. */
+    private static final int COUNT = 1000;
+    /** Length of the sequences of a batch. */
+    private static final int MAX_LENGTH = 100;
+    
+    /** Node of the start token. */
+    private MarkovNode<Integer> start;
+    /** Frozen chain. */
+    private FrozenChain<Integer> frozen;
+    /** Iterator of one long sequence. */
+    private Iterator<Integer> iterator;
+    /** Iterator that gets reset for every short sequence. */
+    private MarkovNode.MarkovIterator<Integer> walker;
+    /** Iterator of one long sequence of the frozen chain. */
+    private Iterator<Integer> frozenIterator;
+    /** Iterator of the frozen chain that gets reset for every short
+     * sequence. */
+    private FrozenChain.FrozenIterator<Integer> frozenWalker;
+    /** Batch to generate into. */
+    private SequenceBatch batch;
+    /** Seed of the next batch. */
+    private long seed = 42;
+    
+    
+    
+    /**
+     * Trains and freezes the chain.
+     */
+    @Setup
+    public void setUp() {
+        final int[] corpus = Corpora.corpus(1000000, 10000, 42);
+        final MarkovChain<Integer> chain = new MarkovChain<>();
+        start = chain.getOrCreateNode(-1);
+        MarkovNode<Integer> current = start;
+        for(int token : corpus) {
+            current = current.apply(chain, token);
+        }
+        //Close the loop, so that every node has a successor
+        current.accept(start);
+        
+        frozen = chain.freeze();
+        walker = new MarkovNode.MarkovIterator<>(start, true);
+        frozenWalker = new FrozenChain.FrozenIterator<>(frozen,
+                frozen.getId(-1), new SplittableRandom(42)::nextInt);
+        batch = new SequenceBatch(COUNT, MAX_LENGTH);
+    }
+    
+    /**
+     * Starts new long sequences.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        iterator = start.iterator();
+        frozenIterator = frozen.iterator(-1, new Random(42));
+    }
+    
+    
+    
+    /**
+     * Generates the next token of a long sequence.
+     * 
+     * @return next token
+     */
+    @Benchmark
+    public Integer markovIterator() {
+        return iterator.next();
+    }
+    
+    /**
+     * Generates a short sequence with a reset iterator.
+     * 
+     * @param blackhole sink of the tokens
+     */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public void markovIteratorReset(Blackhole blackhole) {
+        walker.reset(start, true);
+        for(int i=0; i<LENGTH; i++) {
+            blackhole.consume(walker.next());
+        }
+    }
+    
+    /**
+     * Generates the next token of a long sequence of the frozen chain.
+     * 
+     * @return next token
+     */
+    @Benchmark
+    public Integer frozenIterator() {
+        return frozenIterator.next();
+    }
+    
+    /**
+     * Generates a short sequence of the frozen chain with a reset iterator.
+     * 
+     * @param blackhole sink of the tokens
+     */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public void frozenIteratorReset(Blackhole blackhole) {
+        frozenWalker.reset(frozen.getId(-1));
+        for(int i=0; i<LENGTH; i++) {
+            blackhole.consume(frozenWalker.next());
+        }
+    }
+    
+    /**
+     * Generates a batch of sequences of the frozen chain in parallel.
+     * 
+     * @return first id of the batch
+     */
+    @Benchmark
+    @OperationsPerInvocation(COUNT * MAX_LENGTH)
+    public int frozenGenerate() {
+        frozen.generate(frozen.getId(-1), -1, batch, seed++);
+        return batch.getIds()[0];
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+
+/**
+ * Benchmark of the training of a {@link MarkovChain}, one token per
+ * <code>MarkovNode.apply</code>, by vocabulary size.
+ * 
+ * @author Sebastian Gössl
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Thread)
+public class MarkovNodeBenchmark {
+    
+    /** Number of distinct tokens. */
+    @Param({"1000", "100000", "1000000"})
+    public int vocabulary;
+    
+    /** Tokens to train with, in turn. */
+    private Integer[] corpus;
+    /** Position of the next token. */
+    private int position;
+    /** Chain to train. */
+    private MarkovChain<Integer> chain;
+    /** Node of the last token. */
+    private MarkovNode<Integer> current;
+    
+    
+    
+    /**
+     * Generates the corpus.
+     */
+    @Setup
+    public void setUp() {
+        corpus = Corpora.box(Corpora.corpus(1000000, vocabulary, 42),
+                vocabulary);
+    }
+    
+    /**
+     * Starts with an empty chain, so that every iteration trains the same
+     * amount of new transitions.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        chain = new MarkovChain<>();
+        current = chain.getOrCreateNode(-1);
+        position = 0;
+    }
+    
+    
+    
+    /**
+     * Trains the transition to the next token.
+     * 
+     * @return node of the next token
+     */
+    @Benchmark
+    public MarkovNode<Integer> apply() {
+        current = current.apply(chain, corpus[position]);
+        if(++position == corpus.length) {
+            position = 0;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+
+/**
+ * Benchmarks of the weighted random selection and the training of a single
+ * {@link WeightMap}.
+ * <ul>
+ * <li><code>get</code> by fan-out and distribution of the weights
+ * <li><code>accept</code> by storage, which compares the boxed
+ * <code>HashMap</code> storage with the open addressing tables
+ * </ul>
+ * 
+ * @author Sebastian Gössl
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeightMapBenchmark {
+    
+    /**
+     * Map to select from.
+     */
+    @State(Scope.Thread)
+    public static class Selection {
+        
+        /** Number of keys. */
+        @Param({"10", "1000", "100000"})
+        public int fanOut;
+        /** Distribution of the weights, uniform or zipf. */
+        @Param({"uniform", "zipf"})
+        public String distribution;
+        
+        /** Map to select from. */
+        WeightMap<Integer> map;
+        
+        
+        
+        /**
+         * Fills the map.
+         */
+        @Setup
+        public void setUp() {
+            final boolean skewed = distribution.equals("zipf");
+            final Random rand = new Random(42);
+            final double[] zipf = Corpora.zipf(fanOut);
+            map = new WeightMap<>(42L);
+            for(int i=0; i<fanOut; i++) {
+                map.put(i, skewed ? 1 + (int)(zipf[i] * 1000000)
+                        : 1 + rand.nextInt(10));
+            }
+        }
+    }
+    
+    /**
+     * Map to train and the keys to train it with.
+     */
+    @State(Scope.Thread)
+    public static class Training {
+        
+        /** Storage of the map. */
+        @Param({"HASH_MAP", "TABLE", "LONG_TABLE", "CONCURRENT"})
+        public WeightMap.Storage storage;
+        
+        /** Keys to accept, in turn. */
+        Integer[] keys;
+        /** Position of the next key. */
+        int position;
+        /** Map to train. */
+        WeightMap<Integer> map;
+        
+        
+        
+        /**
+         * Generates the keys.
+         */
+        @Setup
+        public void setUp() {
+            keys = Corpora.box(Corpora.corpus(1000000, 10000, 42), 10000);
+        }
+        
+        /**
+         * Starts with an empty map, so that the weights don't overflow.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            map = new WeightMap<>(storage);
+            position = 0;
+        }
+    }
+    
+    
+    
+    /**
+     * Selects a random key.
+     * 
+     * @param state map to select from
+     * @return selected key
+     */
+    @Benchmark
+    public Integer get(Selection state) {
+        return state.map.get();
+    }
+    
+    /**
+     * Accepts the next key.
+     * The map is part of the state, so the training isn't optimized away.
+     * 
+     * @param state map to train
+     */
+    @Benchmark
+    public void accept(Training state) {
+        state.map.accept(state.keys[state.position]);
+        if(++state.position == state.keys.length) {
+            state.position = 0;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+
+/**
+ * Interns tokens given as byte ranges of a buffer to dense integer ids,
+ * without creating a string or any other object per token.
+ * The bytes of every distinct token are copied once into an internal array
+ * and found again through an open addressing table of ids.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+class ByteTokenTable {
+    
+    /** Bytes of all tokens, one after another. */
+    private byte[] bytes = new byte[1 << 12];
+    /** Number of used bytes. */
+    private int bytesUsed = 0;
+    /** Start of the bytes of every token, indexed by id. */
+    private int[] offsets = new int[64];
+    /** Number of bytes of every token, indexed by id. */
+    private int[] lengths = new int[64];
+    /** Hash of every token, indexed by id. */
+    private int[] hashes = new int[64];
+    /** Number of tokens. */
+    private int size = 0;
+    /** Open addressing table of ids, -1 for empty slots. */
+    private int[] slots = newSlots(128);
+    
+    
+    
+    /**
+     * Returns the number of distinct tokens.
+     * 
+     * @return number of distinct tokens
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the id of the token with the given bytes, assigning a new one
+     * if the token is new.
+     * 
+     * @param buffer buffer containing the token
+     * @param from index of the first byte of the token
+     * @param to index after the last byte of the token
+     * @return id of the token
+     */
+    int intern(ByteBuffer buffer, int from, int to) {
+        int hash = 0x811C9DC5;
+        for(int i=from; i<to; i++) {
+            hash = (hash ^ buffer.get(i)) * 0x01000193;
+        }
+        
+        final int length = to - from;
+        final int mask = slots.length - 1;
+        int slot = hash & mask;
+        for(; slots[slot]>=0; slot=(slot+1)&mask) {
+            final int id = slots[slot];
+            if(hashes[id] == hash && lengths[id] == length
+                    && equals(id, buffer, from)) {
+                return id;
+            }
+        }
+        
+        
+        //New token
+        if(size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size*2);
+            lengths = Arrays.copyOf(lengths, size*2);
+            hashes = Arrays.copyOf(hashes, size*2);
+        }
+        while(bytesUsed + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length*2);
+        }
+        for(int i=0; i<length; i++) {
+            bytes[bytesUsed+i] = buffer.get(from+i);
+        }
+        
+        final int id = size++;
+        offsets[id] = bytesUsed;
+        lengths[id] = length;
+        hashes[id] = hash;
+        bytesUsed += length;
+        slots[slot] = id;
+        
+        if(size > slots.length>>1) {
+            resize();
+        }
+        return id;
+    }
+    
+    /**
+     * Returns the token with the given id, decoded as UTF-8.
+     * 
+     * @param id id of the token
+     * @return token
+     */
+    String getToken(int id) {
+        return new String(bytes, offsets[id], lengths[id],
+                StandardCharsets.UTF_8);
+    }
+    
+    
+    
+    /**
+     * Returns if the token with the given id has the same bytes as the
+     * buffer starting at the given index.
+     * 
+     * @param id id of the token
+     * @param buffer buffer
+     * @param from index of the first byte in the buffer
+     * @return if the bytes are equal
+     */
+    private boolean equals(int id, ByteBuffer buffer, int from) {
+        final int offset = offsets[id];
+        for(int i=0; i<lengths[id]; i++) {
+            if(bytes[offset+i] != buffer.get(from+i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Doubles the size of the id table.
+     */
+    private void resize() {
+        slots = newSlots(slots.length << 1);
+        final int mask = slots.length - 1;
+        for(int id=0; id<size; id++) {
+            int slot = hashes[id] & mask;
+            while(slots[slot] >= 0) {
+                slot = (slot+1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+    
+    /**
+     * Returns a new id table with all slots empty.
+     * 
+     * @param capacity capacity, must be a power of 2
+     * @return empty id table
+     */
+    private static int[] newSlots(int capacity) {
+        final int[] slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        return slots;
+    }
+}
@@ -0,0 +1,688 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+
+/**
+ * Analytics of a {@link FrozenChain} as a sparse transition matrix.
+ * Turns the weights of the edges into transition probabilities and stores
+ * them twice in compressed sparse row form over primitive arrays: once per
+ * node, like the chain, and once transposed, per node with the edges that
+ * lead to it. Each form lets every node compute its own new value from the
+ * values of the others, so that a matrix-vector product runs in parallel on
+ * a fork-join pool without any synchronization. The rows are split into
+ * ranges with about the same number of edges.
+ * 
+ * On these products it computes the stationary distribution (by power
+ * iteration), the distribution after a number of steps from a node and the
+ * expected number of steps until a node is hit. Iterative results report
+ * their number of iterations, their last change and if they converged.
+ * 
+ * Nodes without any edges, like the end node of sentences, keep their
+ * probability, unless a node to restart at is given. Node ids are the ids
+ * of the frozen chain.
+ * 
+ * @param <T> the type of data contained by the nodes
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class ChainAnalytics<T> {
+    
+    /** Number of rows plus edges computed without splitting. */
+    private static final int THRESHOLD = 1 << 14;
+    
+    /** Analyzed chain. */
+    private final FrozenChain<T> chain;
+    /** Pool the products run on. */
+    private final ForkJoinPool pool;
+    /** Number of nodes. */
+    private final int n;
+    /** Start of the edges of every node and the total number of edges at
+     * the end, like in the chain. */
+    private final int[] offsets;
+    /** Transition probabilities of the edges, in the order of the chain. */
+    private final double[] probabilities;
+    /** Start of the incoming edges of every node and the total number of
+     * edges at the end. */
+    private final int[] inOffsets;
+    /** Source node ids of the incoming edges, sorted per node. */
+    private final int[] sources;
+    /** Transition probabilities of the incoming edges. */
+    private final double[] inProbabilities;
+    /** Ids of the nodes without edges. */
+    private final int[] dangling;
+    
+    
+    
+    /**
+     * Constructs new <code>ChainAnalytics</code> of the given chain, which
+     * run on the common fork-join pool.
+     * 
+     * @param chain chain to analyze
+     */
+    public ChainAnalytics(FrozenChain<T> chain) {
+        this(chain, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Constructs new <code>ChainAnalytics</code> of the given chain, which
+     * run on the given fork-join pool.
+     * Exports the edges of the chain into the transition matrix in two
+     * passes over all edges.
+     * 
+     * @param chain chain to analyze
+     * @param pool pool to run on
+     */
+    public ChainAnalytics(FrozenChain<T> chain, ForkJoinPool pool) {
+        this.chain = chain;
+        this.pool = pool;
+        n = chain.size();
+        final int m = chain.getEdgeCount();
+        
+        //Probabilities and number of incoming edges of every node
+        offsets = new int[n+1];
+        probabilities = new double[m];
+        inOffsets = new int[n+1];
+        int danglingCount = 0;
+        for(int i=0; i<n; i++) {
+            offsets[i] = chain.getEdgeStart(i);
+            final double total = chain.getTotalWeights(i);
+            for(int e=chain.getEdgeStart(i); e<chain.getEdgeEnd(i); e++) {
+                probabilities[e] = chain.getEdgeWeight(i, e) / total;
+                inOffsets[chain.getTarget(e) + 1]++;
+            }
+            if(chain.getEdgeStart(i) == chain.getEdgeEnd(i)) {
+                danglingCount++;
+            }
+        }
+        offsets[n] = m;
+        for(int i=0; i<n; i++) {
+            inOffsets[i+1] += inOffsets[i];
+        }
+        
+        //Transpose, the sources of every node end up sorted
+        sources = new int[m];
+        inProbabilities = new double[m];
+        dangling = new int[danglingCount];
+        final int[] fill = Arrays.copyOf(inOffsets, n);
+        int d = 0;
+        for(int i=0; i<n; i++) {
+            for(int e=offsets[i]; e<offsets[i+1]; e++) {
+                final int slot = fill[chain.getTarget(e)]++;
+                sources[slot] = i;
+                inProbabilities[slot] = probabilities[e];
+            }
+            if(offsets[i] == offsets[i+1]) {
+                dangling[d++] = i;
+            }
+        }
+    }
+    
+    
+    
+    /**
+     * Returns the analyzed chain.
+     * 
+     * @return analyzed chain
+     */
+    public FrozenChain<T> getChain() {
+        return chain;
+    }
+    
+    /**
+     * Returns the number of nodes, the number of rows and columns of the
+     * transition matrix.
+     * 
+     * @return number of nodes
+     */
+    public int size() {
+        return n;
+    }
+    
+    /**
+     * Returns the probability to go from one node to another in one step.
+     * 
+     * @param from id of the node to start at
+     * @param to id of the node to go to
+     * @return transition probability
+     */
+    public double getProbability(int from, int to) {
+        if(offsets[from] == offsets[from+1]) {
+            return from == to ? 1 : 0;
+        }
+        
+        final int e = Arrays.binarySearch(sources,
+                inOffsets[to], inOffsets[to+1], from);
+        return e < 0 ? 0 : inProbabilities[e];
+    }
+    
+    
+    
+    /**
+     * Multiplies the given row vector with the transition matrix.
+     * If the vector holds the probabilities to be at each node, the result
+     * holds the probabilities to be at each node one step later.
+     * 
+     * @param x vector to multiply, one value per node
+     * @param y vector to write the product to, one value per node
+     * @throws IllegalArgumentException if a vector doesn't have one value
+     * per node
+     */
+    public void multiply(double[] x, double[] y) {
+        if(x.length != n || y.length != n) {
+            throw new IllegalArgumentException("Length is not " + n);
+        }
+        
+        step(x, y, -1);
+    }
+    
+    /**
+     * Computes the stationary distribution by power iteration: starting
+     * with the uniform distribution, it is multiplied with the transition
+     * matrix until the sum of the changes of all probabilities is less than
+     * the given tolerance.
+     * The probability of nodes without edges either stays at them, so that
+     * it gathers there, or restarts at the given node, like a generator that
+     * starts the next sequence. Chains that alternate between groups of
+     * nodes (periodic chains) don't converge.
+     * 
+     * @param restart id of the node to go to from nodes without edges, -1
+     * to stay at them
+     * @param tolerance sum of the changes below which the iteration stops
+     * @param maxIterations number of iterations after which the iteration
+     * stops anyway
+     * @return stationary distribution, one probability per node
+     * @throws IllegalArgumentException if the restart node doesn't exist, the
+     * tolerance or the number of iterations is negative
+     * @throws IllegalStateException if the chain has no nodes
+     */
+    public Result stationaryDistribution(int restart, double tolerance,
+            int maxIterations) {
+        if(restart < -1 || restart >= n) {
+            throw new IllegalArgumentException("No node " + restart);
+        }
+        checkIteration(tolerance, maxIterations);
+        
+        final long begin = System.nanoTime();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        Arrays.fill(x, 1.0 / n);
+        int iterations = 0;
+        double residual = Double.POSITIVE_INFINITY;
+        while(iterations < maxIterations && !(residual < tolerance)) {
+            residual = step(x, y, restart);
+            final double[] swap = x;
+            x = y;
+            y = swap;
+            iterations++;
+        }
+        
+        return new Result(x, iterations, residual, residual < tolerance,
+                System.nanoTime() - begin);
+    }
+    
+    /**
+     * Computes the probabilities to be at each node after the given number
+     * of steps from the given node, i.e. the row of the node in the given
+     * power of the transition matrix.
+     * 
+     * @param start id of the node to start at
+     * @param steps number of steps
+     * @return probabilities after the steps, one per node
+     * @throws IllegalArgumentException if the start node doesn't exist or
+     * the number of steps is negative
+     */
+    public Result distributionAfter(int start, int steps) {
+        if(start < 0 || start >= n) {
+            throw new IllegalArgumentException("No node " + start);
+        }
+        if(steps < 0) {
+            throw new IllegalArgumentException("Steps less than 0");
+        }
+        
+        final long begin = System.nanoTime();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        x[start] = 1;
+        double residual = 0;
+        for(int i=0; i<steps; i++) {
+            residual = step(x, y, -1);
+            final double[] swap = x;
+            x = y;
+            y = swap;
+        }
+        
+        return new Result(x, steps, residual, true,
+                System.nanoTime() - begin);
+    }
+    
+    /**
+     * Computes the expected number of steps from every node until the given
+     * node is hit for the first time.
+     * Nodes from which the target may never be hit, because they can reach
+     * a node that can't reach the target, have an infinite expected number
+     * of steps. For all others the equations
+     * <code>h(i) = 1 + sum over j of p(i, j) * h(j)</code> are iterated
+     * from 0, in parallel, until the largest relative change is less than
+     * the given tolerance.
+     * 
+     * @param target id of the node to hit, e.g. the end node
+     * @param tolerance largest relative change below which the iteration
+     * stops
+     * @param maxIterations number of iterations after which the iteration
+     * stops anyway
+     * @return expected number of steps, one per node, 0 for the target and
+     * infinity if it may never be hit
+     * @throws IllegalArgumentException if the target doesn't exist, the
+     * tolerance or the number of iterations is negative
+     */
+    public Result hittingTimes(int target, double tolerance,
+            int maxIterations) {
+        if(target < 0 || target >= n) {
+            throw new IllegalArgumentException("No node " + target);
+        }
+        checkIteration(tolerance, maxIterations);
+        
+        final long begin = System.nanoTime();
+        final boolean[] infinite = neverHitting(target);
+        double[] h = new double[n];
+        double[] next = new double[n];
+        int iterations = 0;
+        double residual = Double.POSITIVE_INFINITY;
+        while(iterations < maxIterations && !(residual < tolerance)) {
+            final double[] x = h;
+            final double[] y = next;
+            residual = run(offsets, (from, to) -> {
+                double change = 0;
+                for(int i=from; i<to; i++) {
+                    if(i == target || infinite[i]) {
+                        continue;
+                    }
+                    
+                    double sum = 1;
+                    for(int e=offsets[i]; e<offsets[i+1]; e++) {
+                        sum += probabilities[e] * x[chain.getTarget(e)];
+                    }
+                    y[i] = sum;
+                    change = Math.max(change, (sum - x[i]) / sum);
+                }
+                return change;
+            }, true);
+            h = y;
+            next = x;
+            iterations++;
+        }
+        
+        for(int i=0; i<n; i++) {
+            if(infinite[i]) {
+                h[i] = Double.POSITIVE_INFINITY;
+            }
+        }
+        return new Result(h, iterations, residual, residual < tolerance,
+                System.nanoTime() - begin);
+    }
+    
+    
+    
+    /**
+     * Multiplies the given row vector with the transition matrix.
+     * 
+     * @param x vector to multiply
+     * @param y vector to write the product to
+     * @param restart id of the node the probability of nodes without edges
+     * goes to, -1 to stay at them
+     * @return sum of the absolute differences between the vectors
+     */
+    private double step(double[] x, double[] y, int restart) {
+        double danglingMass = 0;
+        if(restart >= 0) {
+            for(int d : dangling) {
+                danglingMass += x[d];
+            }
+        }
+        final double restartMass = danglingMass;
+        
+        return run(inOffsets, (from, to) -> {
+            double change = 0;
+            for(int j=from; j<to; j++) {
+                double sum = 0;
+                for(int e=inOffsets[j]; e<inOffsets[j+1]; e++) {
+                    sum += x[sources[e]] * inProbabilities[e];
+                }
+                if(j == restart) {
+                    sum += restartMass;
+                } else if(restart < 0 && offsets[j] == offsets[j+1]) {
+                    sum += x[j];
+                }
+                y[j] = sum;
+                change += Math.abs(sum - x[j]);
+            }
+            return change;
+        }, false);
+    }
+    
+    /**
+     * Returns which nodes may never hit the given target: the ones that
+     * can't reach it and the ones that can reach those without passing the
+     * target. Searches backwards over the incoming edges.
+     * 
+     * @param target id of the node to hit
+     * @return if each node may never hit the target
+     */
+    private boolean[] neverHitting(int target) {
+        final int[] queue = new int[n];
+        
+        //Nodes that can reach the target
+        final boolean[] reaching = new boolean[n];
+        reaching[target] = true;
+        queue[0] = target;
+        int tail = 1;
+        for(int head=0; head<tail; head++) {
+            final int j = queue[head];
+            for(int e=inOffsets[j]; e<inOffsets[j+1]; e++) {
+                if(!reaching[sources[e]]) {
+                    reaching[sources[e]] = true;
+                    queue[tail++] = sources[e];
+                }
+            }
+        }
+        
+        //Nodes that can reach those that can't
+        final boolean[] infinite = new boolean[n];
+        tail = 0;
+        for(int i=0; i<n; i++) {
+            if(!reaching[i]) {
+                infinite[i] = true;
+                queue[tail++] = i;
+            }
+        }
+        for(int head=0; head<tail; head++) {
+            final int j = queue[head];
+            for(int e=inOffsets[j]; e<inOffsets[j+1]; e++) {
+                final int i = sources[e];
+                if(i != target && !infinite[i]) {
+                    infinite[i] = true;
+                    queue[tail++] = i;
+                }
+            }
+        }
+        return infinite;
+    }
+    
+    /**
+     * Checks the parameters of an iteration.
+     * 
+     * @param tolerance change below which the iteration stops
+     * @param maxIterations number of iterations after which the iteration
+     * stops anyway
+     * @throws IllegalArgumentException if a parameter is negative
+     * @throws IllegalStateException if the chain has no nodes
+     */
+    private void checkIteration(double tolerance, int maxIterations) {
+        if(!(tolerance >= 0)) {
+            throw new IllegalArgumentException("Tolerance less than 0");
+        }
+        if(maxIterations < 0) {
+            throw new IllegalArgumentException("Iterations less than 0");
+        }
+        if(n == 0) {
+            throw new IllegalStateException("Chain is empty");
+        }
+    }
+    
+    /**
+     * Runs the given kernel over all rows on the pool and combines the
+     * changes it returns.
+     * 
+     * @param rowOffsets start of the edges of every row
+     * @param kernel kernel to run
+     * @param max if the largest change should be returned instead of the sum
+     * @return combined change
+     */
+    private double run(int[] rowOffsets, RowKernel kernel, boolean max) {
+        return pool.invoke(new Rows(rowOffsets, kernel, max, 0, n));
+    }
+    
+    
+    
+    /**
+     * Result of an analysis.
+     * Holds one value per node and how the values were computed.
+     */
+    public static class Result {
+        
+        /** One value per node. */
+        private final double[] values;
+        /** Number of iterations or steps. */
+        private final int iterations;
+        /** Change of the last iteration. */
+        private final double residual;
+        /** If the change fell below the tolerance. */
+        private final boolean converged;
+        /** Time the computation took. */
+        private final long nanos;
+        
+        
+        
+        /**
+         * Constructs a new <code>Result</code>.
+         * 
+         * @param values one value per node, not copied
+         * @param iterations number of iterations or steps
+         * @param residual change of the last iteration
+         * @param converged if the change fell below the tolerance
+         * @param nanos time the computation took in nanoseconds
+         */
+        Result(double[] values, int iterations, double residual,
+                boolean converged, long nanos) {
+            this.values = values;
+            this.iterations = iterations;
+            this.residual = residual;
+            this.converged = converged;
+            this.nanos = nanos;
+        }
+        
+        
+        
+        /**
+         * Returns the values, one per node id.
+         * The array is not copied.
+         * 
+         * @return values
+         */
+        public double[] getValues() {
+            return values;
+        }
+        
+        /**
+         * Returns the value of the given node.
+         * 
+         * @param id id of the node
+         * @return value of the node
+         */
+        public double getValue(int id) {
+            return values[id];
+        }
+        
+        /**
+         * Returns the number of iterations or steps.
+         * 
+         * @return number of iterations
+         */
+        public int getIterations() {
+            return iterations;
+        }
+        
+        /**
+         * Returns the change of the values in the last iteration.
+         * 
+         * @return last change
+         */
+        public double getResidual() {
+            return residual;
+        }
+        
+        /**
+         * Returns if the change fell below the tolerance before the maximum
+         * number of iterations.
+         * 
+         * @return if the iteration converged
+         */
+        public boolean isConverged() {
+            return converged;
+        }
+        
+        /**
+         * Returns the time the computation took.
+         * 
+         * @return time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("%d iterations, residual %.3e, %s, %.1f ms",
+                    iterations, residual,
+                    converged ? "converged" : "not converged", nanos / 1e6);
+        }
+    }
+    
+    
+    
+    /**
+     * Computation over a range of rows.
+     */
+    private interface RowKernel {
+        
+        /**
+         * Computes the given range of rows.
+         * 
+         * @param from first row (including)
+         * @param to last row (excluding)
+         * @return change of the values of the rows, combined by sum or
+         * maximum
+         */
+        double compute(int from, int to);
+    }
+    
+    /**
+     * Runs a kernel over a range of rows, split up into halves with about
+     * the same number of edges until a range is small enough.
+     */
+    private static class Rows extends RecursiveTask<Double> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        /** Start of the edges of every row. */
+        private final int[] rowOffsets;
+        /** Kernel to run. */
+        private final RowKernel kernel;
+        /** If the changes are combined by maximum instead of sum. */
+        private final boolean max;
+        /** First row (including). */
+        private final int from;
+        /** Last row (excluding). */
+        private final int to;
+        
+        
+        
+        /**
+         * Constructs new <code>Rows</code>.
+         * 
+         * @param rowOffsets start of the edges of every row
+         * @param kernel kernel to run
+         * @param max if the changes are combined by maximum instead of sum
+         * @param from first row (including)
+         * @param to last row (excluding)
+         */
+        Rows(int[] rowOffsets, RowKernel kernel, boolean max, int from,
+                int to) {
+            this.rowOffsets = rowOffsets;
+            this.kernel = kernel;
+            this.max = max;
+            this.from = from;
+            this.to = to;
+        }
+        
+        
+        
+        /**
+         * Runs the kernel over the range of rows.
+         * 
+         * @return combined change
+         */
+        @Override
+        protected Double compute() {
+            final long work = work(to) - work(from);
+            if(work <= THRESHOLD || to - from == 1) {
+                return kernel.compute(from, to);
+            }
+            
+            //First row after which half of the work is done
+            final long half = work(from) + work/2;
+            int low = from + 1;
+            int high = to - 1;
+            while(low < high) {
+                final int mid = (low + high) >>> 1;
+                if(work(mid) < half) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            
+            final Rows right = new Rows(rowOffsets, kernel, max, low, to);
+            right.fork();
+            final double left =
+                    new Rows(rowOffsets, kernel, max, from, low).compute();
+            final double other = right.join();
+            return max ? Math.max(left, other) : left + other;
+        }
+        
+        /**
+         * Returns the work of all rows before the given one: their number
+         * plus the number of their edges.
+         * 
+         * @param row row
+         * @return work before the row
+         */
+        private long work(int row) {
+            return (long)row + rowOffsets[row];
+        }
+    }
+}
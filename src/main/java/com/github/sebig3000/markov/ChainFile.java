@@ -0,0 +1,517 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Function;
+
+
+
+/**
+ * Binary file format for trained chains.
+ * Writes and reads {@link FrozenChain}s through NIO channels. A
+ * {@link MarkovChain} is saved by freezing it and can be restored from the
+ * loaded chain with {@link FrozenChain#thaw()}.
+ * 
+ * All integers are unsigned variable-length integers (7 bits per byte,
+ * least significant group first, highest bit set if more bytes follow):
+ * <pre>
+ * magic "MRKV", version
+ * node count, edge count
+ * token table: per node, token length + 1 (0 for null) and token bytes
+ * edge list:   per node, edge count and per edge
+ *              target id minus the previous target id of the node, weight
+ * </pre>
+ * Loading fills the arrays of the frozen chain directly, without creating
+ * any nodes or maps. As the integers have variable lengths, a file can't be
+ * used without reading it.
+ * Every count is checked against the remaining input, if the channel knows
+ * its size, before anything is allocated for it; otherwise the arrays grow
+ * while they are read. Truncated or corrupted files are rejected with an
+ * {@link IOException}, as are negative or zero weights, sums of weights of a
+ * node that overflow, repeated targets of a node and repeated tokens.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public final class ChainFile {
+    
+    /** File signature. */
+    private static final int MAGIC = 0x4D524B56;
+    /** Version of the format. */
+    private static final int VERSION = 1;
+    /** Size of the I/O buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    
+    
+    /**
+     * Don't let anyone instantiate this class.
+     */
+    private ChainFile() {
+    }
+    
+    
+    
+    /**
+     * Writes the given chain of strings into the file at the given path,
+     * encoding the tokens as UTF-8.
+     * 
+     * @param chain chain to write
+     * @param path path of the file
+     * @throws IOException if writing fails
+     */
+    public static void write(FrozenChain<String> chain, Path path)
+            throws IOException {
+        try(FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(chain, channel,
+                    token -> token.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+    
+    /**
+     * Reads a chain of strings from the file at the given path, decoding
+     * the tokens as UTF-8.
+     * 
+     * @param path path of the file
+     * @return read chain
+     * @throws IOException if reading fails or the file is no valid chain
+     * file
+     */
+    public static FrozenChain<String> read(Path path) throws IOException {
+        try(FileChannel channel =
+                FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel,
+                    bytes -> new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+    
+    /**
+     * Writes the given chain into the given channel.
+     * The channel is not closed.
+     * 
+     * @param <T> the type of data contained by the nodes
+     * @param chain chain to write
+     * @param channel channel to write into
+     * @param encoder encodes a token into bytes
+     * @throws IOException if writing fails
+     */
+    public static <T> void write(FrozenChain<T> chain,
+            WritableByteChannel channel, Function<? super T, byte[]> encoder)
+            throws IOException {
+        final Output out = new Output(channel);
+        
+        out.writeInt(MAGIC);
+        out.writeVarint(VERSION);
+        out.writeVarint(chain.size());
+        out.writeVarint(chain.getEdgeCount());
+        
+        for(int i=0; i<chain.size(); i++) {
+            final T token = chain.getData(i);
+            if(token == null) {
+                out.writeVarint(0);
+            } else {
+                final byte[] bytes = encoder.apply(token);
+                out.writeVarint(bytes.length + 1);
+                out.writeBytes(bytes);
+            }
+        }
+        
+        for(int i=0; i<chain.size(); i++) {
+            out.writeVarint(chain.getEdgeEnd(i) - chain.getEdgeStart(i));
+            int previous = 0;
+            for(int e=chain.getEdgeStart(i); e<chain.getEdgeEnd(i); e++) {
+                out.writeVarint(chain.getTarget(e) - previous);
+                out.writeVarint(chain.getEdgeWeight(i, e));
+                previous = chain.getTarget(e);
+            }
+        }
+        
+        out.flush();
+    }
+    
+    /**
+     * Reads a chain from the given channel.
+     * The channel is not closed.
+     * 
+     * @param <T> the type of data contained by the nodes
+     * @param channel channel to read from
+     * @param decoder decodes a token from bytes
+     * @return read chain
+     * @throws IOException if reading fails or the channel contains no valid
+     * chain
+     */
+    public static <T> FrozenChain<T> read(ReadableByteChannel channel,
+            Function<byte[], ? extends T> decoder) throws IOException {
+        final Input in = new Input(channel);
+        
+        if(in.readInt() != MAGIC) {
+            throw new IOException("Not a chain file");
+        }
+        final int version = in.readVarint();
+        if(version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+        final int nodes = in.readVarint();
+        final int edges = in.readVarint();
+        //Every node takes at least two bytes and every edge as well
+        if(nodes < 0 || edges < 0 || nodes == Integer.MAX_VALUE
+                || 2L*nodes + 2L*edges > in.remaining()) {
+            throw corrupt("counts of " + nodes + " nodes and " + edges
+                    + " edges");
+        }
+        
+        Object[] tokens = new Object[in.capacity(nodes)];
+        for(int i=0; i<nodes; i++) {
+            final int length = in.readVarint();
+            if(length < 0 || length - 1 > in.remaining()) {
+                throw corrupt("token length " + length);
+            }
+            if(i == tokens.length) {
+                tokens = Arrays.copyOf(tokens, grow(i, nodes));
+            }
+            tokens[i] = length == 0 ? null
+                    : decoder.apply(in.readBytes(length - 1));
+        }
+        
+        int[] offsets = new int[in.capacity(nodes + 1)];
+        int[] targets = new int[in.capacity(edges)];
+        int[] cumulativeWeights = new int[targets.length];
+        int e = 0;
+        for(int i=0; i<nodes; i++) {
+            if(i == offsets.length) {
+                offsets = Arrays.copyOf(offsets, grow(i, nodes + 1));
+            }
+            offsets[i] = e;
+            final int degree = in.readVarint();
+            if(degree < 0 || degree > edges - e) {
+                throw corrupt("edge count " + degree);
+            }
+            int target = 0;
+            int sum = 0;
+            for(int j=0; j<degree; j++) {
+                //Targets are ascending, so every target is there only once
+                final int delta = in.readVarint();
+                if(delta < 0 || (j > 0 && delta == 0)
+                        || delta >= nodes - target) {
+                    throw corrupt("target of node " + i);
+                }
+                target += delta;
+                final int weight = in.readVarint();
+                if(weight <= 0 || weight > Integer.MAX_VALUE - sum) {
+                    throw corrupt("weight of node " + i);
+                }
+                sum += weight;
+                
+                if(e == targets.length) {
+                    targets = Arrays.copyOf(targets, grow(e, edges));
+                    cumulativeWeights = Arrays.copyOf(cumulativeWeights,
+                            targets.length);
+                }
+                targets[e] = target;
+                cumulativeWeights[e] = sum;
+                e++;
+            }
+        }
+        if(nodes == offsets.length) {
+            offsets = Arrays.copyOf(offsets, nodes + 1);
+        }
+        offsets[nodes] = e;
+        if(e != edges) {
+            throw corrupt("edge count " + edges);
+        }
+        
+        try {
+            return new FrozenChain<>(tokens, offsets, targets,
+                    cumulativeWeights);
+        } catch(IllegalArgumentException ex) {
+            //Two nodes with the same token
+            throw corrupt(ex.getMessage());
+        }
+    }
+    
+    /**
+     * Returns the exception for a corrupt chain file.
+     * 
+     * @param detail what is corrupt
+     * @return exception to throw
+     */
+    private static IOException corrupt(String detail) {
+        return new IOException("Corrupt chain file: " + detail);
+    }
+    
+    /**
+     * Returns the new length of an array that is full, doubling it up to
+     * the expected number of elements.
+     * 
+     * @param length current length
+     * @param count expected number of elements
+     * @return new length
+     */
+    private static int grow(int length, int count) {
+        return (int)Math.min(count, Math.max(16, 2L*length));
+    }
+    
+    
+    
+    /**
+     * Buffered writer of variable-length integers into a channel.
+     */
+    private static class Output {
+        
+        /** Channel to write into. */
+        private final WritableByteChannel channel;
+        /** Buffer. */
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        
+        
+        
+        /**
+         * Constructs a new <code>Output</code>.
+         * 
+         * @param channel channel to write into
+         */
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+        
+        
+        
+        /**
+         * Writes a fixed-length integer.
+         * 
+         * @param value value
+         * @throws IOException if writing fails
+         */
+        void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+        
+        /**
+         * Writes an unsigned variable-length integer.
+         * 
+         * @param value value
+         * @throws IOException if writing fails
+         */
+        void writeVarint(int value) throws IOException {
+            ensure(5);
+            while((value & ~0x7F) != 0) {
+                buffer.put((byte)(value & 0x7F | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte)value);
+        }
+        
+        /**
+         * Writes the given bytes.
+         * 
+         * @param bytes bytes
+         * @throws IOException if writing fails
+         */
+        void writeBytes(byte[] bytes) throws IOException {
+            int written = 0;
+            while(written < bytes.length) {
+                ensure(1);
+                final int length =
+                        Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+            }
+        }
+        
+        /**
+         * Writes the buffer into the channel if it has less than the given
+         * number of bytes left.
+         * 
+         * @param bytes number of bytes needed
+         * @throws IOException if writing fails
+         */
+        private void ensure(int bytes) throws IOException {
+            if(buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+        
+        /**
+         * Writes the buffer into the channel.
+         * 
+         * @throws IOException if writing fails
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+    
+    /**
+     * Buffered reader of variable-length integers from a channel.
+     */
+    private static class Input {
+        
+        /** Channel to read from. */
+        private final ReadableByteChannel channel;
+        /** Buffer. */
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        
+        
+        
+        /**
+         * Constructs a new <code>Input</code>.
+         * 
+         * @param channel channel to read from
+         */
+        Input(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+        
+        
+        
+        /**
+         * Reads a fixed-length integer.
+         * 
+         * @return value
+         * @throws IOException if reading fails
+         */
+        int readInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+        
+        /**
+         * Reads an unsigned variable-length integer.
+         * 
+         * @return value
+         * @throws IOException if reading fails or the integer is too long
+         */
+        int readVarint() throws IOException {
+            int value = 0;
+            for(int shift=0; shift<32; shift+=7) {
+                ensure(1);
+                final byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if(b >= 0) {
+                    return value;
+                }
+            }
+            throw corrupt("integer too long");
+        }
+        
+        /**
+         * Reads the given number of bytes.
+         * 
+         * @param length number of bytes
+         * @return bytes
+         * @throws IOException if reading fails
+         */
+        byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[capacity(length)];
+            int read = 0;
+            while(read < length) {
+                ensure(1);
+                if(read == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, grow(read, length));
+                }
+                final int n = Math.min(buffer.remaining(),
+                        bytes.length - read);
+                buffer.get(bytes, read, n);
+                read += n;
+            }
+            return bytes;
+        }
+        
+        /**
+         * Returns the number of bytes left to read, if the channel knows
+         * its size.
+         * 
+         * @return number of bytes left, or Long.MAX_VALUE if unknown
+         * @throws IOException if the size of the channel can't be read
+         */
+        long remaining() throws IOException {
+            if(!(channel instanceof SeekableByteChannel)) {
+                return Long.MAX_VALUE;
+            }
+            
+            final SeekableByteChannel seekable = (SeekableByteChannel)channel;
+            return buffer.remaining()
+                    + Math.max(seekable.size() - seekable.position(), 0);
+        }
+        
+        /**
+         * Returns the length to allocate for an array of the given number
+         * of elements, whose count has been checked against the remaining
+         * input if possible. Otherwise the array has to grow while it is
+         * read.
+         * 
+         * @param count number of elements
+         * @return length to allocate
+         * @throws IOException if the size of the channel can't be read
+         */
+        int capacity(int count) throws IOException {
+            return remaining() == Long.MAX_VALUE ?
+                    Math.min(count, BUFFER_SIZE) : count;
+        }
+        
+        /**
+         * Reads from the channel until the buffer has at least the given
+         * number of bytes left.
+         * 
+         * @param bytes number of bytes needed
+         * @throws IOException if reading fails or the channel ends
+         */
+        private void ensure(int bytes) throws IOException {
+            if(buffer.remaining() >= bytes) {
+                return;
+            }
+            
+            buffer.compact();
+            while(buffer.position() < bytes) {
+                if(channel.read(buffer) < 0) {
+                    throw new EOFException(
+                            "Corrupt chain file: unexpected end");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * {@link MetricsListener} that counts all events.
+ * The counters are striped, so that many threads can count at once without
+ * contention, and can be read at any time while training or generating.
+ * The numbers of entries examined per selection are counted in a histogram
+ * with power-of-two buckets.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class ChainMetrics implements MetricsListener {
+    
+    /** Number of buckets of the histograms, enough for every int. */
+    static final int BUCKETS = 33;
+    
+    /** Number of trained transitions. */
+    private final LongAdder trained = new LongAdder();
+    /** Number of created nodes. */
+    private final LongAdder nodesCreated = new LongAdder();
+    /** Number of selections. */
+    private final LongAdder samples = new LongAdder();
+    /** Number of entries examined by all selections. */
+    private final LongAdder scanned = new LongAdder();
+    /** Number of selections by the bucket of entries examined. */
+    private final LongAdder[] scanHistogram = new LongAdder[BUCKETS];
+    /** Number of started sequences. */
+    private final LongAdder sequences = new LongAdder();
+    
+    
+    
+    /**
+     * Constructs a new <code>ChainMetrics</code> with all counters at 0.
+     */
+    public ChainMetrics() {
+        for(int i=0; i<BUCKETS; i++) {
+            scanHistogram[i] = new LongAdder();
+        }
+    }
+    
+    
+    
+    /**
+     * Returns the histogram bucket of the given value.
+     * Bucket 0 holds the value 0 and bucket i the values from (including)
+     * 2^(i-1) to (excluding) 2^i.
+     * 
+     * @param value value, not negative
+     * @return bucket of the value
+     */
+    static int bucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+    
+    
+    
+    /**
+     * Returns the number of trained transitions.
+     * 
+     * @return number of trained transitions
+     */
+    public long getTrained() {
+        return trained.sum();
+    }
+    
+    /**
+     * Returns the number of created nodes.
+     * 
+     * @return number of created nodes
+     */
+    public long getNodesCreated() {
+        return nodesCreated.sum();
+    }
+    
+    /**
+     * Returns the number of random selections.
+     * 
+     * @return number of selections
+     */
+    public long getSamples() {
+        return samples.sum();
+    }
+    
+    /**
+     * Returns the mean number of entries examined per selection.
+     * 
+     * @return mean number of examined entries, 0 without selections
+     */
+    public double getMeanScanned() {
+        final long count = samples.sum();
+        return count == 0 ? 0 : (double)scanned.sum() / count;
+    }
+    
+    /**
+     * Returns the numbers of selections by the number of entries they
+     * examined.
+     * Element 0 counts the selections that examined no entries and element
+     * i the ones that examined from (including) 2^(i-1) to (excluding) 2^i
+     * entries.
+     * 
+     * @return histogram of the examined entries per selection
+     */
+    public long[] getScanHistogram() {
+        final long[] histogram = new long[BUCKETS];
+        for(int i=0; i<BUCKETS; i++) {
+            histogram[i] = scanHistogram[i].sum();
+        }
+        return histogram;
+    }
+    
+    /**
+     * Returns the number of started sequences.
+     * 
+     * @return number of started sequences
+     */
+    public long getSequences() {
+        return sequences.sum();
+    }
+    
+    /**
+     * Resets all counters to 0.
+     */
+    public void reset() {
+        trained.reset();
+        nodesCreated.reset();
+        samples.reset();
+        scanned.reset();
+        for(LongAdder bucket : scanHistogram) {
+            bucket.reset();
+        }
+        sequences.reset();
+    }
+    
+    
+    
+    //MetricsListener
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void trained() {
+        trained.increment();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void nodeCreated() {
+        nodesCreated.increment();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sampled(int scanned) {
+        samples.increment();
+        this.scanned.add(scanned);
+        scanHistogram[bucket(scanned)].increment();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sequenceStarted() {
+        sequences.increment();
+    }
+    
+    
+    
+    //Object
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("trained: %d, nodes created: %d, samples: %d, "
+                + "mean scanned: %.1f, sequences: %d", getTrained(),
+                getNodesCreated(), getSamples(), getMeanScanned(),
+                getSequences());
+    }
+}
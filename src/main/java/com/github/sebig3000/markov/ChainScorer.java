@@ -0,0 +1,378 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+
+/**
+ * Scores sequences by their log-likelihood under a {@link FrozenChain}, for
+ * example to detect unusual sequences of events.
+ * The score of a sequence is the sum of the natural logarithms of the
+ * probabilities of its transitions, from every node to the next one.
+ * 
+ * With additive smoothing of <code>alpha</code>, every node is treated as if
+ * it had an additional transition of weight <code>alpha</code> to every node
+ * of the chain, so that unseen transitions are unlikely instead of
+ * impossible:
+ * <code>P(to | from) = (weight + alpha) / (total + alpha * size)</code>.
+ * Ids outside of the chain (like the -1 of {@link FrozenChain#getId(Object)}
+ * for unknown data) are unseen as well; the transitions from them have the
+ * probability <code>1 / size</code>. Without smoothing, unseen transitions
+ * score negative infinity.
+ * 
+ * The log-probabilities of all edges and of the unseen transitions of every
+ * node are computed once at construction, so that scoring a transition is a
+ * binary search over the edges of a node and an array lookup, without any
+ * boxing or lookup of data. Batches of sequences are scored in parallel on
+ * a fork-join pool.
+ * 
+ * @param <T> the type of data contained by the nodes
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class ChainScorer<T> {
+    
+    /** Scored chain. */
+    private final FrozenChain<T> chain;
+    /** Additive smoothing. */
+    private final double smoothing;
+    /** Log-probabilities of the edges, in the order of the chain. */
+    private final double[] logProbabilities;
+    /** Log-probabilities of the unseen transitions of every node. */
+    private final double[] logUnseen;
+    /** Log-probability of the transitions from ids outside of the chain. */
+    private final double logUnknown;
+    
+    
+    
+    /**
+     * Constructs a new <code>ChainScorer</code> over the given chain without
+     * smoothing.
+     * 
+     * @param chain chain to score with
+     */
+    public ChainScorer(FrozenChain<T> chain) {
+        this(chain, 0);
+    }
+    
+    /**
+     * Constructs a new <code>ChainScorer</code> over the given chain with
+     * the given additive smoothing.
+     * 
+     * @param chain chain to score with
+     * @param smoothing weight added to every transition, 0 for none
+     * @throws IllegalArgumentException if the smoothing is negative or not a
+     * number
+     */
+    public ChainScorer(FrozenChain<T> chain, double smoothing) {
+        if(!(smoothing >= 0)) {
+            throw new IllegalArgumentException("Smoothing less than 0");
+        }
+        
+        this.chain = chain;
+        this.smoothing = smoothing;
+        final double size = chain.size();
+        logProbabilities = new double[chain.getEdgeCount()];
+        logUnseen = new double[chain.size()];
+        for(int i=0; i<chain.size(); i++) {
+            final double logTotal =
+                    Math.log(chain.getTotalWeights(i) + smoothing * size);
+            for(int e=chain.getEdgeStart(i); e<chain.getEdgeEnd(i); e++) {
+                logProbabilities[e] = Math.log(
+                        chain.getEdgeWeight(i, e) + smoothing) - logTotal;
+            }
+            logUnseen[i] = smoothing > 0 ?
+                    Math.log(smoothing) - logTotal : Double.NEGATIVE_INFINITY;
+        }
+        logUnknown = smoothing > 0 ?
+                -Math.log(size) : Double.NEGATIVE_INFINITY;
+    }
+    
+    
+    
+    /**
+     * Returns the scored chain.
+     * 
+     * @return scored chain
+     */
+    public FrozenChain<T> getChain() {
+        return chain;
+    }
+    
+    /**
+     * Returns the additive smoothing.
+     * 
+     * @return weight added to every transition
+     */
+    public double getSmoothing() {
+        return smoothing;
+    }
+    
+    /**
+     * Returns the log-probability of the transition between the given
+     * nodes.
+     * 
+     * @param from id of the node the transition starts at
+     * @param to id of the node the transition ends at
+     * @return natural logarithm of the probability of the transition
+     */
+    public double score(int from, int to) {
+        if(from < 0 || from >= logUnseen.length) {
+            return logUnknown;
+        }
+        final int e = to < 0 ? -1 : chain.getEdge(from, to);
+        return e < 0 ? logUnseen[from] : logProbabilities[e];
+    }
+    
+    /**
+     * Returns the log-likelihood of the given sequence of node ids.
+     * 
+     * @param ids ids of the nodes
+     * @return sum of the log-probabilities of the transitions, 0 for less
+     * than two nodes
+     */
+    public double score(int[] ids) {
+        return score(ids, 0, ids.length);
+    }
+    
+    /**
+     * Returns the log-likelihood of the given range of node ids.
+     * 
+     * @param ids ids of the nodes
+     * @param from index of the first node (including)
+     * @param to index of the last node (excluding)
+     * @return sum of the log-probabilities of the transitions, 0 for less
+     * than two nodes
+     */
+    public double score(int[] ids, int from, int to) {
+        double score = 0;
+        for(int i=from+1; i<to; i++) {
+            score += score(ids[i-1], ids[i]);
+        }
+        return score;
+    }
+    
+    /**
+     * Returns the log-likelihood of the given sequence of data.
+     * Looks up the id of every element once; data without a node is
+     * unseen.
+     * 
+     * @param sequence data of the nodes
+     * @return sum of the log-probabilities of the transitions, 0 for less
+     * than two nodes
+     */
+    public double score(List<? extends T> sequence) {
+        double score = 0;
+        int previous = -1;
+        for(int i=0; i<sequence.size(); i++) {
+            final int id = chain.getId(sequence.get(i));
+            if(i > 0) {
+                score += score(previous, id);
+            }
+            previous = id;
+        }
+        return score;
+    }
+    
+    
+    
+    /**
+     * Scores a batch of sequences in parallel on the common fork-join pool.
+     * 
+     * @param ids ids of the nodes of all sequences, one after another
+     * @param offsets start of every sequence in the ids and the end of the
+     * last one at the end, one more than there are sequences
+     * @param scores array to write the log-likelihood of every sequence into
+     * @see #scoreBatch(int[], int[], double[], ForkJoinPool)
+     */
+    public void scoreBatch(int[] ids, int[] offsets, double[] scores) {
+        scoreBatch(ids, offsets, scores, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Scores a batch of sequences in parallel on the given fork-join pool.
+     * The sequences are stored like the edges of a {@link FrozenChain}:
+     * sequence <code>i</code> ranges from <code>offsets[i]</code>
+     * (including) to <code>offsets[i+1]</code> (excluding) in the ids, so
+     * that a batch of any number of sequences is just two arrays.
+     * 
+     * @param ids ids of the nodes of all sequences, one after another
+     * @param offsets start of every sequence in the ids and the end of the
+     * last one at the end, one more than there are sequences
+     * @param scores array to write the log-likelihood of every sequence into
+     * @param pool pool to score on
+     * @throws IllegalArgumentException if there are fewer scores than
+     * sequences
+     */
+    public void scoreBatch(int[] ids, int[] offsets, double[] scores,
+            ForkJoinPool pool) {
+        final int count = Math.max(offsets.length - 1, 0);
+        if(scores.length < count) {
+            throw new IllegalArgumentException("Fewer scores than sequences");
+        }
+        
+        pool.invoke(new Scoring(this, ids, offsets, scores, 0, count));
+    }
+    
+    /**
+     * Scores the sequences of the given batch in parallel on the common
+     * fork-join pool, for example to rank generated sequences.
+     * 
+     * @param batch sequences to score
+     * @param scores array to write the log-likelihood of every sequence into
+     * @throws IllegalArgumentException if there are fewer scores than
+     * sequences
+     */
+    public void scoreBatch(SequenceBatch batch, double[] scores) {
+        final int[] offsets = new int[batch.getCount() + 1];
+        //Rows of the maximum length, of which only the lengths are scored
+        final int[] ends = new int[batch.getCount()];
+        for(int i=0; i<batch.getCount(); i++) {
+            offsets[i] = i * batch.getMaxLength();
+            ends[i] = offsets[i] + batch.getLength(i);
+        }
+        offsets[batch.getCount()] = batch.getCount() * batch.getMaxLength();
+        if(scores.length < batch.getCount()) {
+            throw new IllegalArgumentException("Fewer scores than sequences");
+        }
+        
+        ForkJoinPool.commonPool().invoke(new Scoring(this, batch.getIds(),
+                offsets, ends, scores, 0, batch.getCount()));
+    }
+    
+    
+    
+    /**
+     * Scores a range of sequences of a batch, split up into halves until a
+     * range is small enough.
+     */
+    private static class Scoring extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        /** Maximum number of ids scored without splitting. */
+        private static final int THRESHOLD = 1 << 14;
+        
+        /** Scorer. */
+        private final ChainScorer<?> scorer;
+        /** Ids of the nodes of all sequences. */
+        private final int[] ids;
+        /** Start of every sequence. */
+        private final int[] offsets;
+        /** End of every sequence, null if it is the start of the next. */
+        private final int[] ends;
+        /** Log-likelihoods of the sequences. */
+        private final double[] scores;
+        /** Index of the first sequence (including). */
+        private final int from;
+        /** Index of the last sequence (excluding). */
+        private final int to;
+        
+        
+        
+        /**
+         * Constructs a new <code>Scoring</code> of the given range of
+         * sequences, which end where the next one starts.
+         * 
+         * @param scorer scorer
+         * @param ids ids of the nodes of all sequences
+         * @param offsets start of every sequence and the end of the last
+         * @param scores log-likelihoods of the sequences
+         * @param from index of the first sequence (including)
+         * @param to index of the last sequence (excluding)
+         */
+        Scoring(ChainScorer<?> scorer, int[] ids, int[] offsets,
+                double[] scores, int from, int to) {
+            this(scorer, ids, offsets, null, scores, from, to);
+        }
+        
+        /**
+         * Constructs a new <code>Scoring</code> of the given range of
+         * sequences.
+         * 
+         * @param scorer scorer
+         * @param ids ids of the nodes of all sequences
+         * @param offsets start of every sequence and the end of the last
+         * @param ends end of every sequence, null if it is the start of the
+         * next
+         * @param scores log-likelihoods of the sequences
+         * @param from index of the first sequence (including)
+         * @param to index of the last sequence (excluding)
+         */
+        Scoring(ChainScorer<?> scorer, int[] ids, int[] offsets, int[] ends,
+                double[] scores, int from, int to) {
+            this.scorer = scorer;
+            this.ids = ids;
+            this.offsets = offsets;
+            this.ends = ends;
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+        }
+        
+        
+        
+        /**
+         * Scores the range of sequences.
+         * Splits by the number of ids rather than sequences, so that ranges
+         * of long sequences don't hold up the others.
+         */
+        @Override
+        protected void compute() {
+            if(to - from <= 1 || offsets[to] - offsets[from] <= THRESHOLD) {
+                for(int i=from; i<to; i++) {
+                    scores[i] = scorer.score(ids, offsets[i],
+                            ends == null ? offsets[i+1] : ends[i]);
+                }
+                return;
+            }
+            
+            //First sequence starting in the second half of the ids
+            final int middleId = (offsets[from] + offsets[to]) >>> 1;
+            int low = from + 1;
+            int high = to - 1;
+            while(low < high) {
+                final int mid = (low + high) >>> 1;
+                if(offsets[mid] < middleId) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            invokeAll(
+                    new Scoring(scorer, ids, offsets, ends, scores,
+                            from, low),
+                    new Scoring(scorer, ids, offsets, ends, scores,
+                            low, to));
+        }
+    }
+}
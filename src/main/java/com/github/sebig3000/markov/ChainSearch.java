@@ -0,0 +1,968 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+
+
+/**
+ * Steered generation over a {@link FrozenChain}.
+ * Finds the most probable sequences from a start node with a beam search,
+ * or samples sequences that satisfy {@link Constraints} (a length range, a
+ * node to end at and banned nodes) directly, instead of generating
+ * sequences at random and discarding the ones that don't satisfy them.
+ * 
+ * Like in {@link SequenceBatch}, a sequence holds the nodes after the start
+ * node. With an end node it holds the nodes before the end node and has to
+ * reach the end node; without one it ends at its maximum length or at a
+ * node without successors, which it still holds.
+ * 
+ * The probabilities and log-probabilities of all edges are computed once
+ * at construction, so that the score of a sequence is a sum. The beam
+ * search keeps the candidates in bounded heaps over primitive arrays and
+ * stores every sequence only as a link to its predecessor, so that only
+ * the best sequences are ever written out.
+ * A {@link Sampler} computes once, backwards from the maximum length, the
+ * probability with which a random walk from every node after every number
+ * of steps still satisfies the constraints. Every step then draws the next
+ * node weighted by the probability of its edge times this probability,
+ * which samples exactly from the distribution of the walks that satisfy
+ * the constraints without ever running into a dead end.
+ * 
+ * @param <T> the type of data contained by the nodes
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class ChainSearch<T> {
+    
+    /** Searched chain. */
+    private final FrozenChain<T> chain;
+    /** Probabilities of the edges, in the order of the chain. */
+    private final double[] probabilities;
+    /** Log-probabilities of the edges, in the order of the chain. */
+    private final double[] logProbabilities;
+    
+    
+    
+    /**
+     * Constructs a new <code>ChainSearch</code> over the given chain.
+     * 
+     * @param chain chain to search
+     */
+    public ChainSearch(FrozenChain<T> chain) {
+        this.chain = chain;
+        probabilities = new double[chain.getEdgeCount()];
+        logProbabilities = new double[chain.getEdgeCount()];
+        for(int i=0; i<chain.size(); i++) {
+            final double total = chain.getTotalWeights(i);
+            for(int e=chain.getEdgeStart(i); e<chain.getEdgeEnd(i); e++) {
+                probabilities[e] = chain.getEdgeWeight(i, e) / total;
+                logProbabilities[e] = Math.log(probabilities[e]);
+            }
+        }
+    }
+    
+    
+    
+    /**
+     * Returns the searched chain.
+     * 
+     * @return searched chain
+     */
+    public FrozenChain<T> getChain() {
+        return chain;
+    }
+    
+    /**
+     * Returns the log-probability of the given edge.
+     * 
+     * @param edge index of the edge
+     * @return natural logarithm of the probability of the edge
+     */
+    public double getLogProbability(int edge) {
+        return logProbabilities[edge];
+    }
+    
+    
+    
+    /**
+     * Finds the most probable sequences from the given node that satisfy
+     * the given constraints with a beam search.
+     * Every step extends only the given number of most probable unfinished
+     * sequences, so the result is exact only if the beam is wide enough;
+     * unfinished sequences that can't beat the finished ones anymore, or
+     * can't reach the end node within the maximum length, are dropped.
+     * 
+     * @param start id of the node the sequences start after
+     * @param constraints constraints of the sequences
+     * @param beamWidth number of unfinished sequences extended per step
+     * @param k number of sequences to return at most
+     * @return most probable sequences, most probable first
+     * @throws IllegalArgumentException if the start node doesn't exist or
+     * the beam width or k is less than 1
+     */
+    public List<ScoredSequence> beamSearch(int start, Constraints constraints,
+            int beamWidth, int k) {
+        checkNode(start);
+        if(beamWidth < 1 || k < 1) {
+            throw new IllegalArgumentException("Beam width or k less than 1");
+        }
+        
+        final int end = constraints.getEnd();
+        final int maxLength = constraints.getMaxLength();
+        final int minLength = constraints.getMinLength();
+        final int[] distances = end < 0 ? null : distancesTo(constraints);
+        
+        //Sequences as links to their predecessors: node and previous link
+        final IntList linkNodes = new IntList();
+        final IntList linkPrevious = new IntList();
+        final BoundedHeap results = new BoundedHeap(k);
+        
+        //Beam of unfinished sequences: node, score and last link
+        int[] beamNodes = {start};
+        double[] beamScores = {0};
+        int[] beamLinks = {-1};
+        if(end < 0 && isDangling(start) && minLength == 0) {
+            results.offer(0, -1, 0);
+        }
+        
+        final BoundedHeap candidates = new BoundedHeap(beamWidth);
+        for(int length=0; length<=maxLength && beamNodes.length>0;
+                length++) {
+            candidates.clear();
+            for(int s=0; s<beamNodes.length; s++) {
+                final int node = beamNodes[s];
+                for(int e=chain.getEdgeStart(node);
+                        e<chain.getEdgeEnd(node); e++) {
+                    final int next = chain.getTarget(e);
+                    final double score = beamScores[s] + logProbabilities[e];
+                    //Scores only decrease, so no extension can beat it
+                    if(score <= results.worst()) {
+                        continue;
+                    }
+                    
+                    if(next == end) {
+                        if(length >= minLength) {
+                            results.offer(score, beamLinks[s], length);
+                        }
+                        continue;
+                    }
+                    if(constraints.isBanned(next) || length == maxLength
+                            || (end >= 0
+                            && distances[next] > maxLength - length)) {
+                        continue;
+                    }
+                    
+                    if(end < 0 && (length+1 == maxLength
+                            || isDangling(next))) {
+                        if(length+1 >= minLength) {
+                            linkNodes.add(next);
+                            linkPrevious.add(beamLinks[s]);
+                            results.offer(score, linkNodes.size()-1,
+                                    length+1);
+                        }
+                        continue;
+                    }
+                    candidates.offer(score, s, next);
+                }
+            }
+            
+            //Next beam, linked to the sequences it extends
+            final int size = candidates.size();
+            final int[] nodes = new int[size];
+            final double[] scores = new double[size];
+            final int[] links = new int[size];
+            for(int c=0; c<size; c++) {
+                nodes[c] = candidates.getB(c);
+                scores[c] = candidates.getScore(c);
+                linkNodes.add(nodes[c]);
+                linkPrevious.add(beamLinks[candidates.getA(c)]);
+                links[c] = linkNodes.size() - 1;
+            }
+            beamNodes = nodes;
+            beamScores = scores;
+            beamLinks = links;
+        }
+        
+        //Write out only the best sequences
+        final int[] order = results.sortedDescending();
+        final List<ScoredSequence> sequences = new ArrayList<>(order.length);
+        for(int r : order) {
+            final int[] ids = new int[results.getB(r)];
+            int link = results.getA(r);
+            for(int i=ids.length-1; i>=0; i--) {
+                ids[i] = linkNodes.get(link);
+                link = linkPrevious.get(link);
+            }
+            sequences.add(new ScoredSequence(ids, results.getScore(r)));
+        }
+        return sequences;
+    }
+    
+    /**
+     * Returns a sampler of the sequences from the given node that satisfy
+     * the given constraints.
+     * Computes the probabilities to still satisfy the constraints, which
+     * takes time proportional to the maximum length times the number of
+     * edges and memory proportional to the maximum length times the number
+     * of nodes. The sampler can then draw any number of sequences, from any
+     * number of threads.
+     * 
+     * @param start id of the node the sequences start after
+     * @param constraints constraints of the sequences
+     * @return sampler
+     * @throws IllegalArgumentException if the start node doesn't exist
+     */
+    public Sampler sampler(int start, Constraints constraints) {
+        checkNode(start);
+        return new Sampler(start, constraints);
+    }
+    
+    
+    
+    /**
+     * Returns if the given node has no successors.
+     * 
+     * @param id id of the node
+     * @return if the node has no successors
+     */
+    private boolean isDangling(int id) {
+        return chain.getEdgeStart(id) == chain.getEdgeEnd(id);
+    }
+    
+    /**
+     * Checks if the given node exists.
+     * 
+     * @param id id of the node
+     * @throws IllegalArgumentException if the node doesn't exist
+     */
+    private void checkNode(int id) {
+        if(id < 0 || id >= chain.size()) {
+            throw new IllegalArgumentException("No node " + id);
+        }
+    }
+    
+    /**
+     * Returns the least number of steps from every node to the end node
+     * that don't pass a banned node, by a backward breadth-first search.
+     * 
+     * @param constraints constraints with an end node
+     * @return number of steps per node, {@link Integer#MAX_VALUE} if the
+     * end node can't be reached
+     */
+    private int[] distancesTo(Constraints constraints) {
+        final int n = chain.size();
+        final int end = constraints.getEnd();
+        
+        //Incoming edges, as the chain only stores outgoing ones
+        final int[] inOffsets = new int[n+1];
+        for(int e=0; e<chain.getEdgeCount(); e++) {
+            inOffsets[chain.getTarget(e) + 1]++;
+        }
+        for(int i=0; i<n; i++) {
+            inOffsets[i+1] += inOffsets[i];
+        }
+        final int[] sources = new int[chain.getEdgeCount()];
+        final int[] fill = Arrays.copyOf(inOffsets, n);
+        for(int i=0; i<n; i++) {
+            for(int e=chain.getEdgeStart(i); e<chain.getEdgeEnd(i); e++) {
+                sources[fill[chain.getTarget(e)]++] = i;
+            }
+        }
+        
+        final int[] distances = new int[n];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        final int[] queue = new int[n];
+        distances[end] = 0;
+        queue[0] = end;
+        int tail = 1;
+        for(int head=0; head<tail; head++) {
+            final int j = queue[head];
+            for(int e=inOffsets[j]; e<inOffsets[j+1]; e++) {
+                final int i = sources[e];
+                if(distances[i] == Integer.MAX_VALUE
+                        && !constraints.isBanned(i)) {
+                    distances[i] = distances[j] + 1;
+                    queue[tail++] = i;
+                }
+            }
+        }
+        return distances;
+    }
+    
+    /**
+     * Draws a uniformly distributed value between (including) 0 and
+     * (excluding) 1 with 53 random bits.
+     * 
+     * @param random random source, returns a value below the given bound
+     * @return random value
+     */
+    private static double nextDouble(IntUnaryOperator random) {
+        return ((long)random.applyAsInt(1<<26) << 27
+                | random.applyAsInt(1<<27)) * 0x1.0p-53;
+    }
+    
+    
+    
+    /**
+     * Constraints of generated sequences.
+     * A length range, optionally a node the sequences have to end at, and
+     * nodes that must not appear.
+     */
+    public static class Constraints {
+        
+        /** Id of the node the sequences end at, -1 for none. */
+        private final int end;
+        /** Least number of nodes of a sequence. */
+        private final int minLength;
+        /** Largest number of nodes of a sequence. */
+        private final int maxLength;
+        /** Ids of the nodes that must not appear. */
+        private int[] banned = new int[0];
+        
+        
+        
+        /**
+         * Constructs new <code>Constraints</code>.
+         * 
+         * @param end id of the node the sequences have to end at, -1 for
+         * none
+         * @param minLength least number of nodes of a sequence, without the
+         * start and end node
+         * @param maxLength largest number of nodes of a sequence
+         * @throws IllegalArgumentException if the end is less than -1, the
+         * minimum length negative or the maximum length less than the
+         * minimum or, without an end node, 0
+         */
+        public Constraints(int end, int minLength, int maxLength) {
+            if(end < -1) {
+                throw new IllegalArgumentException("End less than -1");
+            }
+            if(minLength < 0 || maxLength < minLength
+                    || (end < 0 && maxLength == 0)) {
+                throw new IllegalArgumentException("Invalid length range");
+            }
+            
+            this.end = end;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+        }
+        
+        
+        
+        /**
+         * Bans the given node from the sequences.
+         * 
+         * @param id id of the node that must not appear
+         * @return these constraints
+         */
+        public Constraints ban(int id) {
+            if(!isBanned(id)) {
+                banned = Arrays.copyOf(banned, banned.length + 1);
+                banned[banned.length - 1] = id;
+                Arrays.sort(banned);
+            }
+            return this;
+        }
+        
+        /**
+         * Returns the id of the node the sequences have to end at.
+         * 
+         * @return id of the end node, -1 for none
+         */
+        public int getEnd() {
+            return end;
+        }
+        
+        /**
+         * Returns the least number of nodes of a sequence.
+         * 
+         * @return minimum length
+         */
+        public int getMinLength() {
+            return minLength;
+        }
+        
+        /**
+         * Returns the largest number of nodes of a sequence.
+         * 
+         * @return maximum length
+         */
+        public int getMaxLength() {
+            return maxLength;
+        }
+        
+        /**
+         * Returns if the given node must not appear.
+         * 
+         * @param id id of the node
+         * @return if the node is banned
+         */
+        public boolean isBanned(int id) {
+            return Arrays.binarySearch(banned, id) >= 0;
+        }
+        
+        /**
+         * Returns if a sequence of the given nodes satisfies these
+         * constraints, not counting how it ended.
+         * 
+         * @param ids nodes of the sequence
+         * @param length number of nodes
+         * @return if the sequence satisfies the constraints
+         */
+        public boolean isSatisfied(int[] ids, int length) {
+            if(length < minLength || length > maxLength) {
+                return false;
+            }
+            for(int i=0; i<length; i++) {
+                if(isBanned(ids[i]) || ids[i] == end) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Sequence with the natural logarithm of its probability.
+     */
+    public static class ScoredSequence {
+        
+        /** Ids of the nodes. */
+        private final int[] ids;
+        /** Log-probability. */
+        private final double logProbability;
+        
+        
+        
+        /**
+         * Constructs a new <code>ScoredSequence</code>.
+         * 
+         * @param ids ids of the nodes, not copied
+         * @param logProbability log-probability
+         */
+        ScoredSequence(int[] ids, double logProbability) {
+            this.ids = ids;
+            this.logProbability = logProbability;
+        }
+        
+        
+        
+        /**
+         * Returns the ids of the nodes, without copying them.
+         * 
+         * @return ids of the nodes
+         */
+        public int[] getIds() {
+            return ids;
+        }
+        
+        /**
+         * Returns the natural logarithm of the probability of the sequence,
+         * including the step to the end node.
+         * 
+         * @return log-probability
+         */
+        public double getLogProbability() {
+            return logProbability;
+        }
+        
+        /**
+         * Returns the data of the nodes.
+         * 
+         * @param <T> the type of data contained by the nodes
+         * @param chain chain the sequence has been found in
+         * @return data of the nodes
+         */
+        public <T> List<T> getSequence(FrozenChain<T> chain) {
+            final List<T> data = new ArrayList<>(ids.length);
+            for(int id : ids) {
+                data.add(chain.getData(id));
+            }
+            return data;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return Arrays.toString(ids) + " " + logProbability;
+        }
+    }
+    
+    /**
+     * Sampler of the sequences that satisfy given constraints.
+     * Holds, for every number of emitted nodes and every node, the
+     * probability with which a random walk on from there satisfies the
+     * constraints, scaled per number of nodes so that long sequences don't
+     * underflow.
+     */
+    public class Sampler {
+        
+        /** Id of the node the sequences start after. */
+        private final int start;
+        /** Constraints of the sequences. */
+        private final Constraints constraints;
+        /** Scaled probabilities to satisfy the constraints, by number of
+         * emitted nodes and node. */
+        private final double[][] rows;
+        /** Natural logarithm of the scale of every row: the largest
+         * probability of the row. */
+        private final double[] logScales;
+        
+        
+        
+        /**
+         * Constructs a new <code>Sampler</code> and computes the
+         * probabilities backwards from the maximum length, the nodes of a
+         * row in parallel.
+         * 
+         * @param start id of the node the sequences start after
+         * @param constraints constraints of the sequences
+         */
+        private Sampler(int start, Constraints constraints) {
+            this.start = start;
+            this.constraints = constraints;
+            final int maxLength = constraints.getMaxLength();
+            rows = new double[maxLength+1][];
+            logScales = new double[maxLength+1];
+            
+            for(int length=maxLength; length>=0; length--) {
+                final int emitted = length;
+                final double[] row = new double[chain.size()];
+                
+                //Logarithms first, scaled by the largest one afterwards
+                IntStream.range(0, chain.size()).parallel().forEach(id -> {
+                    double terminal = 0;
+                    double onward = 0;
+                    for(int e=chain.getEdgeStart(id);
+                            e<chain.getEdgeEnd(id); e++) {
+                        final double p = probabilities[e];
+                        final int next = chain.getTarget(e);
+                        if(isTerminal(emitted, next)) {
+                            terminal += p * terminalValue(emitted, next);
+                        } else if(isOpen(emitted, next)) {
+                            onward += p * rows[emitted+1][next];
+                        }
+                    }
+                    row[id] = logSum(terminal, onward,
+                            emitted < maxLength ?
+                            logScales[emitted+1] : Double.NEGATIVE_INFINITY);
+                });
+                
+                double logScale = Double.NEGATIVE_INFINITY;
+                for(double value : row) {
+                    logScale = Math.max(logScale, value);
+                }
+                for(int id=0; id<row.length; id++) {
+                    row[id] = logScale == Double.NEGATIVE_INFINITY ?
+                            0 : Math.exp(row[id] - logScale);
+                }
+                rows[length] = row;
+                logScales[length] = logScale;
+            }
+        }
+        
+        
+        
+        /**
+         * Returns the probability with which a random walk from the start
+         * node satisfies the constraints, i.e. the share of the sequences
+         * that generating and discarding would keep.
+         * 
+         * @return probability to satisfy the constraints
+         */
+        public double getProbability() {
+            if(isDangling(start)) {
+                return constraints.getEnd() < 0
+                        && constraints.getMinLength() == 0 ? 1 : 0;
+            }
+            return rows[0][start] * Math.exp(logScales[0]);
+        }
+        
+        /**
+         * Draws a sequence that satisfies the constraints and writes its
+         * node ids into the given buffer.
+         * Every sequence has the probability it has in random walks, divided
+         * by the probability of all sequences that satisfy the constraints.
+         * 
+         * @param random random source, returns a value below the given bound
+         * (see {@link WeightMap#get(IntUnaryOperator)})
+         * @param buffer buffer for the ids, at least as long as the maximum
+         * length
+         * @return length of the sequence, -1 if no sequence satisfies the
+         * constraints
+         */
+        public int sample(IntUnaryOperator random, int[] buffer) {
+            if(getProbability() <= 0) {
+                return -1;
+            }
+            if(isDangling(start)) {
+                return 0;
+            }
+            
+            int node = start;
+            int length = 0;
+            while(true) {
+                //Terminal weights are not scaled, onward ones by the row
+                final double scale = length < constraints.getMaxLength() ?
+                        Math.exp(logScales[length+1]) : 0;
+                double terminal = 0;
+                double onward = 0;
+                for(int e=chain.getEdgeStart(node);
+                        e<chain.getEdgeEnd(node); e++) {
+                    final double p = probabilities[e];
+                    final int next = chain.getTarget(e);
+                    if(isTerminal(length, next)) {
+                        terminal += p * terminalValue(length, next);
+                    } else if(isOpen(length, next)) {
+                        onward += p * rows[length+1][next];
+                    }
+                }
+                //If the onward weights underflow next to terminal ones,
+                //they are negligible; if there are no terminal ones, the
+                //scale cancels out
+                final double onwardScale = terminal == 0 ? 1 : scale;
+                
+                double value = nextDouble(random)
+                        * (terminal + onward * onwardScale);
+                int next = -1;
+                for(int e=chain.getEdgeStart(node);
+                        e<chain.getEdgeEnd(node); e++) {
+                    final double p = probabilities[e];
+                    final int target = chain.getTarget(e);
+                    final double weight;
+                    if(isTerminal(length, target)) {
+                        weight = p * terminalValue(length, target);
+                    } else if(isOpen(length, target)) {
+                        weight = p * rows[length+1][target] * onwardScale;
+                    } else {
+                        weight = 0;
+                    }
+                    if(weight > 0) {
+                        next = target;
+                        value -= weight;
+                        if(value < 0) {
+                            break;
+                        }
+                    }
+                }
+                
+                if(next == constraints.getEnd()) {
+                    return length;
+                }
+                buffer[length++] = next;
+                if(isTerminal(length-1, next)) {
+                    return length;
+                }
+                node = next;
+            }
+        }
+        
+        /**
+         * Returns if going to the given node after the given number of
+         * emitted nodes ends the sequence.
+         * 
+         * @param emitted number of emitted nodes before the step
+         * @param next node to go to
+         * @return if the step ends the sequence
+         */
+        private boolean isTerminal(int emitted, int next) {
+            if(constraints.getEnd() >= 0) {
+                return next == constraints.getEnd();
+            }
+            return !constraints.isBanned(next)
+                    && (emitted+1 == constraints.getMaxLength()
+                    || isDangling(next));
+        }
+        
+        /**
+         * Returns if a sequence that ends with the given step satisfies the
+         * constraints.
+         * 
+         * @param emitted number of emitted nodes before the step
+         * @param next node to go to, terminal
+         * @return 1 if the sequence satisfies the constraints, 0 otherwise
+         */
+        private double terminalValue(int emitted, int next) {
+            final int length = next == constraints.getEnd() ?
+                    emitted : emitted+1;
+            return length >= constraints.getMinLength() ? 1 : 0;
+        }
+        
+        /**
+         * Returns if the sequence can go on over the given node.
+         * 
+         * @param emitted number of emitted nodes before the step
+         * @param next node to go to, not terminal
+         * @return if the sequence can go on
+         */
+        private boolean isOpen(int emitted, int next) {
+            return emitted < constraints.getMaxLength()
+                    && !constraints.isBanned(next);
+        }
+    }
+    
+    
+    
+    /**
+     * Returns the natural logarithm of the given unscaled value plus the
+     * given scaled value times the exponential of the given logarithmic
+     * scale, without underflowing.
+     * 
+     * @param value unscaled value
+     * @param scaled scaled value
+     * @param logScale natural logarithm of the scale
+     * @return logarithm of the sum
+     */
+    private static double logSum(double value, double scaled,
+            double logScale) {
+        final double logScaled = scaled > 0 ?
+                Math.log(scaled) + logScale : Double.NEGATIVE_INFINITY;
+        final double logValue = value > 0 ?
+                Math.log(value) : Double.NEGATIVE_INFINITY;
+        final double max = Math.max(logValue, logScaled);
+        if(max == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        return max + Math.log(Math.exp(logValue - max)
+                + Math.exp(logScaled - max));
+    }
+    
+    
+    
+    /**
+     * Growable list of ints.
+     */
+    private static class IntList {
+        
+        /** Elements, the first size ones are used. */
+        private int[] elements = new int[64];
+        /** Number of elements. */
+        private int size = 0;
+        
+        
+        
+        /**
+         * Appends the given element.
+         * 
+         * @param element element to append
+         */
+        void add(int element) {
+            if(size == elements.length) {
+                elements = Arrays.copyOf(elements, 2*size);
+            }
+            elements[size++] = element;
+        }
+        
+        /**
+         * Returns the element at the given index.
+         * 
+         * @param index index
+         * @return element
+         */
+        int get(int index) {
+            return elements[index];
+        }
+        
+        /**
+         * Returns the number of elements.
+         * 
+         * @return number of elements
+         */
+        int size() {
+            return size;
+        }
+    }
+    
+    /**
+     * Min-heap of the entries with the largest scores up to a capacity, over
+     * primitive arrays. Every entry has a score and two int payloads.
+     */
+    private static class BoundedHeap {
+        
+        /** Scores, the least one at the root. */
+        private final double[] scores;
+        /** First payloads. */
+        private final int[] as;
+        /** Second payloads. */
+        private final int[] bs;
+        /** Number of entries. */
+        private int size = 0;
+        
+        
+        
+        /**
+         * Constructs a new <code>BoundedHeap</code>.
+         * 
+         * @param capacity number of entries kept at most
+         */
+        BoundedHeap(int capacity) {
+            scores = new double[capacity];
+            as = new int[capacity];
+            bs = new int[capacity];
+        }
+        
+        
+        
+        /**
+         * Returns the score an entry has to exceed to be kept.
+         * 
+         * @return least score if full, negative infinity otherwise
+         */
+        double worst() {
+            return size < scores.length ?
+                    Double.NEGATIVE_INFINITY : scores[0];
+        }
+        
+        /**
+         * Adds the given entry if it is under the best ones, replacing the
+         * worst one if full.
+         * 
+         * @param score score
+         * @param a first payload
+         * @param b second payload
+         */
+        void offer(double score, int a, int b) {
+            int i;
+            if(size < scores.length) {
+                //Sift up from the end
+                i = size++;
+                while(i > 0 && scores[(i-1) >>> 1] > score) {
+                    final int parent = (i-1) >>> 1;
+                    move(parent, i);
+                    i = parent;
+                }
+            } else if(score > scores[0]) {
+                //Sift down from the root
+                i = 0;
+                while(true) {
+                    int child = 2*i + 1;
+                    if(child >= size) {
+                        break;
+                    }
+                    if(child+1 < size && scores[child+1] < scores[child]) {
+                        child++;
+                    }
+                    if(scores[child] >= score) {
+                        break;
+                    }
+                    move(child, i);
+                    i = child;
+                }
+            } else {
+                return;
+            }
+            scores[i] = score;
+            as[i] = a;
+            bs[i] = b;
+        }
+        
+        /**
+         * Moves an entry to another slot.
+         * 
+         * @param from slot of the entry
+         * @param to slot to move to
+         */
+        private void move(int from, int to) {
+            scores[to] = scores[from];
+            as[to] = as[from];
+            bs[to] = bs[from];
+        }
+        
+        /**
+         * Removes all entries.
+         */
+        void clear() {
+            size = 0;
+        }
+        
+        /**
+         * Returns the number of entries.
+         * 
+         * @return number of entries
+         */
+        int size() {
+            return size;
+        }
+        
+        /**
+         * Returns the score of the entry in the given slot.
+         * 
+         * @param slot slot
+         * @return score
+         */
+        double getScore(int slot) {
+            return scores[slot];
+        }
+        
+        /**
+         * Returns the first payload of the entry in the given slot.
+         * 
+         * @param slot slot
+         * @return first payload
+         */
+        int getA(int slot) {
+            return as[slot];
+        }
+        
+        /**
+         * Returns the second payload of the entry in the given slot.
+         * 
+         * @param slot slot
+         * @return second payload
+         */
+        int getB(int slot) {
+            return bs[slot];
+        }
+        
+        /**
+         * Returns the slots of the entries, the best score first.
+         * 
+         * @return sorted slots
+         */
+        int[] sortedDescending() {
+            final Integer[] slots = new Integer[size];
+            for(int i=0; i<size; i++) {
+                slots[i] = i;
+            }
+            Arrays.sort(slots, (x, y) -> Double.compare(scores[y], scores[x]));
+            final int[] sorted = new int[size];
+            for(int i=0; i<size; i++) {
+                sorted[i] = slots[i];
+            }
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Snapshot of the size of a {@link MarkovChain}.
+ * Holds the numbers of nodes and transitions, the distribution of the
+ * numbers of transitions per node (fan-out) in a histogram with
+ * power-of-two buckets, and a rough estimate of the heap used by the chain.
+ * 
+ * The heap is estimated from the fields of the objects and the lengths of
+ * the arrays of the chain, and doesn't include the data of the nodes, which
+ * may be shared with other objects. It assumes a 64 bit HotSpot JVM with
+ * compressed references and class pointers, the default for heaps below
+ * 32 GiB: objects have 12 byte headers, arrays 16 byte headers, references
+ * take 4 bytes and every object is aligned to 8 bytes. Without compressed
+ * references, or on other JVMs, the actual heap differs and may be
+ * considerably larger. The estimate suits comparing chains and storages,
+ * not exact accounting; use a heap dump for that.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class ChainStatistics {
+    
+    /** Number of nodes. */
+    private final int nodes;
+    /** Number of transitions. */
+    private final long transitions;
+    /** Largest number of transitions of a node. */
+    private final int maxFanOut;
+    /** Number of nodes by the bucket of their number of transitions. */
+    private final long[] fanOutHistogram;
+    /** Estimated heap used by the chain in bytes. */
+    private final long estimatedBytes;
+    
+    
+    
+    /**
+     * Constructs a new <code>ChainStatistics</code>.
+     * 
+     * @param nodes number of nodes
+     * @param transitions number of transitions
+     * @param maxFanOut largest number of transitions of a node
+     * @param fanOutHistogram number of nodes by the bucket of their number
+     * of transitions, not copied
+     * @param estimatedBytes estimated heap used by the chain in bytes
+     */
+    ChainStatistics(int nodes, long transitions, int maxFanOut,
+            long[] fanOutHistogram, long estimatedBytes) {
+        this.nodes = nodes;
+        this.transitions = transitions;
+        this.maxFanOut = maxFanOut;
+        this.fanOutHistogram = fanOutHistogram;
+        this.estimatedBytes = estimatedBytes;
+    }
+    
+    
+    
+    /**
+     * Returns the number of nodes.
+     * 
+     * @return number of nodes
+     */
+    public int getNodeCount() {
+        return nodes;
+    }
+    
+    /**
+     * Returns the number of transitions of all nodes.
+     * 
+     * @return number of transitions
+     */
+    public long getTransitionCount() {
+        return transitions;
+    }
+    
+    /**
+     * Returns the largest number of transitions of a node.
+     * 
+     * @return largest fan-out
+     */
+    public int getMaxFanOut() {
+        return maxFanOut;
+    }
+    
+    /**
+     * Returns the mean number of transitions per node.
+     * 
+     * @return mean fan-out, 0 without nodes
+     */
+    public double getMeanFanOut() {
+        return nodes == 0 ? 0 : (double)transitions / nodes;
+    }
+    
+    /**
+     * Returns the numbers of nodes by their number of transitions.
+     * Element 0 counts the nodes without transitions and element i the ones
+     * with from (including) 2^(i-1) to (excluding) 2^i transitions.
+     * 
+     * @return histogram of the fan-out
+     */
+    public long[] getFanOutHistogram() {
+        return fanOutHistogram.clone();
+    }
+    
+    /**
+     * Returns a rough estimate of the heap used by the chain, without the
+     * data of the nodes. See {@link ChainStatistics} for the assumptions it
+     * is based on.
+     * 
+     * @return roughly estimated heap in bytes
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+    
+    
+    
+    //Object
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        int last = fanOutHistogram.length;
+        while(last > 0 && fanOutHistogram[last-1] == 0) {
+            last--;
+        }
+        
+        return String.format("nodes: %d, transitions: %d, fan-out: mean "
+                + "%.1f, max %d, histogram %s, estimated heap: %d bytes",
+                nodes, transitions, getMeanFanOut(), maxFanOut,
+                Arrays.toString(Arrays.copyOf(fanOutHistogram, last)),
+                estimatedBytes);
+    }
+}
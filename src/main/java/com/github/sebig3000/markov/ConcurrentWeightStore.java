@@ -0,0 +1,294 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+
+
+/**
+ * Thread-safe {@link WeightStore}.
+ * Every weight is a {@link LongAdder} in a {@link ConcurrentHashMap}, so
+ * that many threads can increment weights, even of the same key, without
+ * locking and without contending on a single counter.
+ * 
+ * The counters are 64 bit wide, so weights may grow beyond the range of
+ * <code>int</code>.
+ * Increments are never lost, not even while the weights are divided.
+ * Decrements and divisions of a key lock its bin of the map, so that
+ * concurrent decrements can't drive a weight below 0.
+ * <code>put</code> and <code>remove</code>
+ * replace the counter of a key and are therefore meant for setting up
+ * weights, not to be mixed with concurrent increments of the same key.
+ * 
+ * @param <T> the type of keys maintained by this store
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+class ConcurrentWeightStore<T> extends AbstractMap<T, Integer>
+        implements WeightStore<T> {
+    
+    /** Stand-in for the null key, as ConcurrentHashMap doesn't allow it. */
+    private static final Object NULL_KEY = new Object();
+    
+    /** Key-counter map. */
+    private final ConcurrentHashMap<Object, LongAdder> map =
+            new ConcurrentHashMap<>();
+    
+    
+    
+    /**
+     * Replaces the null key with its stand-in.
+     * 
+     * @param key key
+     * @return masked key
+     */
+    private static Object mask(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+    
+    /**
+     * Replaces the stand-in of the null key with null.
+     * 
+     * @param key masked key
+     * @return key
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T unmask(Object key) {
+        return key == NULL_KEY ? null : (T)key;
+    }
+    
+    
+    
+    //WeightStore
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getWeight(Object key) {
+        final LongAdder weight = map.get(mask(key));
+        return weight == null ? 0 : weight.sum();
+    }
+    
+    /**
+     * {@inheritDoc}
+     * Negative deltas are checked and applied atomically with respect to
+     * other decrements and divisions of the same key. Concurrent increments
+     * can only raise the weight meanwhile.
+     */
+    @Override
+    public long increment(T key, long delta) {
+        final Object masked = mask(key);
+        
+        if(delta < 0) {
+            final LongAdder weight = map.compute(masked, (k, counter) -> {
+                if(counter == null || counter.sum() + delta < 0) {
+                    throw new IllegalArgumentException("Weight less than 0");
+                }
+                counter.add(delta);
+                return counter;
+            });
+            return weight.sum();
+        }
+        
+        LongAdder weight = map.get(masked);
+        if(weight == null) {
+            //Publish new keys with their weight, so that no thread sees a
+            //contained key without weight
+            final LongAdder created = new LongAdder();
+            created.add(delta);
+            weight = map.putIfAbsent(masked, created);
+            if(weight == null) {
+                return delta;
+            }
+        }
+        weight.add(delta);
+        return weight.sum();
+    }
+    
+    /**
+     * {@inheritDoc}
+     * Increments by other threads meanwhile are kept undivided. Keys whose
+     * weight drops to 0 are kept, as other threads may still increment
+     * their counters.
+     */
+    @Override
+    public long divide(long divisor, boolean roundUp) {
+        final long[] change = {0};
+        for(Object key : map.keySet()) {
+            //Locked against decrements, which could otherwise pass their
+            //check on the undivided weight
+            map.computeIfPresent(key, (k, weight) -> {
+                //Subtract instead of resetting, so no increment can get lost
+                final long current = weight.sum();
+                final long divided =
+                        WeightStore.divide(current, divisor, roundUp);
+                weight.add(divided - current);
+                change[0] += divided - current;
+                return weight;
+            });
+        }
+        return change[0];
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachWeight(ObjLongConsumer<? super T> action) {
+        map.forEach((key, weight) ->
+                action.accept(ConcurrentWeightStore.<T>unmask(key),
+                        weight.sum()));
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long estimateBytes() {
+        //Entries with uncontended counters
+        return WeightStore.align(WeightStore.OBJECT_HEADER_BYTES
+                        + WeightStore.ABSTRACT_MAP_BYTES
+                        + WeightStore.REFERENCE_BYTES)
+                + WeightStore.hashMapBytes(size(),
+                        WeightStore.CONCURRENT_HASH_MAP_BYTES,
+                        WeightStore.HASH_MAP_ENTRY_BYTES
+                                + WeightStore.LONG_ADDER_BYTES);
+    }
+    
+    
+    
+    //Map
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return map.size();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(mask(key));
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer get(Object key) {
+        final LongAdder weight = map.get(mask(key));
+        return weight == null ? null : WeightStore.toInteger(weight.sum());
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer put(T key, Integer value) {
+        final LongAdder weight = new LongAdder();
+        weight.add(value);
+        
+        final LongAdder last = map.put(mask(key), weight);
+        return last == null ? null : WeightStore.toInteger(last.sum());
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer remove(Object key) {
+        final LongAdder last = map.remove(mask(key));
+        return last == null ? null : WeightStore.toInteger(last.sum());
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        map.clear();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Entry<T, Integer>> entrySet() {
+        return new AbstractSet<Entry<T, Integer>>() {
+            @Override
+            public int size() {
+                return map.size();
+            }
+            
+            @Override
+            public void clear() {
+                map.clear();
+            }
+            
+            @Override
+            public Iterator<Entry<T, Integer>> iterator() {
+                final Iterator<Map.Entry<Object, LongAdder>> iterator =
+                        map.entrySet().iterator();
+                
+                return new Iterator<Entry<T, Integer>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+                    
+                    @Override
+                    public Entry<T, Integer> next() {
+                        final Map.Entry<Object, LongAdder> entry =
+                                iterator.next();
+                        return new SimpleImmutableEntry<>(
+                                ConcurrentWeightStore.<T>unmask(
+                                        entry.getKey()),
+                                WeightStore.toInteger(
+                                        entry.getValue().sum()));
+                    }
+                    
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,866 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+
+
+/**
+ * Compact read-only Markov chain.
+ * Holds the same states and transitions as a set of {@link MarkovNode}s, but
+ * as a few primitive arrays instead of one object graph with a map per node,
+ * so that a trained chain needs only a fraction of the heap for generation.
+ * 
+ * Every node has an integer id between 0 (including) and {@link #size()}
+ * (excluding). The data of the nodes is stored in a {@link TokenDictionary}
+ * with these ids, which can be shared by many chains over the same
+ * vocabulary, so that every token is stored only once.
+ * The transitions are stored in compressed sparse row form: the edges of
+ * node <code>i</code> are stored from
+ * <code>offsets[i]</code> (including) to <code>offsets[i+1]</code>
+ * (excluding) in <code>targets</code>, sorted by target id, and
+ * <code>cumulativeWeights</code>, which holds the sum of the weights of all
+ * edges of the node up to and including the same edge.
+ * A random successor is therefore chosen with a binary search, just like in
+ * {@link WeightMap}. The random source is always given by the caller, so a
+ * frozen chain can be walked by many threads at once, for example to
+ * generate a whole batch of sequences in parallel (see
+ * {@link #generate(int, int, SequenceBatch, long, ForkJoinPool)}).
+ * 
+ * @param <T> the type of data contained by the nodes
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class FrozenChain<T> {
+    
+    /** Dictionary of the data of the nodes, whose ids are the node ids. */
+    private final TokenDictionary<T> dictionary;
+    /** Start of the edges of every node and the total number of edges at
+     * the end. */
+    private final int[] offsets;
+    /** Target node ids of the edges. */
+    private final int[] targets;
+    /** Cumulative weights of the edges, per node. */
+    private final int[] cumulativeWeights;
+    
+    
+    
+    /**
+     * Constructs a new <code>FrozenChain</code> with the states and
+     * transitions of the given nodes.
+     * Nodes that aren't contained by the collection but are children of
+     * contained nodes are included as well.
+     * 
+     * @param nodes nodes to freeze
+     * @throws ArithmeticException if the weights of a node sum up beyond
+     * the range of <code>int</code>, which can be avoided by rescaling them
+     * (see {@link WeightMap#rescale(long)})
+     */
+    public FrozenChain(Collection<? extends MarkovNode<T>> nodes) {
+        this(nodes, new TokenDictionary<>());
+    }
+    
+    /**
+     * Constructs a new <code>FrozenChain</code> with the states and
+     * transitions of the given nodes, whose ids are taken from the given
+     * dictionary.
+     * Data that isn't contained by the dictionary yet is added to it.
+     * Nodes that aren't contained by the collection but are children of
+     * contained nodes are included as well.
+     * 
+     * @param nodes nodes to freeze
+     * @param dictionary dictionary of the data of the nodes, may be shared
+     * with other chains
+     * @throws ArithmeticException if the weights of a node sum up beyond
+     * the range of <code>int</code>, which can be avoided by rescaling them
+     * (see {@link WeightMap#rescale(long)})
+     */
+    public FrozenChain(Collection<? extends MarkovNode<T>> nodes,
+            TokenDictionary<T> dictionary) {
+        this.dictionary = dictionary;
+        
+        //Find the given nodes and everything reachable from them by id
+        Object[] byId = new Object[dictionary.size() + nodes.size()];
+        int n = 0;
+        final Queue<MarkovNode<T>> queue = new ArrayDeque<>(nodes);
+        while(!queue.isEmpty()) {
+            final MarkovNode<T> node = queue.remove();
+            final int id = dictionary.getOrAddId(node.getData());
+            if(id >= byId.length) {
+                byId = Arrays.copyOf(byId, Math.max(id+1, byId.length*2));
+            }
+            if(byId[id] != null) {
+                continue;
+            }
+            
+            byId[id] = node;
+            n = Math.max(n, id+1);
+            queue.addAll(node.keySet());
+        }
+        
+        
+        //Write the edges of every node, sorted by target id
+        offsets = new int[n+1];
+        int edges = 0;
+        for(int i=0; i<n; i++) {
+            if(byId[i] != null) {
+                edges += ((MarkovNode<?>)byId[i]).size();
+            }
+        }
+        targets = new int[edges];
+        cumulativeWeights = new int[edges];
+        
+        int e = 0;
+        for(int i=0; i<n; i++) {
+            offsets[i] = e;
+            if(byId[i] == null) {
+                continue;
+            }
+            
+            @SuppressWarnings("unchecked")
+            final MarkovNode<T> node = (MarkovNode<T>)byId[i];
+            final long[] row = packRow(node, dictionary);
+            e = writeRow(row, row.length, targets, cumulativeWeights, e);
+        }
+        offsets[n] = e;
+    }
+    
+    /**
+     * Constructs a new <code>FrozenChain</code> from the given arrays, which
+     * are not copied.
+     * 
+     * @param tokens data of the nodes
+     * @param offsets start of the edges of every node and the total number
+     * of edges at the end
+     * @param targets target node ids of the edges, sorted per node
+     * @param cumulativeWeights cumulative weights of the edges, per node
+     * @throws IllegalArgumentException if the data of two nodes is equal
+     */
+    FrozenChain(Object[] tokens, int[] offsets, int[] targets,
+            int[] cumulativeWeights) {
+        this(new TokenDictionary<>(), offsets, targets, cumulativeWeights);
+        
+        for(int i=0; i<tokens.length; i++) {
+            @SuppressWarnings("unchecked")
+            final T token = (T)tokens[i];
+            if(dictionary.getOrAddId(token) != i) {
+                throw new IllegalArgumentException("Duplicate data " + token);
+            }
+        }
+    }
+    
+    /**
+     * Constructs a new <code>FrozenChain</code> from the given dictionary
+     * and arrays, which are not copied.
+     * 
+     * @param dictionary dictionary of the data of the nodes
+     * @param offsets start of the edges of every node and the total number
+     * of edges at the end
+     * @param targets target node ids of the edges, sorted per node
+     * @param cumulativeWeights cumulative weights of the edges, per node
+     */
+    FrozenChain(TokenDictionary<T> dictionary, int[] offsets,
+            int[] targets, int[] cumulativeWeights) {
+        this.dictionary = dictionary;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.cumulativeWeights = cumulativeWeights;
+    }
+    
+    
+    
+    /**
+     * Packs the given target id and weight into one long, so that sorting a
+     * row by target doesn't need any objects.
+     * 
+     * @param target target node id
+     * @param weight weight, positive
+     * @return packed edge
+     */
+    static long pack(int target, int weight) {
+        return (long)target << 32 | weight;
+    }
+    
+    /**
+     * Packs the edges of the given node with a positive weight, with the
+     * ids of the targets in the given dictionary, which have to be
+     * contained already.
+     * 
+     * @param <T> the type of data contained by the nodes
+     * @param node node
+     * @param dictionary dictionary of the data of the nodes
+     * @return packed edges
+     * @throws ArithmeticException if a weight exceeds the range of
+     * <code>int</code>
+     */
+    private static <T> long[] packRow(MarkovNode<T> node,
+            TokenDictionary<T> dictionary) {
+        final long[] row = new long[node.size()];
+        int length = 0;
+        for(MarkovNode<T> child : node.keySet()) {
+            final int weight = Math.toIntExact(node.getWeight(child));
+            if(weight > 0) {
+                row[length++] = pack(dictionary.getId(child.getData()),
+                        weight);
+            }
+        }
+        return length == row.length ? row : Arrays.copyOf(row, length);
+    }
+    
+    /**
+     * Sorts the given packed edges by target and writes them.
+     * 
+     * @param row packed edges
+     * @param length number of edges in the row
+     * @param targets target array to write to
+     * @param cumulativeWeights cumulative weight array to write to
+     * @param e index of the first edge to write
+     * @return index after the last written edge
+     * @throws ArithmeticException if the weights sum up beyond the range of
+     * <code>int</code>
+     */
+    static int writeRow(long[] row, int length, int[] targets,
+            int[] cumulativeWeights, int e) {
+        Arrays.sort(row, 0, length);
+        
+        int sum = 0;
+        for(int j=0; j<length; j++) {
+            sum = Math.addExact(sum, (int)row[j]);
+            targets[e] = (int)(row[j] >>> 32);
+            cumulativeWeights[e] = sum;
+            e++;
+        }
+        return e;
+    }
+    
+    
+    
+    /**
+     * Returns the number of nodes.
+     * All ids from 0 (including) to this number (excluding) are valid node
+     * ids. With a shared dictionary this may include data of other chains,
+     * which appear as nodes without transitions.
+     * 
+     * @return number of nodes
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+    
+    /**
+     * Returns the dictionary of the data of the nodes, whose ids are the
+     * node ids.
+     * 
+     * @return dictionary of the data of the nodes
+     */
+    public TokenDictionary<T> getDictionary() {
+        return dictionary;
+    }
+    
+    /**
+     * Returns the number of edges (transitions with a weight greater than 0).
+     * 
+     * @return number of edges
+     */
+    public int getEdgeCount() {
+        return offsets[offsets.length-1];
+    }
+    
+    /**
+     * Returns the id of the node with the given data or -1 if there is no
+     * such node.
+     * 
+     * @param data data of the node
+     * @return id of the node or -1
+     */
+    public int getId(T data) {
+        //Data added to a shared dictionary later isn't a node of this chain
+        final int id = dictionary.getId(data);
+        return id < size() ? id : -1;
+    }
+    
+    /**
+     * Returns the data of the node with the given id.
+     * 
+     * @param id id of the node
+     * @return data of the node
+     */
+    public T getData(int id) {
+        return dictionary.getToken(id);
+    }
+    
+    /**
+     * Returns the sum of the weights of all edges of the given node.
+     * 
+     * @param id id of the node
+     * @return sum of the weights of all edges of the node
+     */
+    public int getTotalWeights(int id) {
+        return offsets[id] == offsets[id+1] ?
+                0 : cumulativeWeights[offsets[id+1]-1];
+    }
+    
+    /**
+     * Returns the index of the first edge of the given node.
+     * The edges of a node are sorted by their target id and range from this
+     * index (including) to {@link #getEdgeEnd(int)} (excluding).
+     * 
+     * @param id id of the node
+     * @return index of the first edge of the node
+     */
+    public int getEdgeStart(int id) {
+        return offsets[id];
+    }
+    
+    /**
+     * Returns the index after the last edge of the given node.
+     * 
+     * @param id id of the node
+     * @return index after the last edge of the node
+     */
+    public int getEdgeEnd(int id) {
+        return offsets[id+1];
+    }
+    
+    /**
+     * Returns the id of the node the given edge ends at.
+     * 
+     * @param edge index of the edge
+     * @return id of the target node
+     */
+    public int getTarget(int edge) {
+        return targets[edge];
+    }
+    
+    /**
+     * Returns the weight of the given edge of the given node.
+     * 
+     * @param id id of the node the edge starts at
+     * @param edge index of the edge
+     * @return weight of the edge
+     */
+    public int getEdgeWeight(int id, int edge) {
+        return edge == offsets[id] ?
+                cumulativeWeights[edge]
+                : cumulativeWeights[edge] - cumulativeWeights[edge-1];
+    }
+    
+    /**
+     * Returns the weight of the edge between the given nodes or 0 if there
+     * is no such edge.
+     * 
+     * @param from id of the node the edge starts at
+     * @param to id of the node the edge ends at
+     * @return weight of the edge
+     */
+    public int getWeight(int from, int to) {
+        final int e = getEdge(from, to);
+        return e < 0 ? 0 : getEdgeWeight(from, e);
+    }
+    
+    /**
+     * Returns the index of the edge between the given nodes or a negative
+     * value if there is no such edge.
+     * 
+     * @param from id of the node the edge starts at
+     * @param to id of the node the edge ends at
+     * @return index of the edge or a negative value
+     */
+    public int getEdge(int from, int to) {
+        return Arrays.binarySearch(targets, offsets[from], offsets[from+1],
+                to);
+    }
+    
+    
+    
+    /**
+     * Returns a new mutable chain with the nodes and transitions of this
+     * chain, to continue training.
+     * Nodes without any transitions, like data of other chains in a shared
+     * dictionary, are left out.
+     * 
+     * @return mutable copy of this chain
+     */
+    public MarkovChain<T> thaw() {
+        final boolean[] connected = new boolean[size()];
+        for(int i=0; i<size(); i++) {
+            connected[i] |= offsets[i] < offsets[i+1];
+            for(int e=offsets[i]; e<offsets[i+1]; e++) {
+                connected[targets[e]] = true;
+            }
+        }
+        
+        final MarkovChain<T> chain = new MarkovChain<>();
+        final List<MarkovNode<T>> nodes = new ArrayList<>(size());
+        for(int i=0; i<size(); i++) {
+            nodes.add(connected[i] ? chain.getOrCreateNode(getData(i)) : null);
+        }
+        for(int i=0; i<size(); i++) {
+            for(int e=offsets[i]; e<offsets[i+1]; e++) {
+                nodes.get(i).increment(nodes.get(targets[e]),
+                        getEdgeWeight(i, e));
+            }
+        }
+        return chain;
+    }
+    
+    /**
+     * Returns a copy of this chain whose ids are taken from the given
+     * dictionary, for example to share one dictionary between many loaded
+     * chains.
+     * Data that isn't contained by the dictionary yet is added to it.
+     * 
+     * @param shared dictionary of the data of the nodes
+     * @return copy of this chain using the given dictionary, or this chain
+     * if it already uses it
+     */
+    public FrozenChain<T> withDictionary(TokenDictionary<T> shared) {
+        if(shared == dictionary) {
+            return this;
+        }
+        
+        //Map the ids of this chain to the ids of the dictionary
+        final int[] newIds = new int[size()];
+        int n = 0;
+        for(int i=0; i<size(); i++) {
+            newIds[i] = shared.getOrAddId(getData(i));
+            n = Math.max(n, newIds[i]+1);
+        }
+        final int[] oldIds = new int[n];
+        Arrays.fill(oldIds, -1);
+        for(int i=0; i<size(); i++) {
+            oldIds[newIds[i]] = i;
+        }
+        
+        //Write the edges again, sorted by their new target ids
+        final int[] newOffsets = new int[n+1];
+        final int[] newTargets = new int[targets.length];
+        final int[] newCumulativeWeights = new int[targets.length];
+        int e = 0;
+        for(int id=0; id<n; id++) {
+            newOffsets[id] = e;
+            final int i = oldIds[id];
+            if(i < 0) {
+                continue;
+            }
+            
+            final long[] row = new long[offsets[i+1] - offsets[i]];
+            for(int edge=offsets[i]; edge<offsets[i+1]; edge++) {
+                row[edge - offsets[i]] = pack(newIds[targets[edge]],
+                        getEdgeWeight(i, edge));
+            }
+            e = writeRow(row, row.length, newTargets, newCumulativeWeights,
+                    e);
+        }
+        newOffsets[n] = e;
+        
+        return new FrozenChain<>(shared, newOffsets, newTargets,
+                newCumulativeWeights);
+    }
+    
+    
+    
+    /**
+     * Returns a copy of this chain in which the edges of the given nodes are
+     * replaced by the current ones of their mutable nodes, copy-on-write:
+     * the edges of all other nodes are copied over in blocks, so that only
+     * the changed nodes are visited.
+     * The data of the nodes and their targets have to be contained by the
+     * dictionary of this chain already.
+     * 
+     * @param size number of nodes of the copy, at least the one of this
+     * chain
+     * @param changed ids of the nodes whose edges have changed
+     * @param nodes mutable node of an id, null for a node without edges,
+     * called from several threads while the nodes don't change
+     * @return updated copy
+     * @throws ArithmeticException if the weights of a node sum up beyond
+     * the range of <code>int</code>
+     */
+    FrozenChain<T> update(int size, BitSet changed,
+            IntFunction<? extends MarkovNode<T>> nodes) {
+        //Changed nodes are packed in parallel, hot ones can be large
+        final long[][] rows = new long[size][];
+        changed.stream().filter(i -> i < size).parallel().forEach(i -> {
+            final MarkovNode<T> node = nodes.apply(i);
+            rows[i] = node == null ? new long[0] : packRow(node, dictionary);
+        });
+        
+        final int[] newOffsets = new int[size+1];
+        int e = 0;
+        for(int i=0; i<size; i++) {
+            newOffsets[i] = e;
+            if(rows[i] != null) {
+                e += rows[i].length;
+            } else if(i < size()) {
+                e += offsets[i+1] - offsets[i];
+            }
+        }
+        newOffsets[size] = e;
+        final int[] newTargets = new int[e];
+        final int[] newCumulativeWeights = new int[e];
+        
+        //Runs of unchanged nodes are copied at once, cumulative weights
+        //restart with every node and don't need to be adjusted
+        int i = 0;
+        while(i < size) {
+            if(rows[i] != null) {
+                writeRow(rows[i], rows[i].length, newTargets,
+                        newCumulativeWeights, newOffsets[i]);
+                i++;
+                continue;
+            }
+            
+            final int from = i;
+            while(i < size && rows[i] == null) {
+                i++;
+            }
+            final int to = Math.min(i, size());
+            if(from < to) {
+                final int length = offsets[to] - offsets[from];
+                System.arraycopy(targets, offsets[from], newTargets,
+                        newOffsets[from], length);
+                System.arraycopy(cumulativeWeights, offsets[from],
+                        newCumulativeWeights, newOffsets[from], length);
+            }
+        }
+        
+        return new FrozenChain<>(dictionary, newOffsets, newTargets,
+                newCumulativeWeights);
+    }
+    
+    
+    
+    /**
+     * Returns the id of a random successor of the given node.
+     * 
+     * @param id id of the node
+     * @param random random source, returns a value below the given bound
+     * (see {@link WeightMap#get(IntUnaryOperator)})
+     * @return id of a random successor or -1 if the node has no successors
+     */
+    public int next(int id, IntUnaryOperator random) {
+        final int total = getTotalWeights(id);
+        if(total <= 0) {
+            return -1;
+        }
+        
+        //Binary search for the first cumulative weight greater than value
+        final int value = random.applyAsInt(total);
+        int low = offsets[id];
+        int high = offsets[id+1] - 1;
+        while(low < high) {
+            final int mid = (low + high) >>> 1;
+            if(cumulativeWeights[mid] > value) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        
+        return targets[low];
+    }
+    
+    /**
+     * Generates a batch of sequences in parallel on the common fork-join
+     * pool.
+     * 
+     * @param start data of the node every sequence starts after
+     * @param end data of the node that ends a sequence, not included in it
+     * @param count number of sequences
+     * @param maxLength maximum length of a sequence
+     * @param seed seed of the random sources of the sequences
+     * @return generated sequences
+     * @throws NoSuchElementException if there is no node with the given
+     * start or end data
+     * @see #generate(int, int, SequenceBatch, long, ForkJoinPool)
+     */
+    public SequenceBatch generate(T start, T end, int count, int maxLength,
+            long seed) {
+        final int startId = getId(start);
+        if(startId < 0) {
+            throw new NoSuchElementException("No node with data " + start);
+        }
+        final int endId = getId(end);
+        if(endId < 0) {
+            throw new NoSuchElementException("No node with data " + end);
+        }
+        
+        final SequenceBatch batch = new SequenceBatch(count, maxLength);
+        generate(startId, endId, batch, seed);
+        return batch;
+    }
+    
+    /**
+     * Fills the given batch with sequences generated in parallel on the
+     * common fork-join pool.
+     * 
+     * @param start id of the node every sequence starts after
+     * @param end id of the node that ends a sequence, -1 for none
+     * @param batch batch to fill
+     * @param seed seed of the random sources of the sequences
+     * @see #generate(int, int, SequenceBatch, long, ForkJoinPool)
+     */
+    public void generate(int start, int end, SequenceBatch batch,
+            long seed) {
+        generate(start, end, batch, seed, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Fills the given batch with sequences generated in parallel on the
+     * given fork-join pool.
+     * Every sequence starts after the start node, walks from node to node
+     * like an iterator and ends before the end node, at a node without
+     * successors or at the maximum length of the batch.
+     * Instead of data, the ids of the nodes are written into the batch,
+     * which can be reused for the next call.
+     * Every sequence has a random source of its own, derived from the given
+     * seed and its index, so the result doesn't depend on the pool.
+     * 
+     * @param start id of the node every sequence starts after
+     * @param end id of the node that ends a sequence, -1 for none
+     * @param batch batch to fill
+     * @param seed seed of the random sources of the sequences
+     * @param pool pool to generate on
+     */
+    public void generate(int start, int end, SequenceBatch batch, long seed,
+            ForkJoinPool pool) {
+        pool.invoke(new Generation(this, start, end, batch, seed,
+                0, batch.getCount()));
+    }
+    
+    
+    
+    /**
+     * Generates a range of sequences of a batch, split up into halves until
+     * a range is small enough.
+     */
+    private static class Generation extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        /** Maximum number of sequences generated without splitting. */
+        private static final int THRESHOLD = 64;
+        
+        /** Chain to walk over. */
+        private final FrozenChain<?> chain;
+        /** Id of the node every sequence starts after. */
+        private final int start;
+        /** Id of the node that ends a sequence, -1 for none. */
+        private final int end;
+        /** Batch to fill. */
+        private final SequenceBatch batch;
+        /** Seed of the first sequence. */
+        private final long seed;
+        /** Index of the first sequence (including). */
+        private final int from;
+        /** Index of the last sequence (excluding). */
+        private final int to;
+        
+        
+        
+        /**
+         * Constructs a new <code>Generation</code> of the given range of
+         * sequences.
+         * 
+         * @param chain chain to walk over
+         * @param start id of the node every sequence starts after
+         * @param end id of the node that ends a sequence, -1 for none
+         * @param batch batch to fill
+         * @param seed seed of the first sequence
+         * @param from index of the first sequence (including)
+         * @param to index of the last sequence (excluding)
+         */
+        Generation(FrozenChain<?> chain, int start, int end,
+                SequenceBatch batch, long seed, int from, int to) {
+            this.chain = chain;
+            this.start = start;
+            this.end = end;
+            this.batch = batch;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+        
+        
+        
+        /**
+         * Generates the range of sequences.
+         */
+        @Override
+        protected void compute() {
+            if(to - from <= THRESHOLD) {
+                batch.generate(chain, start, end, seed, from, to);
+                return;
+            }
+            
+            final int middle = (from + to) >>> 1;
+            invokeAll(
+                    new Generation(chain, start, end, batch, seed,
+                            from, middle),
+                    new Generation(chain, start, end, batch, seed,
+                            middle, to));
+        }
+    }
+    
+    
+    
+    /**
+     * An iterator that walks over a frozen chain and returns the data of the
+     * node it is currently on. Works like
+     * {@link MarkovNode.MarkovIterator}.
+     * 
+     * @param <E> the type of data contained by the nodes
+     */
+    public static class FrozenIterator<E> implements Iterator<E> {
+        
+        /** Chain to walk over. */
+        private final FrozenChain<E> chain;
+        /** Random source used for the successor selection. */
+        private final IntUnaryOperator random;
+        /** Id of the node whose data has been returned by the last next
+         * call. */
+        private int node;
+        
+        
+        
+        /**
+         * Constructs a new <code>FrozenIterator</code> which starts at the
+         * node with the given id.
+         * The first returned data will be from a child of this node.
+         * 
+         * @param chain chain to walk over
+         * @param id id of the node to start from
+         * @param random random source, returns a value below the given
+         * bound (see {@link WeightMap#get(IntUnaryOperator)})
+         */
+        public FrozenIterator(FrozenChain<E> chain, int id,
+                IntUnaryOperator random) {
+            this.chain = chain;
+            this.node = id;
+            this.random = random;
+        }
+        
+        
+        
+        /**
+         * Restarts this iterator at the node with the given id, so that it
+         * can be reused for the next sequence instead of constructing a new
+         * one.
+         * 
+         * @param id id of the node to start from
+         */
+        public void reset(int id) {
+            node = id;
+        }
+        
+        
+        
+        /**
+         * {@inheritdoc}
+         */
+        @Override
+        public boolean hasNext() {
+            return chain.getTotalWeights(node) > 0;
+        }
+        
+        /**
+         * {@inheritdoc}
+         */
+        @Override
+        public E next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException("Node has no successors");
+            }
+            
+            node = chain.next(node, random);
+            return chain.getData(node);
+        }
+    }
+    
+    /**
+     * Returns an iterator that walks over this chain, starting at the node
+     * with the given data.
+     * 
+     * @param start data of the node to start from
+     * @return iterator that walks over this chain
+     * @throws NoSuchElementException if there is no node with the given data
+     */
+    public Iterator<T> iterator(T start) {
+        //Get the generator of the thread using the iterator
+        return iterator(start,
+                bound -> ThreadLocalRandom.current().nextInt(bound));
+    }
+    
+    /**
+     * Returns an iterator that walks over this chain, starting at the node
+     * with the given data and using the given random number generator.
+     * 
+     * @param start data of the node to start from
+     * @param rand random number generator to use
+     * @return iterator that walks over this chain
+     * @throws NoSuchElementException if there is no node with the given data
+     */
+    public Iterator<T> iterator(T start, Random rand) {
+        return iterator(start, rand::nextInt);
+    }
+    
+    /**
+     * Returns an iterator that walks over this chain, starting at the node
+     * with the given data and using the given random source.
+     * 
+     * @param start data of the node to start from
+     * @param random random source, returns a value below the given bound
+     * (see {@link WeightMap#get(IntUnaryOperator)})
+     * @return iterator that walks over this chain
+     * @throws NoSuchElementException if there is no node with the given data
+     */
+    public Iterator<T> iterator(T start, IntUnaryOperator random) {
+        final int id = getId(start);
+        if(id < 0) {
+            throw new NoSuchElementException("No node with data " + start);
+        }
+        
+        return new FrozenIterator<>(this, id, random);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.ObjLongConsumer;
+
+
+
+/**
+ * {@link WeightStore} backed by a {@link HashMap}.
+ * Simple, but every weight is a boxed {@link Integer} held by a map entry,
+ * and therefore limited to the range of <code>int</code>.
+ * 
+ * @param <T> the type of keys maintained by this store
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+class HashWeightStore<T> extends AbstractMap<T, Integer>
+        implements WeightStore<T> {
+    
+    /** Key-weight map. */
+    private final HashMap<T, Integer> map = new HashMap<>();
+    
+    
+    
+    //WeightStore
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getWeight(Object key) {
+        final Integer weight = map.get(key);
+        return weight == null ? 0 : weight;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long increment(T key, long delta) {
+        final long weight = getWeight(key) + delta;
+        
+        if(weight < 0) {
+            throw new IllegalArgumentException("Weight less than 0");
+        }
+        
+        map.put(key, Math.toIntExact(weight));
+        return weight;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long divide(long divisor, boolean roundUp) {
+        long change = 0;
+        for(Iterator<Entry<T, Integer>> iterator = map.entrySet().iterator();
+                iterator.hasNext();) {
+            final Entry<T, Integer> entry = iterator.next();
+            final int weight = entry.getValue();
+            final int divided =
+                    (int)WeightStore.divide(weight, divisor, roundUp);
+            if(divided == 0) {
+                iterator.remove();
+            } else {
+                entry.setValue(divided);
+            }
+            change += divided - weight;
+        }
+        return change;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachWeight(ObjLongConsumer<? super T> action) {
+        map.forEach(action::accept);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long estimateBytes() {
+        //Weights up to 127 share the cached boxes of Integer.valueOf
+        long boxed = 0;
+        for(int weight : map.values()) {
+            if(weight > 127) {
+                boxed++;
+            }
+        }
+        return WeightStore.align(WeightStore.OBJECT_HEADER_BYTES
+                        + WeightStore.ABSTRACT_MAP_BYTES
+                        + WeightStore.REFERENCE_BYTES)
+                + WeightStore.hashMapBytes(size(),
+                        WeightStore.HASH_MAP_BYTES,
+                        WeightStore.HASH_MAP_ENTRY_BYTES)
+                + boxed * WeightStore.INTEGER_BYTES;
+    }
+    
+    
+    
+    //Map
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return map.size();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer get(Object key) {
+        return map.get(key);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer put(T key, Integer value) {
+        return map.put(key, value);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer remove(Object key) {
+        return map.remove(key);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        map.clear();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Entry<T, Integer>> entrySet() {
+        return map.entrySet();
+    }
+}
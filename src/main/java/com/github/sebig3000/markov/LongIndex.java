@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Open addressing map from <code>long</code> keys to non-negative
+ * <code>int</code> values, without boxing either of them.
+ * Keys can't be removed.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+class LongIndex {
+    
+    /** Initial capacity, must be a power of 2. */
+    private static final int INITIAL_CAPACITY = 16;
+    
+    /** Keys. */
+    private long[] keys = new long[INITIAL_CAPACITY];
+    /** Values in the same slots, -1 for empty slots. */
+    private int[] values = newValues(INITIAL_CAPACITY);
+    /** Number of contained keys. */
+    private int size = 0;
+    
+    
+    
+    /**
+     * Returns the number of contained keys.
+     * 
+     * @return number of contained keys
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the value of the given key or -1 if it isn't contained.
+     * 
+     * @param key key
+     * @return value of the key or -1
+     */
+    int get(long key) {
+        final int mask = keys.length - 1;
+        for(int i=hash(key)&mask; values[i]>=0; i=(i+1)&mask) {
+            if(keys[i] == key) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Maps the given key to the given value.
+     * 
+     * @param key key
+     * @param value non-negative value
+     */
+    void put(long key, int value) {
+        if(size >= keys.length - (keys.length>>2)) {
+            resize();
+        }
+        
+        final int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while(values[i] >= 0 && keys[i] != key) {
+            i = (i+1) & mask;
+        }
+        if(values[i] < 0) {
+            size++;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+    
+    /**
+     * Doubles the capacity.
+     */
+    private void resize() {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = newValues(oldKeys.length << 1);
+        
+        final int mask = keys.length - 1;
+        for(int j=0; j<oldKeys.length; j++) {
+            if(oldValues[j] >= 0) {
+                int i = hash(oldKeys[j]) & mask;
+                while(values[i] >= 0) {
+                    i = (i+1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+    
+    /**
+     * Returns a new value array with all slots empty.
+     * 
+     * @param capacity capacity
+     * @return empty value array
+     */
+    private static int[] newValues(int capacity) {
+        final int[] values = new int[capacity];
+        Arrays.fill(values, -1);
+        return values;
+    }
+    
+    /**
+     * Spreads the bits of the given key over the lower bits used for
+     * probing.
+     * 
+     * @param key key
+     * @return hash code
+     */
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+}
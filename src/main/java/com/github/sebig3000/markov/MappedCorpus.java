@@ -0,0 +1,461 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * Trains a chain of words on a file by memory-mapping it.
+ * The file is split into a chunk per worker of a {@link ForkJoinPool}. The
+ * chunks are mapped with {@link FileChannel#map} and trained in parallel,
+ * each into a partial chain that is merged with the others afterwards, like
+ * in {@link ShardedTraining}.
+ * 
+ * The text is split into words directly on the mapped bytes, at the same
+ * whitespace as {@link StreamingTrainer}, {@link Character#isWhitespace},
+ * including the few non-ASCII spaces in their UTF-8 encoding. The bytes of a
+ * word are interned to an id, which leads to its node, so a string is only
+ * created once per distinct word and chunk, not for every occurrence. Words
+ * are decoded as UTF-8.
+ * 
+ * Like {@link StreamingTrainer}, empty lines separate paragraphs, which are
+ * trained from a start to an end node. Lines may end with CR LF. Chunks are
+ * split at empty lines if there is one near the nominal chunk end, otherwise
+ * at whitespace, in which case the next chunk starts with the last word of
+ * the previous one, so that the transition across the chunk boundary is
+ * trained as well. Both train the same chain.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class MappedCorpus {
+    
+    /** Maximum number of bytes mapped at once. */
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+    /** Number of bytes searched for a chunk boundary. */
+    private static final int BOUNDARY_SEARCH = 1 << 20;
+    
+    /** Path of the file. */
+    private final Path path;
+    /** Number of words trained by the last training. */
+    private final LongAdder tokenCount = new LongAdder();
+    
+    
+    
+    /**
+     * Constructs a new <code>MappedCorpus</code> of the file at the given
+     * path.
+     * 
+     * @param path path of the file
+     */
+    public MappedCorpus(Path path) {
+        this.path = path;
+    }
+    
+    
+    
+    /**
+     * Returns the number of words trained by the last training.
+     * 
+     * @return number of trained words
+     */
+    public long getTokenCount() {
+        return tokenCount.sum();
+    }
+    
+    /**
+     * Trains a new chain on this corpus on the common fork-join pool.
+     * 
+     * @param start data of the node every paragraph starts at
+     * @param end data of the node every paragraph ends with
+     * @return trained chain
+     * @throws IOException if reading fails
+     */
+    public MarkovChain<String> train(String start, String end)
+            throws IOException {
+        return train(start, end, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Trains a new chain on this corpus on the given fork-join pool.
+     * The file is split into one chunk per worker of the pool, as every
+     * partial chain costs a merge about as expensive as training it. A pool
+     * with more workers than cores is therefore slower than a
+     * {@link StreamingTrainer}.
+     * 
+     * @param start data of the node every paragraph starts at
+     * @param end data of the node every paragraph ends with
+     * @param pool pool to train on
+     * @return trained chain
+     * @throws IOException if reading fails
+     */
+    public MarkovChain<String> train(String start, String end,
+            ForkJoinPool pool) throws IOException {
+        tokenCount.reset();
+        
+        try(FileChannel channel =
+                FileChannel.open(path, StandardOpenOption.READ)) {
+            final List<long[]> chunks =
+                    split(channel, pool.getParallelism());
+            return pool.invoke(new ChunkTraining(
+                    channel, chunks, start, end));
+        } catch(UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+    
+    
+    
+    /**
+     * Splits the file into about the given number of chunks.
+     * A chunk consists of its start and end position, the position of the
+     * last word of the previous chunk if it starts within a paragraph or
+     * else -1, and 1 if its last paragraph continues in the next chunk or
+     * else 0.
+     * 
+     * @param channel channel of the file
+     * @param count number of chunks
+     * @return chunks
+     * @throws IOException if reading fails
+     */
+    private static List<long[]> split(FileChannel channel, int count)
+            throws IOException {
+        final long size = channel.size();
+        final long chunkSize = Math.min(MAX_CHUNK_SIZE,
+                Math.max(BOUNDARY_SEARCH, (size + count - 1) / count));
+        
+        final List<long[]> chunks = new ArrayList<>();
+        long from = 0;
+        long carry = -1;
+        while(from < size) {
+            final long to = from + chunkSize >= size ?
+                    size : boundary(channel, from + chunkSize);
+            final long next = to < size ? lastWord(channel, from, to) : -1;
+            chunks.add(new long[]{from, to, carry, next >= 0 ? 1 : 0});
+            from = to;
+            carry = next;
+        }
+        return chunks;
+    }
+    
+    /**
+     * Returns the first position at or after the given one to split the
+     * file at: after an empty line, or else at whitespace, or else at the
+     * given position.
+     * 
+     * @param channel channel of the file
+     * @param position nominal position
+     * @return position to split at
+     * @throws IOException if reading fails
+     */
+    private static long boundary(FileChannel channel, long position)
+            throws IOException {
+        final int length = (int)Math.min(BOUNDARY_SEARCH,
+                channel.size() - position);
+        final MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, position, length);
+        
+        int whitespace = -1;
+        //Line breaks since the last word, like while training
+        int lineBreaks = 0;
+        for(int i=0; i<length; i++) {
+            final int space = whitespace(buffer, i, length);
+            if(space == 0) {
+                lineBreaks = 0;
+                continue;
+            }
+            
+            if(buffer.get(i) == '\n' && ++lineBreaks >= 2) {
+                return position + i + 1;
+            }
+            if(whitespace < 0) {
+                whitespace = i;
+            }
+            i += space - 1;
+        }
+        return position + Math.max(whitespace, 0);
+    }
+    
+    /**
+     * Returns the position of the last word before the given position, if
+     * its paragraph continues after the position.
+     * 
+     * @param channel channel of the file
+     * @param from position to search back to
+     * @param position position the file is split at
+     * @return position of the last word, -1 if there is an empty line
+     * between it and the given position or there is no word
+     * @throws IOException if reading fails
+     */
+    private static long lastWord(FileChannel channel, long from,
+            long position) throws IOException {
+        final int length = (int)Math.min(BOUNDARY_SEARCH, position - from);
+        final long begin = position - length;
+        final MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, begin, length);
+        
+        //End of the last word
+        int i = length;
+        int lineBreaks = 0;
+        int space;
+        while(i > 0 && (space = whitespaceBefore(buffer, i)) > 0) {
+            if(buffer.get(i-1) == '\n' && ++lineBreaks >= 2) {
+                return -1;
+            }
+            i -= space;
+        }
+        if(i == 0) {
+            return -1;
+        }
+        while(i > 0 && whitespaceBefore(buffer, i) == 0) {
+            i--;
+        }
+        return begin + i;
+    }
+    
+    /**
+     * Returns the length of the UTF-8 encoded whitespace, as defined by
+     * {@link Character#isWhitespace(int)}, at the given position.
+     * Besides ASCII characters, only some characters of three bytes are
+     * whitespace.
+     * 
+     * @param buffer buffer
+     * @param i position
+     * @param limit end of the buffer
+     * @return number of bytes of the whitespace, 0 if there is none
+     */
+    private static int whitespace(ByteBuffer buffer, int i, int limit) {
+        final byte b = buffer.get(i);
+        if(b >= 0) {
+            return Character.isWhitespace(b) ? 1 : 0;
+        }
+        if((b & 0xF0) != 0xE0 || i + 2 >= limit) {
+            return 0;
+        }
+        
+        final byte b1 = buffer.get(i+1);
+        final byte b2 = buffer.get(i+2);
+        if((b1 & 0xC0) != 0x80 || (b2 & 0xC0) != 0x80) {
+            return 0;
+        }
+        final int c = (b & 0x0F) << 12 | (b1 & 0x3F) << 6 | b2 & 0x3F;
+        return Character.isWhitespace(c) ? 3 : 0;
+    }
+    
+    /**
+     * Returns the length of the whitespace that ends right before the given
+     * position.
+     * 
+     * @param buffer buffer
+     * @param i position
+     * @return number of bytes of the whitespace, 0 if there is none
+     * @see #whitespace(ByteBuffer, int, int)
+     */
+    private static int whitespaceBefore(ByteBuffer buffer, int i) {
+        if(buffer.get(i-1) >= 0) {
+            return whitespace(buffer, i-1, i);
+        }
+        return i >= 3 && whitespace(buffer, i-3, i) == 3 ? 3 : 0;
+    }
+    
+    
+    
+    /**
+     * Trains chunks into partial chains and merges them.
+     */
+    private class ChunkTraining extends RecursiveTask<MarkovChain<String>> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        /** Channel of the file. */
+        private final FileChannel channel;
+        /** Chunks to train. */
+        private final List<long[]> chunks;
+        /** Data of the node every paragraph starts at. */
+        private final String start;
+        /** Data of the node every paragraph ends with. */
+        private final String end;
+        
+        
+        
+        /**
+         * Constructs a new <code>ChunkTraining</code>.
+         * 
+         * @param channel channel of the file
+         * @param chunks chunks to train
+         * @param start data of the node every paragraph starts at
+         * @param end data of the node every paragraph ends with
+         */
+        ChunkTraining(FileChannel channel, List<long[]> chunks,
+                String start, String end) {
+            this.channel = channel;
+            this.chunks = chunks;
+            this.start = start;
+            this.end = end;
+        }
+        
+        
+        
+        /**
+         * Trains the chunks and returns the merged chain.
+         * 
+         * @return chain trained on all chunks
+         */
+        @Override
+        protected MarkovChain<String> compute() {
+            if(chunks.size() <= 1) {
+                try {
+                    return chunks.isEmpty() ?
+                            train(new long[]{0, 0, -1, 0}) :
+                            train(chunks.get(0));
+                } catch(IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            
+            
+            final int middle = chunks.size() / 2;
+            final ChunkTraining left = new ChunkTraining(channel,
+                    chunks.subList(0, middle), start, end);
+            final ChunkTraining right = new ChunkTraining(channel,
+                    chunks.subList(middle, chunks.size()), start, end);
+            left.fork();
+            
+            //Merge the smaller chain into the larger one
+            final MarkovChain<String> rightChain = right.compute();
+            final MarkovChain<String> leftChain = left.join();
+            if(leftChain.size() >= rightChain.size()) {
+                leftChain.merge(rightChain);
+                return leftChain;
+            } else {
+                rightChain.merge(leftChain);
+                return rightChain;
+            }
+        }
+        
+        /**
+         * Trains a new chain on the given chunk.
+         * A chunk that starts within a paragraph is read from the last word
+         * of the previous chunk on, which the first transition starts at.
+         * 
+         * @param chunk start and end position, position of the last word of
+         * the previous chunk or -1 and if the last paragraph continues
+         * @return chain trained on the chunk
+         * @throws IOException if reading fails
+         */
+        private MarkovChain<String> train(long[] chunk) throws IOException {
+            final long carry = chunk[2];
+            final long from = carry >= 0 ? carry : chunk[0];
+            final long to = chunk[1];
+            final boolean open = chunk[3] != 0;
+            
+            final MarkovChain<String> chain = new MarkovChain<>();
+            final MarkovNode<String> startNode = chain.getOrCreateNode(start);
+            final MarkovNode<String> endNode = chain.getOrCreateNode(end);
+            
+            final MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, from, to - from);
+            final int limit = buffer.limit();
+            
+            //Node of every word id
+            final ByteTokenTable table = new ByteTokenTable();
+            final List<MarkovNode<String>> nodes = new ArrayList<>();
+            
+            MarkovNode<String> current = startNode;
+            int wordStart = -1;
+            //Line breaks since the last word, two or more mean an empty line
+            int lineBreaks = 0;
+            boolean inParagraph = false;
+            //The first word was trained with the previous chunk
+            boolean carried = carry >= 0;
+            long tokens = 0;
+            for(int i=0; i<=limit; i++) {
+                //Whitespace after the end, to finish the last word
+                final int space = i < limit ? whitespace(buffer, i, limit) : 1;
+                
+                if(space == 0) {
+                    if(wordStart < 0) {
+                        //Empty line before this word: new paragraph
+                        if(lineBreaks >= 2 && inParagraph) {
+                            current.accept(endNode);
+                            current = startNode;
+                            inParagraph = false;
+                        }
+                        lineBreaks = 0;
+                        wordStart = i;
+                    }
+                    
+                } else {
+                    if(wordStart >= 0) {
+                        final int id = table.intern(buffer, wordStart, i);
+                        if(id == nodes.size()) {
+                            nodes.add(chain.getOrCreateNode(
+                                    table.getToken(id)));
+                        }
+                        final MarkovNode<String> node = nodes.get(id);
+                        
+                        //Actual training step
+                        if(carried) {
+                            carried = false;
+                        } else {
+                            current.accept(node);
+                            tokens++;
+                        }
+                        current = node;
+                        wordStart = -1;
+                        inParagraph = true;
+                    }
+                    if(i < limit && buffer.get(i) == '\n') {
+                        lineBreaks++;
+                    }
+                    i += space - 1;
+                }
+            }
+            
+            //End the last paragraph, unless the next chunk continues it
+            if(current != startNode && !open) {
+                current.accept(endNode);
+            }
+            
+            tokenCount.add(tokens);
+            return chain;
+        }
+    }
+}
@@ -0,0 +1,563 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+
+
+/**
+ * MarkovChain class.
+ * A set of {@link MarkovNode}s that additionally indexes its nodes by their
+ * data, so that a node can be found in constant time.
+ * 
+ * It can be used everywhere a <code>Set&lt;MarkovNode&gt;</code> is expected,
+ * especially as the node set given to
+ * {@link MarkovNode#apply(java.util.Set, java.lang.Object)}, which then
+ * doesn't have to search through all nodes to find the child with the given
+ * data.
+ * Like every set it contains no two nodes with equal data.
+ * Nodes created by the chain store their children the way given at
+ * construction.
+ * With {@link WeightMap.Storage#CONCURRENT} the nodes are indexed by a
+ * concurrent map as well, so that many threads can train the same chain
+ * with <code>apply</code> at once. Such a chain can't contain a node with
+ * null as data.
+ * To cap the memory, transitions with low weights can be pruned in parallel
+ * over the nodes, after training or while training.
+ * Training and generation can be observed with a {@link MetricsListener},
+ * and the size of the chain with {@link #getStatistics()}.
+ * 
+ * @param <T> the type of data contained by the nodes
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class MarkovChain<T> extends AbstractSet<MarkovNode<T>> {
+    
+    /** Data-node map. Delegation was chosen for the same reasons as in
+     * {@link WeightMap}: all ways nodes can be added or removed are known. */
+    private final Map<T, MarkovNode<T>> nodes;
+    /** How created nodes store their children. */
+    private final WeightMap.Storage storage;
+    /** Half-life of the transitions of the nodes, 0 for no decay. */
+    private double halfLife = 0;
+    /** Clock the half-life is measured with, null to count transitions. */
+    private LongSupplier clock;
+    /** Number of last transitions every node keeps, 0 for no window. */
+    private int window = 0;
+    /** Number of successors every node is pruned to while training, 0 for
+     * no limit. */
+    private int maxSuccessors = 0;
+    /** Cache of the sampling indices of the nodes, null if every node keeps
+     * its own. */
+    private SamplingCache samplingCache;
+    /** Listener of the chain and its nodes, null for none. */
+    private MetricsListener metrics;
+    
+    
+    
+    /**
+     * Constructs a new <code>MarkovChain</code> containing the given nodes.
+     * The nodes themselves are not copied.
+     * 
+     * @param nodes nodes this chain should contain
+     */
+    public MarkovChain(Collection<? extends MarkovNode<T>> nodes) {
+        this();
+        addAll(nodes);
+    }
+    
+    /**
+     * Constructs a new empty <code>MarkovChain</code>.
+     */
+    public MarkovChain() {
+        this(WeightMap.Storage.HASH_MAP);
+    }
+    
+    /**
+     * Constructs a new empty <code>MarkovChain</code> whose created nodes
+     * store their children the given way.
+     * 
+     * @param storage how created nodes store their children
+     */
+    public MarkovChain(WeightMap.Storage storage) {
+        this.nodes = storage == WeightMap.Storage.CONCURRENT ?
+                new ConcurrentHashMap<>() : new HashMap<>();
+        this.storage = storage;
+    }
+    
+    
+    
+    /**
+     * Returns the node with the given data or null if this chain doesn't
+     * contain such a node.
+     * 
+     * @param data data of the node to return
+     * @return node with the given data or null
+     */
+    public MarkovNode<T> getNode(T data) {
+        return nodes.get(data);
+    }
+    
+    /**
+     * Returns the node with the given data.
+     * If this chain doesn't contain such a node yet, a new one is created and
+     * added.
+     * 
+     * @param data data of the node to return
+     * @return node with the given data
+     */
+    public MarkovNode<T> getOrCreateNode(T data) {
+        return nodes.computeIfAbsent(data, key -> {
+            final MarkovNode<T> node = new MarkovNode<>(key, storage);
+            if(halfLife > 0) {
+                node.setHalfLife(halfLife, clock);
+            } else if(window > 0) {
+                node.setWindow(window);
+            }
+            node.setMaxSize(maxSuccessors);
+            if(samplingCache != null) {
+                node.setSamplingCache(samplingCache);
+            }
+            if(metrics != null) {
+                node.setMetricsListener(metrics);
+                metrics.nodeCreated();
+            }
+            return node;
+        });
+    }
+    
+    /**
+     * Lets the nodes of this chain, the existing and the ones created
+     * later, forget old transitions exponentially.
+     * Every node decays on its own, only when a transition out of it is
+     * trained, so that training never has to touch other nodes.
+     * 
+     * @param halfLife time after which a trained transition counts half,
+     * 0 for no decay
+     * @param clock clock the half-life is measured with, null to count the
+     * transitions trained out of a node
+     * @throws IllegalArgumentException if the half-life is negative
+     * @throws IllegalStateException if a window is set
+     * @see WeightMap#setHalfLife(double, LongSupplier)
+     */
+    public void setHalfLife(double halfLife, LongSupplier clock) {
+        if(!(halfLife >= 0)) {
+            throw new IllegalArgumentException("Half-life less than 0");
+        }
+        if(halfLife > 0 && window > 0) {
+            throw new IllegalStateException("Window already set");
+        }
+        
+        for(MarkovNode<T> node : nodes.values()) {
+            node.setHalfLife(halfLife, clock);
+        }
+        this.halfLife = halfLife;
+        this.clock = clock;
+    }
+    
+    /**
+     * Lets every node of this chain, the existing and the ones created
+     * later, keep only its given number of last trained transitions.
+     * 
+     * @param size number of last transitions every node keeps, 0 for no
+     * window
+     * @throws IllegalArgumentException if the size is negative
+     * @throws IllegalStateException if a half-life is set
+     * @see WeightMap#setWindow(int)
+     */
+    public void setWindow(int size) {
+        if(size < 0) {
+            throw new IllegalArgumentException("Size less than 0");
+        }
+        if(size > 0 && halfLife > 0) {
+            throw new IllegalStateException("Half-life already set");
+        }
+        
+        for(MarkovNode<T> node : nodes.values()) {
+            node.setWindow(size);
+        }
+        this.window = size;
+    }
+    
+    /**
+     * Lets every node of this chain, the existing and the ones created
+     * later, keep only its given number of most likely successors while
+     * training, so that the memory stays bounded even on a corpus with a
+     * long tail of rare transitions.
+     * 
+     * @param k number of successors every node keeps, 0 for no limit
+     * @throws IllegalArgumentException if k is negative
+     * @see WeightMap#setMaxSize(int)
+     */
+    public void setMaxSuccessors(int k) {
+        if(k < 0) {
+            throw new IllegalArgumentException("k less than 0");
+        }
+        
+        for(MarkovNode<T> node : nodes.values()) {
+            node.setMaxSize(k);
+        }
+        this.maxSuccessors = k;
+    }
+    
+    /**
+     * Lets the given cache hold the sampling indices of the nodes of this
+     * chain, the existing and the ones created later, so that only the
+     * indices of the most used nodes are kept while generating.
+     * 
+     * @param cache sampling cache, or null to let every node keep its own
+     * index
+     * @see WeightMap#setSamplingCache(SamplingCache)
+     */
+    public void setSamplingCache(SamplingCache cache) {
+        for(MarkovNode<T> node : nodes.values()) {
+            node.setSamplingCache(cache);
+        }
+        this.samplingCache = cache;
+    }
+    
+    /**
+     * Sets the listener that is told about every node this chain creates
+     * and about the training of and selection by all of its nodes, the
+     * existing and the ones created later.
+     * 
+     * @param listener metrics listener, null for none
+     * @see ChainMetrics
+     */
+    public void setMetricsListener(MetricsListener listener) {
+        for(MarkovNode<T> node : nodes.values()) {
+            node.setMetricsListener(listener);
+        }
+        this.metrics = listener;
+    }
+    
+    
+    
+    /**
+     * Returns the number of transitions of all nodes of this chain.
+     * 
+     * @return number of transitions
+     */
+    public long getTransitionCount() {
+        return nodes.values().parallelStream()
+                .mapToLong(MarkovNode::size)
+                .sum();
+    }
+    
+    /**
+     * Returns the numbers of nodes and transitions, the distribution of the
+     * transitions per node and a rough estimate of the heap used by this
+     * chain.
+     * Must not be called while training.
+     * 
+     * @return statistics of this chain
+     */
+    public ChainStatistics getStatistics() {
+        final long[] histogram = new long[ChainMetrics.BUCKETS];
+        long transitions = 0;
+        int maxFanOut = 0;
+        long bytes = WeightStore.align(WeightStore.OBJECT_HEADER_BYTES
+                        + 5*WeightStore.REFERENCE_BYTES + 2*Integer.BYTES
+                        + Double.BYTES)
+                + WeightStore.hashMapBytes(nodes.size(),
+                        storage == WeightMap.Storage.CONCURRENT ?
+                                WeightStore.CONCURRENT_HASH_MAP_BYTES
+                                : WeightStore.HASH_MAP_BYTES,
+                        WeightStore.HASH_MAP_ENTRY_BYTES);
+        for(MarkovNode<T> node : nodes.values()) {
+            final int fanOut = node.size();
+            histogram[ChainMetrics.bucket(fanOut)]++;
+            transitions += fanOut;
+            maxFanOut = Math.max(maxFanOut, fanOut);
+            bytes += node.estimateBytes();
+        }
+        
+        return new ChainStatistics(nodes.size(), transitions, maxFanOut,
+                histogram, bytes);
+    }
+    
+    /**
+     * Removes all transitions with a weight less than the given one and then
+     * all nodes without transitions that no transition leads to anymore.
+     * The nodes are pruned in parallel. Must not be called while training.
+     * 
+     * @param minWeight least weight of the transitions to keep
+     * @return number of removed transitions
+     */
+    public long pruneBelow(long minWeight) {
+        final long removed = nodes.values().parallelStream()
+                .mapToLong(node ->
+                        trimmed(node, node.removeBelow(minWeight)))
+                .sum();
+        removeUnreferenced();
+        return removed;
+    }
+    
+    /**
+     * Keeps only the given number of most likely successors of every node
+     * and then removes all nodes without transitions that no transition
+     * leads to anymore.
+     * The nodes are pruned in parallel. Must not be called while training.
+     * 
+     * @param k number of successors every node keeps
+     * @return number of removed transitions
+     * @throws IllegalArgumentException if k is negative
+     */
+    public long pruneToTop(int k) {
+        if(k < 0) {
+            throw new IllegalArgumentException("k less than 0");
+        }
+        
+        final long removed = nodes.values().parallelStream()
+                .mapToLong(node -> trimmed(node, node.retainTop(k)))
+                .sum();
+        removeUnreferenced();
+        return removed;
+    }
+    
+    /**
+     * Removes the transitions with the lowest weights, so that at most the
+     * given number of transitions is left, and then all nodes without
+     * transitions that no transition leads to anymore.
+     * All transitions of the least weight that is kept are kept, so that the
+     * result doesn't depend on the order of the nodes, which is why fewer
+     * transitions than given may be left.
+     * Must not be called while training.
+     * 
+     * @param maxTransitions number of transitions to keep at most
+     * @return number of removed transitions
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public long pruneToBudget(long maxTransitions) {
+        if(maxTransitions < 0) {
+            throw new IllegalArgumentException(
+                    "Number of transitions less than 0");
+        }
+        
+        //Binary search for the least weight that keeps within the budget.
+        //Every step is a parallel pass over all transitions, but needs no
+        //memory in contrast to sorting all weights
+        long low = 0;
+        long high = nodes.values().parallelStream()
+                .mapToLong(MarkovChain::maxWeight)
+                .max().orElse(0) + 1;
+        while(low < high) {
+            final long mid = low + (high-low) / 2;
+            if(countAtLeast(mid) <= maxTransitions) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        
+        return pruneBelow(low);
+    }
+    
+    /**
+     * Shrinks the storage of the given node if transitions were removed.
+     * 
+     * @param node pruned node
+     * @param removed number of removed transitions
+     * @return number of removed transitions
+     */
+    private static long trimmed(MarkovNode<?> node, int removed) {
+        if(removed > 0) {
+            node.trimToSize();
+        }
+        return removed;
+    }
+    
+    /**
+     * Returns the number of transitions with at least the given weight.
+     * 
+     * @param minWeight least weight of the transitions to count
+     * @return number of transitions with at least the given weight
+     */
+    private long countAtLeast(long minWeight) {
+        return nodes.values().parallelStream()
+                .mapToLong(node -> {
+                    final long[] count = {0};
+                    node.forEachWeight((child, weight) -> {
+                        if(weight >= minWeight) {
+                            count[0]++;
+                        }
+                    });
+                    return count[0];
+                })
+                .sum();
+    }
+    
+    /**
+     * Returns the largest weight of the transitions of the given node.
+     * 
+     * @param node node
+     * @return largest weight or 0 if the node has no transitions
+     */
+    private static long maxWeight(MarkovNode<?> node) {
+        final long[] max = {0};
+        node.forEachWeight((child, weight) ->
+                max[0] = Math.max(max[0], weight));
+        return max[0];
+    }
+    
+    /**
+     * Removes all nodes without transitions that no transition leads to.
+     * Removing them can't leave other nodes unreferenced, since they have no
+     * transitions.
+     */
+    private void removeUnreferenced() {
+        //Data instead of the nodes themselves, since apply may have been
+        //given nodes that are equal to but not the ones of this chain
+        final Set<T> referenced = new HashSet<>();
+        for(MarkovNode<T> node : nodes.values()) {
+            for(MarkovNode<T> child : node.keySet()) {
+                referenced.add(child.getData());
+            }
+        }
+        
+        nodes.values().removeIf(node -> node.isEmpty()
+                && !referenced.contains(node.getData()));
+    }
+    
+    
+    
+    /**
+     * Adds the nodes and transitions of the given chain to this chain.
+     * Nodes are unified by their data: for every node of the given chain
+     * the node with the same data of this chain is used, or created if
+     * there is none yet. The weights of transitions both chains contain are
+     * summed up.
+     * The given chain is not changed and none of its nodes are taken over.
+     * 
+     * @param other chain whose nodes and transitions should be added
+     */
+    public void merge(Collection<? extends MarkovNode<T>> other) {
+        for(MarkovNode<T> otherNode : other) {
+            final MarkovNode<T> node = getOrCreateNode(otherNode.getData());
+            for(MarkovNode<T> otherChild : otherNode.keySet()) {
+                node.increment(getOrCreateNode(otherChild.getData()),
+                        otherNode.getWeight(otherChild));
+            }
+        }
+    }
+    
+    /**
+     * Returns a compact read-only copy of this chain for generation.
+     * 
+     * @return frozen copy of this chain
+     * @see FrozenChain
+     */
+    public FrozenChain<T> freeze() {
+        return new FrozenChain<>(this);
+    }
+    
+    /**
+     * Returns a compact read-only copy of this chain for generation, whose
+     * node ids are taken from the given dictionary.
+     * 
+     * @param dictionary dictionary of the data of the nodes, may be shared
+     * with other chains
+     * @return frozen copy of this chain
+     * @see FrozenChain
+     */
+    public FrozenChain<T> freeze(TokenDictionary<T> dictionary) {
+        return new FrozenChain<>(this, dictionary);
+    }
+    
+    
+    
+    //Set
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Object o) {
+        if(!(o instanceof MarkovNode)) {
+            return false;
+        }
+        
+        return nodes.containsKey(((MarkovNode<?>)o).getData());
+    }
+    
+    /**
+     * Adds the given node if this chain doesn't yet contain a node with
+     * equal data.
+     * 
+     * @param node node to add
+     * @return if this chain changed
+     */
+    @Override
+    public boolean add(MarkovNode<T> node) {
+        return nodes.putIfAbsent(node.getData(), node) == null;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Object o) {
+        if(!(o instanceof MarkovNode)) {
+            return false;
+        }
+        
+        return nodes.remove(((MarkovNode<?>)o).getData()) != null;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        nodes.clear();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<MarkovNode<T>> iterator() {
+        return nodes.values().iterator();
+    }
+}
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.BiFunction;
+import java.util.function.IntUnaryOperator;
 
 
 
@@ -45,6 +46,9 @@ import java.util.function.BiFunction;
  * {@link Iterator} interface. The latter doesn't traverse over the nodes but
  * just stays on the respective node and keeps randomly returning it's
  * children.
+ * Iterators can be given their own random source, for example a seeded
+ * {@link java.util.SplittableRandom} per generated sequence, so that many
+ * threads can walk the same graph at once with reproducible results.
  * 
  * @param <T> the type of data contained by this node
  * 
@@ -96,6 +100,18 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
      * @param data data to be contained by this node
      */
     public MarkovNode(T data) {
+        this(data, Storage.HASH_MAP);
+    }
+    
+    /**
+     * Constructs a new MarkovNode containing the given data, which stores
+     * the weights of its children the given way.
+     * 
+     * @param data data to be contained by this node
+     * @param storage how to store the children and their weights
+     */
+    public MarkovNode(T data, Storage storage) {
+        super(storage);
         this.data = data;
     }
     
@@ -115,6 +131,9 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
     /**
      * An iterator that iterates over the graph spanned by Markov nodes and
      * returns the data of the node it is currently on.
+     * Once the sampling indices of the nodes are built, walking allocates
+     * nothing, and with <code>reset</code> the same iterator can be reused
+     * for any number of sequences.
      * 
      * @param <E> the type of data contained by the nodes
      */
@@ -124,6 +143,16 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
          * Current node whose data hast been returned by the last next call.
          */
         private MarkovNode<E> node;
+        /**
+         * If the next call should return the data of the current node
+         * itself, instead of the data of one of its children.
+         */
+        private boolean first;
+        /**
+         * Random source for the child selection, null to use the one of the
+         * nodes.
+         */
+        private final IntUnaryOperator random;
         
         
         
@@ -149,11 +178,45 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
          * given node
          */
         public MarkovIterator(MarkovNode<E> node, boolean returnFirst) {
-            if(!returnFirst) {
-                this.node = node;
-            } else {
-                this.node = new MarkovNode<>();
-                this.node.accept(node);
+            this(node, returnFirst, null);
+        }
+        
+        /**
+         * Constructs a new <code>MarkovIterator</code> which starts at the
+         * given node and selects children with the given random source.
+         * If the first returned data will be from the given node can be
+         * determined with the given boolean value.
+         * 
+         * @param node node to start from
+         * @param returnFirst if the first returned data should be from the
+         * given node
+         * @param random random source, returns a value below the given bound
+         * (see {@link WeightMap#get(IntUnaryOperator)}), null to use the
+         * one of the nodes
+         */
+        public MarkovIterator(MarkovNode<E> node, boolean returnFirst,
+                IntUnaryOperator random) {
+            this.random = random;
+            reset(node, returnFirst);
+        }
+        
+        
+        
+        /**
+         * Restarts this iterator at the given node, so that it can be reused
+         * for the next sequence instead of constructing a new one.
+         * 
+         * @param node node to start from
+         * @param returnFirst if the first returned data should be from the
+         * given node
+         */
+        public void reset(MarkovNode<E> node, boolean returnFirst) {
+            this.node = node;
+            this.first = returnFirst;
+            
+            final MetricsListener listener = node.getMetricsListener();
+            if(listener != null) {
+                listener.sequenceStarted();
             }
         }
         
@@ -164,7 +227,7 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
          */
         @Override
         public boolean hasNext() {
-            return node.hasNext();
+            return first || node.hasNext();
         }
         
         /**
@@ -172,7 +235,12 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
          */
         @Override
         public E next() {
-            node = node.next();
+            if(first) {
+                first = false;
+            } else {
+                //Not next(), which would write to the shared node
+                node = random == null ? node.get() : node.get(random);
+            }
             return node.getData();
         }
     }
@@ -188,6 +256,18 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
         return new MarkovIterator<>(this);
     }
     
+    /**
+     * Returns an iterator that iterates over the graph spanned by Markov
+     * nodes and selects children with the given random source.
+     * 
+     * @param random random source, returns a value below the given bound
+     * (see {@link WeightMap#get(IntUnaryOperator)})
+     * @return iterator that iterates through a Markov chain
+     */
+    public Iterator<T> iterator(IntUnaryOperator random) {
+        return new MarkovIterator<>(this, false, random);
+    }
+    
     
     
     /**
@@ -197,6 +277,9 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
      * and added to the set.
      * If this node doesn't map to the child node, it is added to this
      * node with weight 1.
+     * If the given set is a {@link MarkovChain}, the child is looked up by
+     * its data in constant time. Otherwise all nodes of the set have to be
+     * searched through.
      * 
      * @param nodes set with nodes, where a new one is added if needed
      * @param childData data of the child whose weight should be incremented
@@ -205,26 +288,48 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
     @Override
     public MarkovNode<T> apply(Set<MarkovNode<T>> nodes, T childData) {
         
+        final MarkovNode<T> child;
+        if(nodes instanceof MarkovChain) {
+            //Indexed lookup, creates the child if needed
+            child = ((MarkovChain<T>)nodes).getOrCreateNode(childData);
+        } else {
+            child = findOrCreate(nodes, childData, getMetricsListener());
+        }
+        
+        //Increment weight
+        accept(child);
+        
+        
+        return child;
+    }
+    
+    /**
+     * Searches the given set for the node with the given data and creates and
+     * adds a new one if it doesn't exist yet.
+     * 
+     * @param nodes set with nodes, where a new one is added if needed
+     * @param childData data of the node to find
+     * @param metrics listener for a created node, null for none
+     * @return node with the given data
+     */
+    private static <T> MarkovNode<T> findOrCreate(Set<MarkovNode<T>> nodes,
+            T childData, MetricsListener metrics) {
+        
         //Find child node
-        MarkovNode<T> child = null;
         for(MarkovNode<T> node : nodes) {
             if(node.getData() == null ?
                     childData == null : node.getData().equals(childData)) {
-                child = node;
-                break;
+                return node;
             }
         }
         
         //If it doesn't yet exist, create a new one
-        if(child == null) {
-            child = new MarkovNode<>(childData);
-            nodes.add(child);
+        final MarkovNode<T> child = new MarkovNode<>(childData);
+        if(metrics != null) {
+            child.setMetricsListener(metrics);
+            metrics.nodeCreated();
         }
-        
-        //Increment weight
-        accept(child);
-        
-        
+        nodes.add(child);
         return child;
     }
     
@@ -237,7 +342,7 @@ public class MarkovNode<T> extends WeightMap<MarkovNode<T>>
      */
     @Override
     public int hashCode() {
-        return data.hashCode();
+        return Objects.hashCode(data);
     }
     
     /**
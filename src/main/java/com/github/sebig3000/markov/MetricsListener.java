@@ -0,0 +1,77 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+
+
+/**
+ * Listener for the events on the hot paths of training and generation.
+ * Maps and nodes call it when a listener is set (see
+ * {@link WeightMap#setMetricsListener(MetricsListener)} and
+ * {@link MarkovChain#setMetricsListener(MetricsListener)}). Without one,
+ * every hook is a single check of a field for null, so that the paths cost
+ * nothing measurable when metrics are disabled.
+ * 
+ * The methods are called on the training and generating threads, possibly
+ * many at once, and should return quickly. All methods do nothing by
+ * default, so that a listener only implements the events it needs.
+ * {@link ChainMetrics} counts all of them.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public interface MetricsListener {
+    
+    /**
+     * Called when a transition has been trained, i.e. a key has been
+     * accepted by a map.
+     */
+    default void trained() {
+    }
+    
+    /**
+     * Called when a chain or a node has created a new node.
+     */
+    default void nodeCreated() {
+    }
+    
+    /**
+     * Called when a random key has been selected.
+     * 
+     * @param scanned number of entries examined to find the key: the steps
+     * of the binary search through the sampling index or the number of keys
+     * if they were scanned
+     */
+    default void sampled(int scanned) {
+    }
+    
+    /**
+     * Called when an iterator has started to walk a new sequence.
+     */
+    default void sequenceStarted() {
+    }
+}
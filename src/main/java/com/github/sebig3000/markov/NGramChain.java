@@ -0,0 +1,385 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntUnaryOperator;
+
+
+
+/**
+ * Markov chain of higher order.
+ * A state is not a single token but the window of the last <i>k</i> tokens
+ * (the context), where <i>k</i> is the order of the chain. For every context
+ * a {@link WeightMap} holds the weights of the following tokens.
+ * 
+ * Tokens are interned to dense integer ids by a {@link TokenDictionary},
+ * which can be shared with other chains, and a context is stored as its
+ * ids packed into a single <code>long</code>, so that contexts need no
+ * objects of their own. Each id therefore gets <code>64/k</code> bits
+ * (at most 31), which limits the number of distinct tokens, for example
+ * to 2^21 (about two million) for an order of 3.
+ * 
+ * With backoff, the chain is also trained on all lower orders. While
+ * generating, if the context of order <i>k</i> has never been followed by a
+ * token, the next lower order with successors is used instead.
+ * 
+ * Every sequence starts with a window full of the start token, so the first
+ * tokens of a sequence are trained on contexts padded with it.
+ * 
+ * @param <T> the type of tokens
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class NGramChain<T> implements Iterable<T> {
+    
+    /** Order, the number of tokens in a context. */
+    private final int order;
+    /** Bits per token id in a packed context. */
+    private final int bits;
+    /** If lower orders are trained and used. */
+    private final boolean backoff;
+    /** Dictionary of the tokens. */
+    private final TokenDictionary<T> dictionary;
+    /** Id of the start token. */
+    private final int startId;
+    /** Packed context-index maps, one for every order (index order-1). */
+    private final LongIndex[] contexts;
+    /** Successors of the contexts, one list for every order
+     * (index order-1), indexed by the values of the context maps. */
+    private final List<List<WeightMap<T>>> successors;
+    
+    
+    
+    /**
+     * Constructs a new empty <code>NGramChain</code> of the given order
+     * with backoff.
+     * 
+     * @param order number of tokens in a context
+     * @param start token the windows are padded with at the start of a
+     * sequence
+     */
+    public NGramChain(int order, T start) {
+        this(order, start, true);
+    }
+    
+    /**
+     * Constructs a new empty <code>NGramChain</code> of the given order.
+     * 
+     * @param order number of tokens in a context
+     * @param start token the windows are padded with at the start of a
+     * sequence
+     * @param backoff if lower orders should be trained and used when a
+     * context has no successors
+     * @throws IllegalArgumentException if the order is less than 1 or
+     * greater than 64
+     */
+    public NGramChain(int order, T start, boolean backoff) {
+        this(order, start, backoff, new TokenDictionary<>());
+    }
+    
+    /**
+     * Constructs a new empty <code>NGramChain</code> of the given order,
+     * whose token ids are taken from the given dictionary.
+     * 
+     * @param order number of tokens in a context
+     * @param start token the windows are padded with at the start of a
+     * sequence
+     * @param backoff if lower orders should be trained and used when a
+     * context has no successors
+     * @param dictionary dictionary of the tokens, may be shared with other
+     * chains
+     * @throws IllegalArgumentException if the order is less than 1 or
+     * greater than 64
+     * @throws IllegalStateException if there are too many distinct tokens
+     * for the order
+     */
+    public NGramChain(int order, T start, boolean backoff,
+            TokenDictionary<T> dictionary) {
+        if(order < 1 || order > 64) {
+            throw new IllegalArgumentException("Order not between 1 and 64");
+        }
+        
+        this.order = order;
+        this.bits = Math.min(31, 64 / order);
+        this.backoff = backoff;
+        
+        contexts = new LongIndex[order];
+        successors = new ArrayList<>(order);
+        for(int i=0; i<order; i++) {
+            contexts[i] = new LongIndex();
+            successors.add(new ArrayList<>());
+        }
+        
+        this.dictionary = dictionary;
+        startId = intern(start);
+    }
+    
+    
+    
+    /**
+     * Returns the order, the number of tokens in a context.
+     * 
+     * @return order
+     */
+    public int getOrder() {
+        return order;
+    }
+    
+    /**
+     * Returns the number of distinct contexts of the given order.
+     * 
+     * @param order order between 1 and the order of this chain
+     * @return number of contexts of the given order
+     */
+    public int getContextCount(int order) {
+        return contexts[order-1].size();
+    }
+    
+    /**
+     * Returns the weights of the tokens following the given context or null
+     * if the context has never been followed by a token.
+     * 
+     * @param context context of at most as many tokens as the order
+     * @return weights of the following tokens or null
+     * @throws IllegalArgumentException if the context is empty or longer
+     * than the order
+     */
+    public WeightMap<T> getSuccessors(List<? extends T> context) {
+        if(context.size() < 1 || context.size() > order) {
+            throw new IllegalArgumentException("Invalid context length");
+        }
+        
+        long key = 0;
+        for(T token : context) {
+            final int id = dictionary.getId(token);
+            if(id < 0) {
+                return null;
+            }
+            key = key << bits | id;
+        }
+        
+        return lookup(context.size(), key);
+    }
+    
+    
+    
+    /**
+     * Trains this chain on the given sequence of tokens.
+     * 
+     * @param sequence sequence of tokens
+     * @throws IllegalStateException if there are too many distinct tokens
+     * for the order
+     */
+    public void train(Iterable<? extends T> sequence) {
+        final int[] window = newWindow();
+        
+        for(T token : sequence) {
+            final int id = intern(token);
+            //Use the interned token as key, so that equal tokens are shared
+            final T interned = dictionary.getToken(id);
+            
+            for(int j=backoff?1:order; j<=order; j++) {
+                final long key = pack(window, j);
+                int index = contexts[j-1].get(key);
+                if(index < 0) {
+                    index = successors.get(j-1).size();
+                    successors.get(j-1).add(
+                            new WeightMap<>(WeightMap.Storage.TABLE));
+                    contexts[j-1].put(key, index);
+                }
+                successors.get(j-1).get(index).accept(interned);
+            }
+            
+            shift(window, id);
+        }
+    }
+    
+    
+    
+    /**
+     * Returns the id of the given token, assigning a new one if needed.
+     * 
+     * @param token token
+     * @return id of the token
+     * @throws IllegalStateException if there are too many distinct tokens
+     * for the order
+     */
+    private int intern(T token) {
+        final int id = dictionary.getOrAddId(token);
+        if(id >>> bits != 0) {
+            throw new IllegalStateException(
+                    "Too many distinct tokens for order " + order);
+        }
+        return id;
+    }
+    
+    /**
+     * Returns a new window full of the start token.
+     * 
+     * @return new window
+     */
+    private int[] newWindow() {
+        final int[] window = new int[order];
+        Arrays.fill(window, startId);
+        return window;
+    }
+    
+    /**
+     * Appends the given id to the window, dropping the oldest one.
+     * 
+     * @param window window
+     * @param id id to append
+     */
+    private static void shift(int[] window, int id) {
+        System.arraycopy(window, 1, window, 0, window.length-1);
+        window[window.length-1] = id;
+    }
+    
+    /**
+     * Packs the last ids of the given window into a context key.
+     * 
+     * @param window window
+     * @param length number of ids to pack
+     * @return context key
+     */
+    private long pack(int[] window, int length) {
+        long key = 0;
+        for(int i=window.length-length; i<window.length; i++) {
+            key = key << bits | window[i];
+        }
+        return key;
+    }
+    
+    /**
+     * Returns the successors of the given context or null.
+     * 
+     * @param length number of tokens in the context
+     * @param key packed context
+     * @return successors of the context or null
+     */
+    private WeightMap<T> lookup(int length, long key) {
+        final int index = contexts[length-1].get(key);
+        return index < 0 ? null : successors.get(length-1).get(index);
+    }
+    
+    /**
+     * Returns the successors of the longest context at the end of the given
+     * window that has any, or null if there is none.
+     * 
+     * @param window window
+     * @return successors or null
+     */
+    private WeightMap<T> successors(int[] window) {
+        for(int j=order; j>=(backoff?1:order); j--) {
+            final WeightMap<T> map = lookup(j, pack(window, j));
+            if(map != null && map.getTotalWeightsLong() > 0) {
+                return map;
+            }
+        }
+        return null;
+    }
+    
+    
+    
+    /**
+     * An iterator that generates a sequence of tokens from an
+     * <code>NGramChain</code>, starting with a window full of the start
+     * token.
+     */
+    private class NGramIterator implements Iterator<T> {
+        
+        /** Ids of the last generated tokens. */
+        private final int[] window = newWindow();
+        /** Random source, null to use the one of the weight maps. */
+        private final IntUnaryOperator random;
+        
+        
+        
+        /**
+         * Constructs a new <code>NGramIterator</code>.
+         * 
+         * @param random random source, null to use the one of the weight
+         * maps
+         */
+        NGramIterator(IntUnaryOperator random) {
+            this.random = random;
+        }
+        
+        
+        
+        /**
+         * {@inheritdoc}
+         */
+        @Override
+        public boolean hasNext() {
+            return successors(window) != null;
+        }
+        
+        /**
+         * {@inheritdoc}
+         */
+        @Override
+        public T next() {
+            final WeightMap<T> map = successors(window);
+            if(map == null) {
+                throw new NoSuchElementException("Context has no successors");
+            }
+            
+            final T token = random == null ? map.get() : map.get(random);
+            shift(window, dictionary.getId(token));
+            return token;
+        }
+    }
+    
+    /**
+     * Returns an iterator that generates a sequence of tokens.
+     * 
+     * @return iterator that generates a sequence of tokens
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new NGramIterator(null);
+    }
+    
+    /**
+     * Returns an iterator that generates a sequence of tokens with the given
+     * random source.
+     * 
+     * @param random random source, returns a value below the given bound
+     * (see {@link WeightMap#get(IntUnaryOperator)})
+     * @return iterator that generates a sequence of tokens
+     */
+    public Iterator<T> iterator(IntUnaryOperator random) {
+        return new NGramIterator(random);
+    }
+}
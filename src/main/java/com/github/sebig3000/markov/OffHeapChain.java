@@ -0,0 +1,662 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
+
+
+
+/**
+ * Markov chain stored outside of the garbage collected heap, for chains
+ * with hundreds of millions of transitions.
+ * The heap only holds this object, the {@link TokenDictionary} of the data
+ * of the nodes and a few small arrays; the node tables and edges live in
+ * direct buffers or in files mapped into memory, so they neither count
+ * against the maximum heap size nor are ever traversed by the garbage
+ * collector.
+ * 
+ * Like in a {@link FrozenChain}, every node is identified by the id of its
+ * data in the dictionary. The node tables hold, indexed by id, the block of
+ * edges of the node, the sum of its weights and its number of successors.
+ * A block is an open addressing table of (target id, weight) pairs with a
+ * power of 2 number of slots. When it gets three quarters full, it is
+ * rehashed into a block twice as large and the old one is put on a free
+ * list of its size, to be reused by the next node that grows to it.
+ * Training increments a weight in constant time, like a {@link WeightMap};
+ * sampling draws a value below the sum of the weights and scans the block,
+ * which is fast for the small fan-outs most nodes have. For many walks over
+ * a finished chain, {@link #freeze()} it.
+ * 
+ * Training the same chain from several threads at once is synchronized;
+ * walking it from several threads at once is safe as long as it isn't
+ * trained at the same time. Once closed, a chain can't be used anymore.
+ * Mapped files are scratch storage and deleted on closing, not a file
+ * format: to save a chain, freeze it and use {@link ChainFile}.
+ * 
+ * @param <T> the type of data contained by the nodes
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class OffHeapChain<T> implements AutoCloseable {
+    
+    /** Bytes per slot of a block: target id plus 1 and weight. */
+    private static final int SLOT_BYTES = 8;
+    /** Binary logarithm of the number of slots of the smallest block. */
+    private static final int MIN_CAPACITY_LOG = 2;
+    
+    /** Dictionary of the data of the nodes, whose ids are the node ids. */
+    private final TokenDictionary<T> dictionary;
+    /** Block of every node: address, or-ed with the binary logarithm of
+     * its number of slots, 0 for none. */
+    private final OffHeapMemory blocks;
+    /** Sum of the weights of every node. */
+    private final OffHeapMemory totals;
+    /** Number of successors of every node. */
+    private final OffHeapMemory sizes;
+    /** Blocks of edges. */
+    private final OffHeapMemory edges;
+    /** First free block of every size, -1 for none; the next one is
+     * stored at the start of a free block. */
+    private final long[] freeBlocks = new long[32];
+    /** Number of nodes the tables have room for. */
+    private int size = 0;
+    /** Number of edges. */
+    private long edgeCount = 0;
+    
+    
+    
+    /**
+     * Constructs a new empty <code>OffHeapChain</code> in direct buffers with
+     * a dictionary of its own.
+     */
+    public OffHeapChain() {
+        this(new TokenDictionary<>());
+    }
+    
+    /**
+     * Constructs a new empty <code>OffHeapChain</code> in direct buffers,
+     * whose node ids are taken from the given dictionary.
+     * 
+     * @param dictionary dictionary of the data of the nodes, may be shared
+     * with other chains
+     */
+    public OffHeapChain(TokenDictionary<T> dictionary) {
+        this(dictionary, OffHeapMemory.SEGMENT_BITS);
+    }
+    
+    /**
+     * Constructs a new empty <code>OffHeapChain</code> in direct buffers
+     * with the given segment size.
+     * 
+     * @param dictionary dictionary of the data of the nodes
+     * @param segmentBits number of address bits within a segment
+     */
+    OffHeapChain(TokenDictionary<T> dictionary, int segmentBits) {
+        this.dictionary = dictionary;
+        blocks = new OffHeapMemory(segmentBits);
+        totals = new OffHeapMemory(segmentBits);
+        sizes = new OffHeapMemory(segmentBits);
+        edges = new OffHeapMemory(segmentBits);
+        Arrays.fill(freeBlocks, -1);
+    }
+    
+    /**
+     * Constructs a new empty <code>OffHeapChain</code> in files mapped into
+     * memory, so that the operating system can page out parts of chains
+     * larger than the physical memory.
+     * The files are created in the given directory and deleted when the
+     * chain is closed.
+     * 
+     * @param directory directory for the files
+     * @param dictionary dictionary of the data of the nodes, may be shared
+     * with other chains
+     * @throws IOException if the files can't be created
+     */
+    public OffHeapChain(Path directory, TokenDictionary<T> dictionary)
+            throws IOException {
+        this.dictionary = dictionary;
+        final int bits = OffHeapMemory.SEGMENT_BITS;
+        blocks = new OffHeapMemory(directory.resolve("blocks.bin"), bits);
+        totals = new OffHeapMemory(directory.resolve("totals.bin"), bits);
+        sizes = new OffHeapMemory(directory.resolve("sizes.bin"), bits);
+        edges = new OffHeapMemory(directory.resolve("edges.bin"), bits);
+        Arrays.fill(freeBlocks, -1);
+    }
+    
+    
+    
+    /**
+     * Returns the number of nodes.
+     * All ids from 0 (including) to this number (excluding) are valid node
+     * ids; nodes that have never been trained have no successors.
+     * 
+     * @return number of nodes
+     */
+    public int size() {
+        return Math.max(size, dictionary.size());
+    }
+    
+    /**
+     * Returns the number of edges.
+     * 
+     * @return number of edges
+     */
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+    
+    /**
+     * Returns the number of bytes reserved outside of the heap.
+     * 
+     * @return number of reserved bytes
+     */
+    public long getOffHeapBytes() {
+        return blocks.getCapacity() + totals.getCapacity()
+                + sizes.getCapacity() + edges.getCapacity();
+    }
+    
+    /**
+     * Returns the dictionary of the data of the nodes.
+     * 
+     * @return dictionary
+     */
+    public TokenDictionary<T> getDictionary() {
+        return dictionary;
+    }
+    
+    /**
+     * Returns the id of the node with the given data or -1 if there is no
+     * such node.
+     * 
+     * @param data data of the node
+     * @return id of the node or -1
+     */
+    public int getId(T data) {
+        return dictionary.getId(data);
+    }
+    
+    /**
+     * Returns the id of the node with the given data, creating the node if
+     * needed.
+     * 
+     * @param data data of the node
+     * @return id of the node
+     */
+    public int getOrCreateId(T data) {
+        return dictionary.getOrAddId(data);
+    }
+    
+    /**
+     * Returns the data of the node with the given id.
+     * 
+     * @param id id of the node
+     * @return data of the node
+     */
+    public T getData(int id) {
+        return dictionary.getToken(id);
+    }
+    
+    /**
+     * Returns the sum of the weights of all edges of the given node.
+     * 
+     * @param id id of the node
+     * @return sum of the weights of the edges of the node
+     */
+    public long getTotalWeights(int id) {
+        return id < size ? totals.getLong(8L * id) : 0;
+    }
+    
+    /**
+     * Returns the number of successors of the given node.
+     * 
+     * @param id id of the node
+     * @return number of successors
+     */
+    public int getSuccessorCount(int id) {
+        return id < size ? sizes.getInt(4L * id) : 0;
+    }
+    
+    /**
+     * Returns the weight of the edge between the given nodes or 0 if there
+     * is no such edge.
+     * 
+     * @param from id of the node the edge starts at
+     * @param to id of the node the edge ends at
+     * @return weight of the edge
+     */
+    public int getWeight(int from, int to) {
+        if(from >= size) {
+            return 0;
+        }
+        final long block = blocks.getLong(8L * from);
+        if(block == 0) {
+            return 0;
+        }
+        final long slot = find(block, to);
+        return edges.getInt(slot) == 0 ? 0 : edges.getInt(slot + 4);
+    }
+    
+    
+    
+    /**
+     * Increments the weight of the edge between the given nodes by 1,
+     * creating the edge if needed.
+     * 
+     * @param from id of the node the edge starts at
+     * @param to id of the node the edge ends at
+     * @see #increment(int, int, int)
+     */
+    public void accept(int from, int to) {
+        increment(from, to, 1);
+    }
+    
+    /**
+     * Increments the weight of the edge from the given node to the node with
+     * the given data and returns the id of the latter, creating it if
+     * needed. The counterpart of {@link MarkovNode#apply}: training a
+     * sequence applies every element to the id returned for the previous
+     * one.
+     * 
+     * @param from id of the node the edge starts at
+     * @param childData data of the node the edge ends at
+     * @return id of the child node
+     */
+    public int apply(int from, T childData) {
+        final int to = dictionary.getOrAddId(childData);
+        increment(from, to, 1);
+        return to;
+    }
+    
+    /**
+     * Trains this chain on the given sequence, incrementing the edge
+     * between every element and the next one.
+     * 
+     * @param sequence sequence of data
+     */
+    public void train(Iterable<? extends T> sequence) {
+        int previous = -1;
+        for(T data : sequence) {
+            previous = previous < 0 ?
+                    dictionary.getOrAddId(data) : apply(previous, data);
+        }
+    }
+    
+    /**
+     * Increments the weight of the edge between the given nodes, creating
+     * the edge if needed.
+     * 
+     * @param from id of the node the edge starts at
+     * @param to id of the node the edge ends at
+     * @param delta amount to add to the weight, positive
+     * @throws IllegalArgumentException if an id or the delta is negative or
+     * the delta 0
+     * @throws ArithmeticException if the weight overflows an
+     * <code>int</code> or the sum of the weights of the node a
+     * <code>long</code>
+     * @throws IllegalStateException if a node has more successors than a
+     * block can hold
+     */
+    public synchronized void increment(int from, int to, int delta) {
+        if(from < 0 || to < 0) {
+            throw new IllegalArgumentException("Negative id");
+        }
+        if(delta <= 0) {
+            throw new IllegalArgumentException("Delta less than 1");
+        }
+        ensureNodes(Math.max(from, to) + 1);
+        
+        final long total = Math.addExact(getTotalWeights(from), delta);
+        long block = blocks.getLong(8L * from);
+        if(block == 0) {
+            block = allocateBlock(MIN_CAPACITY_LOG);
+            blocks.putLong(8L * from, block);
+        }
+        
+        long slot = find(block, to);
+        if(edges.getInt(slot) != 0) {
+            edges.putInt(slot + 4,
+                    Math.addExact(edges.getInt(slot + 4), delta));
+        } else {
+            final int successors = getSuccessorCount(from) + 1;
+            final int capacityLog = (int)block & 31;
+            if(successors > 3 << capacityLog-2) {
+                block = growBlock(block);
+                blocks.putLong(8L * from, block);
+                slot = find(block, to);
+            }
+            edges.putInt(slot, to + 1);
+            edges.putInt(slot + 4, delta);
+            sizes.putInt(4L * from, successors);
+            edgeCount++;
+        }
+        totals.putLong(8L * from, total);
+    }
+    
+    
+    
+    /**
+     * Returns the id of a random successor of the given node.
+     * 
+     * @param id id of the node
+     * @param random random source, returns a value below the given bound
+     * (see {@link WeightMap#get(IntUnaryOperator)})
+     * @return id of a random successor or -1 if the node has no successors
+     */
+    public int next(int id, IntUnaryOperator random) {
+        final long total = getTotalWeights(id);
+        if(total <= 0) {
+            return -1;
+        }
+        
+        final long block = blocks.getLong(8L * id);
+        final long address = block & ~31L;
+        final long end = address + ((long)SLOT_BYTES << ((int)block & 31));
+        long value = WeightMap.nextLong(random, total);
+        for(long slot=address; slot<end; slot+=SLOT_BYTES) {
+            //Empty slots have weight 0, so they are never selected
+            value -= edges.getInt(slot + 4);
+            if(value < 0) {
+                return edges.getInt(slot) - 1;
+            }
+        }
+        throw new IllegalStateException("Weights don't add up to the total");
+    }
+    
+    /**
+     * Returns a new frozen chain with the same nodes and transitions and the
+     * same dictionary.
+     * The frozen chain is stored on the heap, as compact arrays.
+     * 
+     * @return frozen copy of this chain
+     * @throws ArithmeticException if there are more edges than an
+     * <code>int</code> can count or the weights of a node sum up beyond the
+     * range of <code>int</code>
+     */
+    public synchronized FrozenChain<T> freeze() {
+        final int n = size();
+        final int[] offsets = new int[n+1];
+        final int[] targets = new int[Math.toIntExact(edgeCount)];
+        final int[] cumulativeWeights = new int[targets.length];
+        long[] row = new long[0];
+        int e = 0;
+        for(int i=0; i<n; i++) {
+            offsets[i] = e;
+            final int successors = getSuccessorCount(i);
+            if(successors == 0) {
+                continue;
+            }
+            
+            if(row.length < successors) {
+                row = new long[Math.max(successors, 2*row.length)];
+            }
+            final long block = blocks.getLong(8L * i);
+            final long address = block & ~31L;
+            int length = 0;
+            for(int s=0; s<1<<((int)block & 31); s++) {
+                final long slot = address + (long)SLOT_BYTES * s;
+                if(edges.getInt(slot) != 0) {
+                    row[length++] = FrozenChain.pack(edges.getInt(slot) - 1,
+                            edges.getInt(slot + 4));
+                }
+            }
+            e = FrozenChain.writeRow(row, length, targets, cumulativeWeights,
+                    e);
+        }
+        offsets[n] = e;
+        
+        return new FrozenChain<>(dictionary, offsets, targets,
+                cumulativeWeights);
+    }
+    
+    /**
+     * Releases the memory outside of the heap and deletes mapped files.
+     * 
+     * @throws IOException if closing a file fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        blocks.close();
+        totals.close();
+        sizes.close();
+        edges.close();
+        size = 0;
+        edgeCount = 0;
+    }
+    
+    
+    
+    /**
+     * Grows the node tables to hold at least the given number of nodes.
+     * 
+     * @param count number of nodes
+     */
+    private void ensureNodes(int count) {
+        if(count > size) {
+            blocks.ensureCapacity(8L * count);
+            totals.ensureCapacity(8L * count);
+            sizes.ensureCapacity(4L * count);
+            size = count;
+        }
+    }
+    
+    /**
+     * Returns the slot of the given target in the given block, or the empty
+     * slot it would be inserted into.
+     * 
+     * @param block block with its binary logarithm of the number of slots
+     * @param target id of the target node
+     * @return address of the slot
+     */
+    private long find(long block, int target) {
+        final long address = block & ~31L;
+        final int mask = (1 << ((int)block & 31)) - 1;
+        for(int i=hash(target)&mask; ; i=(i+1)&mask) {
+            final long slot = address + (long)SLOT_BYTES * i;
+            final int stored = edges.getInt(slot);
+            if(stored == 0 || stored == target + 1) {
+                return slot;
+            }
+        }
+    }
+    
+    /**
+     * Returns an empty block of the given size, from the free list if
+     * possible.
+     * 
+     * @param capacityLog binary logarithm of the number of slots
+     * @return block with its binary logarithm of the number of slots
+     * @throws IllegalStateException if the block would be larger than a
+     * segment
+     */
+    private long allocateBlock(int capacityLog) {
+        final long bytes = (long)SLOT_BYTES << capacityLog;
+        if(bytes > edges.getSegmentSize()) {
+            throw new IllegalStateException("Too many successors");
+        }
+        
+        long address = freeBlocks[capacityLog];
+        if(address >= 0) {
+            freeBlocks[capacityLog] = edges.getLong(address);
+            edges.clear(address, bytes);
+        } else {
+            address = edges.allocate(bytes);
+        }
+        return address | capacityLog;
+    }
+    
+    /**
+     * Rehashes the given block into one twice as large and puts it on the
+     * free list.
+     * 
+     * @param block full block with its binary logarithm of the number of
+     * slots
+     * @return new block with its binary logarithm of the number of slots
+     */
+    private long growBlock(long block) {
+        final int capacityLog = (int)block & 31;
+        final long address = block & ~31L;
+        final long grown = allocateBlock(capacityLog + 1);
+        for(int s=0; s<1<<capacityLog; s++) {
+            final long slot = address + (long)SLOT_BYTES * s;
+            final int stored = edges.getInt(slot);
+            if(stored != 0) {
+                edges.putLong(find(grown, stored - 1), edges.getLong(slot));
+            }
+        }
+        
+        edges.putLong(address, freeBlocks[capacityLog]);
+        freeBlocks[capacityLog] = address;
+        return grown;
+    }
+    
+    /**
+     * Spreads the bits of the given id over the lower bits used for
+     * probing.
+     * 
+     * @param id id
+     * @return hash code
+     */
+    private static int hash(int id) {
+        final int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    
+    
+    /**
+     * An iterator that walks over an off-heap chain and returns the data of
+     * the node it is currently on. Works like
+     * {@link FrozenChain.FrozenIterator}.
+     * 
+     * @param <E> the type of data contained by the nodes
+     */
+    public static class OffHeapIterator<E> implements Iterator<E> {
+        
+        /** Chain to walk over. */
+        private final OffHeapChain<E> chain;
+        /** Random source used for the successor selection. */
+        private final IntUnaryOperator random;
+        /** Id of the node whose data has been returned by the last next
+         * call. */
+        private int node;
+        
+        
+        
+        /**
+         * Constructs a new <code>OffHeapIterator</code> which starts at the
+         * node with the given id.
+         * The first returned data will be from a child of this node.
+         * 
+         * @param chain chain to walk over
+         * @param id id of the node to start from
+         * @param random random source, returns a value below the given
+         * bound (see {@link WeightMap#get(IntUnaryOperator)})
+         */
+        public OffHeapIterator(OffHeapChain<E> chain, int id,
+                IntUnaryOperator random) {
+            this.chain = chain;
+            this.node = id;
+            this.random = random;
+        }
+        
+        
+        
+        /**
+         * Restarts this iterator at the node with the given id, so that it
+         * can be reused for the next sequence instead of constructing a new
+         * one.
+         * 
+         * @param id id of the node to start from
+         */
+        public void reset(int id) {
+            node = id;
+        }
+        
+        
+        
+        /**
+         * {@inheritdoc}
+         */
+        @Override
+        public boolean hasNext() {
+            return chain.getTotalWeights(node) > 0;
+        }
+        
+        /**
+         * {@inheritdoc}
+         */
+        @Override
+        public E next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException("Node has no successors");
+            }
+            
+            node = chain.next(node, random);
+            return chain.getData(node);
+        }
+    }
+    
+    /**
+     * Returns an iterator that walks over this chain, starting at the node
+     * with the given data.
+     * 
+     * @param start data of the node to start from
+     * @return iterator that walks over this chain
+     * @throws NoSuchElementException if there is no node with the given data
+     */
+    public Iterator<T> iterator(T start) {
+        //Get the generator of the thread using the iterator
+        return iterator(start,
+                bound -> ThreadLocalRandom.current().nextInt(bound));
+    }
+    
+    /**
+     * Returns an iterator that walks over this chain, starting at the node
+     * with the given data and using the given random source.
+     * 
+     * @param start data of the node to start from
+     * @param random random source, returns a value below the given bound
+     * (see {@link WeightMap#get(IntUnaryOperator)})
+     * @return iterator that walks over this chain
+     * @throws NoSuchElementException if there is no node with the given data
+     */
+    public Iterator<T> iterator(T start, IntUnaryOperator random) {
+        final int id = getId(start);
+        if(id < 0) {
+            throw new NoSuchElementException("No node with data " + start);
+        }
+        
+        return new OffHeapIterator<>(this, id, random);
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+
+/**
+ * Growable memory outside of the garbage collected heap, addressed by
+ * <code>long</code> byte offsets.
+ * The memory is split into segments of a power of 2 bytes, because a single
+ * buffer can't hold more than 2 GiB. Every segment is a direct
+ * {@link ByteBuffer} or a region of a file mapped with
+ * {@link FileChannel#map}; only the last one is smaller and doubles until it
+ * is full, so that small memories stay small.
+ * A value must not cross a segment boundary: values are accessed at
+ * multiples of their own size, and blocks are only handed out within one
+ * segment (see {@link #allocate(long)}).
+ * Memory that hasn't been written yet reads as zero.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+class OffHeapMemory implements AutoCloseable {
+    
+    /** Default number of address bits within a segment, 1 GiB segments. */
+    static final int SEGMENT_BITS = 30;
+    /** Size of a new segment, at most the segment size. */
+    private static final int INITIAL_SIZE = 1 << 12;
+    
+    /** Number of address bits within a segment. */
+    private final int segmentBits;
+    /** Mask of the address within a segment. */
+    private final int segmentMask;
+    /** Channel of the mapped file, null for direct buffers. */
+    private final FileChannel channel;
+    /** Segments, all but the last one full. */
+    private ByteBuffer[] segments = new ByteBuffer[0];
+    /** Number of bytes of all segments. */
+    private long capacity = 0;
+    /** Address after the last allocated block. */
+    private long top = 0;
+    
+    
+    
+    /**
+     * Constructs a new empty <code>OffHeapMemory</code> of direct buffers.
+     * 
+     * @param segmentBits number of address bits within a segment
+     */
+    OffHeapMemory(int segmentBits) {
+        this.segmentBits = segmentBits;
+        this.segmentMask = (1 << segmentBits) - 1;
+        this.channel = null;
+    }
+    
+    /**
+     * Constructs a new empty <code>OffHeapMemory</code> mapped from a new
+     * file at the given path, which is deleted again when closed.
+     * 
+     * @param path path of the file, replaced if it exists
+     * @param segmentBits number of address bits within a segment
+     * @throws IOException if the file can't be created
+     */
+    OffHeapMemory(Path path, int segmentBits) throws IOException {
+        this.segmentBits = segmentBits;
+        this.segmentMask = (1 << segmentBits) - 1;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+    
+    
+    
+    /**
+     * Returns the number of bytes of all segments.
+     * 
+     * @return number of reserved bytes
+     */
+    long getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Returns the size of a segment, the largest block that can be
+     * allocated.
+     * 
+     * @return size of a segment in bytes
+     */
+    long getSegmentSize() {
+        return 1L << segmentBits;
+    }
+    
+    /**
+     * Grows the memory until the given number of bytes can be addressed.
+     * 
+     * @param bytes number of bytes
+     * @throws UncheckedIOException if the mapped file can't be grown
+     */
+    void ensureCapacity(long bytes) {
+        while(capacity < bytes) {
+            final int last = segments.length - 1;
+            final int size;
+            if(last >= 0 && segments[last].capacity() <= segmentMask) {
+                size = segments[last].capacity() * 2;
+            } else {
+                size = Math.min(INITIAL_SIZE, segmentMask + 1);
+                segments = Arrays.copyOf(segments, segments.length + 1);
+            }
+            final int index = segments.length - 1;
+            final ByteBuffer old = segments[index];
+            segments[index] = newSegment(index, size, old);
+            capacity += size - (old == null ? 0 : old.capacity());
+        }
+    }
+    
+    /**
+     * Reserves a block of the given size within one segment.
+     * 
+     * @param bytes size of the block, at most the segment size
+     * @return address of the block
+     * @throws IllegalArgumentException if the block is larger than a
+     * segment
+     */
+    long allocate(long bytes) {
+        if(bytes > segmentMask + 1L) {
+            throw new IllegalArgumentException("Block larger than a segment");
+        }
+        
+        //Start a new segment if the block would cross the boundary
+        if((top & segmentMask) + bytes > segmentMask + 1L) {
+            top = (top >>> segmentBits) + 1 << segmentBits;
+        }
+        final long address = top;
+        top += bytes;
+        ensureCapacity(top);
+        return address;
+    }
+    
+    /**
+     * Returns the address after the last allocated block.
+     * 
+     * @return number of allocated bytes, including segment remainders
+     */
+    long getAllocated() {
+        return top;
+    }
+    
+    /**
+     * Overwrites the given range with zeros.
+     * 
+     * @param address address of the first byte, a multiple of 8
+     * @param bytes number of bytes, a multiple of 8
+     */
+    void clear(long address, long bytes) {
+        for(long a=address; a<address+bytes; a+=8) {
+            putLong(a, 0);
+        }
+    }
+    
+    
+    
+    /**
+     * Returns the <code>int</code> at the given address.
+     * 
+     * @param address address, a multiple of 4
+     * @return value
+     */
+    int getInt(long address) {
+        return segments[(int)(address >>> segmentBits)]
+                .getInt((int)address & segmentMask);
+    }
+    
+    /**
+     * Writes the given <code>int</code> at the given address.
+     * 
+     * @param address address, a multiple of 4
+     * @param value value
+     */
+    void putInt(long address, int value) {
+        segments[(int)(address >>> segmentBits)]
+                .putInt((int)address & segmentMask, value);
+    }
+    
+    /**
+     * Returns the <code>long</code> at the given address.
+     * 
+     * @param address address, a multiple of 8
+     * @return value
+     */
+    long getLong(long address) {
+        return segments[(int)(address >>> segmentBits)]
+                .getLong((int)address & segmentMask);
+    }
+    
+    /**
+     * Writes the given <code>long</code> at the given address.
+     * 
+     * @param address address, a multiple of 8
+     * @param value value
+     */
+    void putLong(long address, long value) {
+        segments[(int)(address >>> segmentBits)]
+                .putLong((int)address & segmentMask, value);
+    }
+    
+    
+    
+    /**
+     * Returns a segment of the given size with the content of the given
+     * one.
+     * 
+     * @param index index of the segment
+     * @param size size of the segment
+     * @param old previous segment to copy or null
+     * @return new segment
+     * @throws UncheckedIOException if the mapped file can't be grown
+     */
+    private ByteBuffer newSegment(int index, int size, ByteBuffer old) {
+        if(channel != null) {
+            //Mapping a larger region grows the file, the content stays
+            try {
+                return channel.map(FileChannel.MapMode.READ_WRITE,
+                        (long)index << segmentBits, size)
+                        .order(ByteOrder.nativeOrder());
+            } catch(IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        
+        final ByteBuffer segment = ByteBuffer.allocateDirect(size)
+                .order(ByteOrder.nativeOrder());
+        if(old != null) {
+            final ByteBuffer source = old.duplicate();
+            source.clear();
+            segment.put(source);
+            segment.clear();
+        }
+        return segment;
+    }
+    
+    /**
+     * Releases the segments and closes and deletes the mapped file.
+     * Direct buffers are freed by the garbage collector once unreachable.
+     * 
+     * @throws IOException if closing the file fails
+     */
+    @Override
+    public void close() throws IOException {
+        segments = new ByteBuffer[0];
+        capacity = 0;
+        top = 0;
+        if(channel != null) {
+            channel.close();
+        }
+    }
+}
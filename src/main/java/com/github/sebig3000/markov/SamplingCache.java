@@ -0,0 +1,523 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * Bounded cache of the sampling indices of many {@link WeightMap}s.
+ * Without a cache, every map keeps the index of its cumulative weights once
+ * it has been selected from, which doubles the memory of a chain that is
+ * generated from. With a cache, only the indices of the most used maps are
+ * kept, up to a budget of indexed keys in total, and all other maps select
+ * with a linear scan over their weights. Both select the same key for the
+ * same random value.
+ * 
+ * The maps to keep are chosen by one of two eviction policies: the least
+ * recently used maps are evicted first, or the least frequently used ones.
+ * Both are approximated by sampling a few cached maps on every eviction
+ * instead of keeping all maps in order, so that a hit neither takes a lock
+ * nor moves any entries. Once the cache is full, a map only takes the place
+ * of another one if it has been used more recently, i.e. if it was missed
+ * before since the other one was last used, or more often. A map the policy
+ * won't keep selects with a linear scan without building an index, so that
+ * cycling through more maps than fit neither evicts every index nor builds
+ * one on every miss. All frequencies are halved periodically, lazily on the
+ * next use of a map, so that maps that were used a lot long ago don't stay
+ * forever.
+ * 
+ * Every change of the weights of a map outdates its index, even one that
+ * keeps the sum of all weights, like replacing a key. The index then gets
+ * rebuilt on the next selection, so a cache also suits chains that are
+ * still being trained now and then. The numbers of hits, misses and
+ * evictions are counted to tune the budget; a budget too small for the most
+ * used maps leaves most selections to linear scans, which are slower than
+ * no cache at all.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class SamplingCache {
+    
+    /**
+     * Ways to choose the maps whose indices are evicted.
+     */
+    public enum Eviction {
+        /** Evict the index of the least recently used map. */
+        LRU,
+        /** Evict the index of the least frequently used map and admit only
+         * maps that are used more often. */
+        LFU
+    }
+    
+    /** Number of cached maps sampled to find the one to evict. */
+    private static final int SAMPLES = 8;
+    /** Frequency at which counting stops, so that hot maps don't write
+     * their frequency on every hit. */
+    private static final int MAX_FREQUENCY = 15;
+    /** Number of admissions per cached map after which all frequencies are
+     * halved. */
+    private static final int AGING_PERIOD = 4;
+    
+    /** Number of indexed keys of all cached indices at most. */
+    private final long capacity;
+    /** Eviction policy. */
+    private final Eviction eviction;
+    /** Cached entries, the first count ones are used. */
+    private Entry<?>[] entries = new Entry<?>[16];
+    /** Number of cached entries. */
+    private int count = 0;
+    /** Number of indexed keys of all cached indices. Only written with the
+     * lock, read without it to check for room. */
+    private volatile long size = 0;
+    /** Clock of the recency policy, advanced on every admission. */
+    private volatile long epoch = 0;
+    /** Epoch a map needs to have been used after to try to be admitted,
+     * with the recency policy. The epoch of the last map that wasn't
+     * evicted. */
+    private volatile long admissionStamp = 0;
+    /** Frequency a map needs to try to be admitted, with the frequency
+     * policy. The frequency of the last map that wasn't evicted. */
+    private volatile int admissionFrequency = 0;
+    /** Number of times all frequencies have been halved. */
+    private volatile int age = 0;
+    /** Number of admissions since the frequencies were last halved. */
+    private int admissions = 0;
+    /** Number of selections with a cached index. */
+    private final LongAdder hits = new LongAdder();
+    /** Number of selections without a cached index. */
+    private final LongAdder misses = new LongAdder();
+    /** Number of evicted indices. */
+    private final LongAdder evictions = new LongAdder();
+    
+    
+    
+    /**
+     * Constructs a new <code>SamplingCache</code>.
+     * 
+     * @param capacity number of indexed keys of all cached indices at most
+     * @param eviction how to choose the indices to evict
+     * @throws IllegalArgumentException if the capacity is negative
+     * @throws NullPointerException if the eviction policy is null
+     */
+    public SamplingCache(long capacity, Eviction eviction) {
+        if(capacity < 0) {
+            throw new IllegalArgumentException("Capacity less than 0");
+        }
+        if(eviction == null) {
+            throw new NullPointerException("Eviction policy is null");
+        }
+        
+        this.capacity = capacity;
+        this.eviction = eviction;
+    }
+    
+    
+    
+    /**
+     * Returns the number of indexed keys of all cached indices at most.
+     * 
+     * @return capacity
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Returns how the indices to evict are chosen.
+     * 
+     * @return eviction policy
+     */
+    public Eviction getEviction() {
+        return eviction;
+    }
+    
+    /**
+     * Returns the number of indexed keys of all cached indices.
+     * 
+     * @return number of indexed keys
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+    
+    /**
+     * Returns the number of maps whose indices are cached.
+     * 
+     * @return number of cached maps
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+    
+    /**
+     * Returns the number of selections with a cached index.
+     * 
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    /**
+     * Returns the number of selections without a cached index, either
+     * because the map isn't cached or because its weights have changed.
+     * 
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+    
+    /**
+     * Returns the number of indices evicted to make room for others.
+     * 
+     * @return number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+    
+    /**
+     * Resets the numbers of hits, misses and evictions to 0.
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+    
+    /**
+     * Drops all cached indices.
+     */
+    public synchronized void clear() {
+        for(int i=0; i<count; i++) {
+            entries[i].drop();
+            entries[i] = null;
+        }
+        count = 0;
+        size = 0;
+    }
+    
+    
+    
+    /**
+     * Records a use of the given entry.
+     * 
+     * @param entry used entry
+     */
+    private void touch(Entry<?> entry) {
+        if(eviction == Eviction.LRU) {
+            //Don't write the field if not needed, it may be shared by threads
+            final long now = epoch;
+            if(entry.stamp != now) {
+                entry.stamp = now;
+            }
+        } else {
+            final int frequency = frequency(entry);
+            if(frequency < MAX_FREQUENCY) {
+                entry.frequency = frequency + 1;
+            }
+        }
+    }
+    
+    /**
+     * Returns the frequency of the given entry, after halving it as often
+     * as all frequencies have been halved since its last use.
+     * 
+     * @param entry entry
+     * @return current frequency
+     */
+    private int frequency(Entry<?> entry) {
+        final int now = age;
+        if(entry.age != now) {
+            entry.frequency >>>= Math.min(now - entry.age, 31);
+            entry.age = now;
+        }
+        return entry.frequency;
+    }
+    
+    /**
+     * Records a miss of the given entry and returns if an index should be
+     * built for it, because it is cached or there is or has been made room
+     * for it. Otherwise the policy wouldn't keep the map and it should be
+     * scanned.
+     * 
+     * @param entry missed entry
+     * @param keys number of keys of the map
+     * @return if an index should be built
+     */
+    private boolean miss(Entry<?> entry, int keys) {
+        misses.increment();
+        final long last = entry.stamp;
+        touch(entry);
+        if(entry.slot >= 0) {
+            return true;
+        }
+        if(keys > capacity) {
+            return false;
+        }
+        if(size + keys <= capacity) {
+            return true;
+        }
+        
+        //Check without the lock first if the map has a chance at all
+        if(eviction == Eviction.LRU ? last <= admissionStamp
+                : frequency(entry) < admissionFrequency) {
+            return false;
+        }
+        return makeRoom(entry, keys, last);
+    }
+    
+    /**
+     * Evicts the least recently or frequently used entries until there is
+     * room for the given number of keys, as long as they have been used less
+     * than the given entry.
+     * 
+     * @param entry missed entry, not cached
+     * @param keys number of keys of the map
+     * @param last epoch of the previous use of the entry
+     * @return if there is room
+     */
+    private synchronized boolean makeRoom(Entry<?> entry, int keys,
+            long last) {
+        if(eviction == Eviction.LFU
+                && ++admissions >= AGING_PERIOD * Math.max(count, 1)) {
+            admissions = 0;
+            age++;
+        }
+        
+        while(size + keys > capacity) {
+            final Entry<?> victim = sample();
+            if(eviction == Eviction.LRU) {
+                if(victim.stamp >= last) {
+                    admissionStamp = victim.stamp;
+                    return false;
+                }
+            } else if(frequency(victim) >= frequency(entry)) {
+                //Let the map earn another attempt
+                admissionFrequency = victim.frequency;
+                entry.frequency >>= 1;
+                return false;
+            }
+            
+            remove(victim);
+            evictions.increment();
+        }
+        return true;
+    }
+    
+    /**
+     * Caches the given index of the given entry, evicting the least recently
+     * or frequently used entries if other threads have taken the room
+     * meanwhile.
+     * 
+     * @param <T> the type of keys
+     * @param entry entry of the map
+     * @param index new index of the map
+     */
+    private synchronized <T> void admit(Entry<T> entry,
+            SamplingIndex<T> index) {
+        //An outdated index is replaced like a new one
+        if(entry.slot >= 0) {
+            remove(entry);
+        }
+        if(index.size() > capacity) {
+            return;
+        }
+        
+        while(size + index.size() > capacity) {
+            remove(sample());
+            evictions.increment();
+        }
+        
+        if(count == entries.length) {
+            entries = Arrays.copyOf(entries, 2*count);
+        }
+        entry.slot = count;
+        entry.keys = index.size();
+        entry.index = index;
+        entries[count++] = entry;
+        size += index.size();
+        if(eviction == Eviction.LRU) {
+            entry.stamp = ++epoch;
+        }
+    }
+    
+    /**
+     * Returns the least recently or frequently used of a few random cached
+     * entries.
+     * 
+     * @return entry to evict
+     */
+    private Entry<?> sample() {
+        final ThreadLocalRandom rand = ThreadLocalRandom.current();
+        final int samples = Math.min(count, SAMPLES);
+        Entry<?> victim = null;
+        long victimUse = Long.MAX_VALUE;
+        for(int i=0; i<samples; i++) {
+            final Entry<?> candidate =
+                    entries[count <= SAMPLES ? i : rand.nextInt(count)];
+            final long use = eviction == Eviction.LRU ?
+                    candidate.stamp : frequency(candidate);
+            if(use < victimUse) {
+                victim = candidate;
+                victimUse = use;
+            }
+        }
+        return victim;
+    }
+    
+    /**
+     * Removes the given cached entry and drops its index.
+     * 
+     * @param entry cached entry to remove
+     */
+    private void remove(Entry<?> entry) {
+        final Entry<?> last = entries[--count];
+        entries[entry.slot] = last;
+        last.slot = entry.slot;
+        entries[count] = null;
+        size -= entry.keys;
+        entry.drop();
+    }
+    
+    
+    
+    /**
+     * Cache state of a single map.
+     * 
+     * @param <T> the type of keys of the map
+     */
+    static class Entry<T> {
+        
+        /** Cache this entry belongs to. */
+        private final SamplingCache cache;
+        /** Cached index, null if none. Immutable, so it can be read without
+         * synchronization. */
+        private SamplingIndex<T> index;
+        /** Position in the cached entries, -1 if not cached. */
+        private int slot = -1;
+        /** Number of keys of the cached index. */
+        private int keys = 0;
+        /** Epoch of the last use, for the recency policy. */
+        private long stamp = 0;
+        /** Number of recent uses, for the frequency policy. */
+        private int frequency = 0;
+        /** Number of times all frequencies had been halved at the last use,
+         * for the frequency policy. */
+        private int age = 0;
+        
+        
+        
+        /**
+         * Constructs a new <code>Entry</code>.
+         * 
+         * @param cache cache the entry belongs to
+         */
+        Entry(SamplingCache cache) {
+            this.cache = cache;
+        }
+        
+        
+        
+        /**
+         * Returns the cache this entry belongs to.
+         * 
+         * @return cache
+         */
+        SamplingCache getCache() {
+            return cache;
+        }
+        
+        /**
+         * Returns the sampling index to select from the given store with, or
+         * null if the store should be scanned instead.
+         * The returned index may not have been cached.
+         * 
+         * @param store store of the map
+         * @param version current number of modifications of the map
+         * @return sampling index or null
+         */
+        SamplingIndex<T> lookup(WeightStore<T> store, long version) {
+            SamplingIndex<T> current = index;
+            if(current != null && current.getVersion() == version) {
+                cache.hits.increment();
+                cache.touch(this);
+                return current;
+            }
+            if(!cache.miss(this, store.size())) {
+                return null;
+            }
+            
+            current = new SamplingIndex<>(store, version);
+            if(current.getTotalWeights() > 0) {
+                cache.admit(this, current);
+            }
+            return current;
+        }
+        
+        /**
+         * Returns a rough estimate of the heap used by this entry and its
+         * index.
+         * 
+         * @return estimated heap in bytes
+         * @see WeightStore
+         */
+        long estimateBytes() {
+            final SamplingIndex<T> current = index;
+            return WeightStore.align(WeightStore.OBJECT_HEADER_BYTES
+                            + 2*WeightStore.REFERENCE_BYTES + 4*Integer.BYTES
+                            + Long.BYTES)
+                    + (current == null ? 0 : current.estimateBytes());
+        }
+        
+        /**
+         * Removes this entry from its cache, if it is cached.
+         */
+        void remove() {
+            synchronized(cache) {
+                if(slot >= 0) {
+                    cache.remove(this);
+                }
+            }
+        }
+        
+        /**
+         * Drops the index and marks this entry as not cached.
+         */
+        private void drop() {
+            index = null;
+            slot = -1;
+            keys = 0;
+        }
+    }
+}
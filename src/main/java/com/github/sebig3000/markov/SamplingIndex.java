@@ -0,0 +1,225 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+
+
+/**
+ * Immutable sampling index of a key-weight store.
+ * Stores the keys in an array together with their cumulative weights, so
+ * that the key a random value "lands on" can be found with a binary search
+ * instead of going through all entries.
+ * 
+ * The keys are stored in the iteration order of the store the index was
+ * built from. Therefore a value selects the same key as a linear scan over
+ * the entries of that store would.
+ * If the store is changed by other threads while the index is built, the
+ * index is a consistent snapshot of the weights it has seen.
+ * 
+ * @param <T> the type of keys
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+class SamplingIndex<T> {
+    
+    /** Keys in iteration order of the indexed map. */
+    private final Object[] keys;
+    /** Sum of the weights of all keys up to and including the same index. */
+    private final long[] cumulativeWeights;
+    /** Sum of all weights. */
+    private final long totalWeights;
+    /** Number of modifications of the indexed map when it was indexed. */
+    private final long version;
+    
+    
+    
+    /**
+     * Constructs a new <code>SamplingIndex</code> of the given store.
+     * The version has to be read before the store, so that a modification
+     * during the build outdates the index.
+     * 
+     * @param store key-weight store to index
+     * @param version number of modifications of the indexed map
+     */
+    SamplingIndex(WeightStore<T> store, long version) {
+        final Builder<T> builder = new Builder<>(store.size());
+        store.forEachWeight(builder);
+        
+        final int n = builder.size;
+        keys = n == builder.keys.length ?
+                builder.keys : Arrays.copyOf(builder.keys, n);
+        cumulativeWeights = n == builder.cumulativeWeights.length ?
+                builder.cumulativeWeights
+                : Arrays.copyOf(builder.cumulativeWeights, n);
+        totalWeights = builder.sum;
+        this.version = version;
+    }
+    
+    
+    
+    /**
+     * Returns the number of keys of this index.
+     * 
+     * @return number of keys
+     */
+    int size() {
+        return keys.length;
+    }
+    
+    /**
+     * Returns the number of steps of the binary search of a selection.
+     * 
+     * @return number of steps
+     */
+    int steps() {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(keys.length-1, 0));
+    }
+    
+    /**
+     * Returns a rough estimate of the heap used by this index, without the
+     * keys.
+     * 
+     * @return estimated heap in bytes
+     * @see WeightStore
+     */
+    long estimateBytes() {
+        return WeightStore.align(WeightStore.OBJECT_HEADER_BYTES
+                        + 2*WeightStore.REFERENCE_BYTES + 2*Long.BYTES)
+                + WeightStore.arrayBytes(keys.length,
+                        WeightStore.REFERENCE_BYTES)
+                + WeightStore.arrayBytes(cumulativeWeights.length,
+                        Long.BYTES);
+    }
+    
+    /**
+     * Returns the sum of all weights of this index.
+     * 
+     * @return sum of all weights
+     */
+    long getTotalWeights() {
+        return totalWeights;
+    }
+    
+    /**
+     * Returns the number of modifications of the indexed map when it was
+     * indexed. The index is outdated once the map has been modified again,
+     * even if the sum of its weights is the same.
+     * 
+     * @return version
+     */
+    long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Returns the key the given value lands on.
+     * That is the first key whose cumulative weight is greater than the
+     * value.
+     * 
+     * @param value value between (including) 0 and (excluding) the sum of
+     * all weights
+     * @return key the given value lands on
+     * @throws ArithmeticException if the value is outside of the weights
+     */
+    @SuppressWarnings("unchecked")
+    T select(long value) {
+        if(value < 0 || value >= getTotalWeights()) {
+            throw new ArithmeticException("Weights are broken");
+        }
+        
+        //Binary search for the first cumulative weight greater than value.
+        //Keys with weight 0 share their cumulative weight with the previous
+        //key and are therefore never selected, just like in a linear scan
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while(low < high) {
+            final int mid = (low + high) >>> 1;
+            if(cumulativeWeights[mid] > value) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        
+        return (T)keys[low];
+    }
+    
+    
+    
+    /**
+     * Collects the keys and cumulative weights of a store.
+     * 
+     * @param <T> the type of keys
+     */
+    private static class Builder<T> implements ObjLongConsumer<T> {
+        
+        /** Collected keys. */
+        private Object[] keys;
+        /** Cumulative weights of the collected keys. */
+        private long[] cumulativeWeights;
+        /** Number of collected keys. */
+        private int size = 0;
+        /** Sum of the collected weights. */
+        private long sum = 0;
+        
+        
+        
+        /**
+         * Constructs a new <code>Builder</code>.
+         * 
+         * @param capacity expected number of keys
+         */
+        Builder(int capacity) {
+            keys = new Object[capacity];
+            cumulativeWeights = new long[capacity];
+        }
+        
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void accept(T key, long weight) {
+            //Concurrent stores may grow while being iterated
+            if(size == keys.length) {
+                keys = Arrays.copyOf(keys, size*2 + 1);
+                cumulativeWeights =
+                        Arrays.copyOf(cumulativeWeights, size*2 + 1);
+            }
+            
+            sum += weight;
+            keys[size] = key;
+            cumulativeWeights[size] = sum;
+            size++;
+        }
+    }
+}
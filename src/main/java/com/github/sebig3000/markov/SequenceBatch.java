@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.IntUnaryOperator;
+
+
+
+/**
+ * Reusable buffer for a batch of generated sequences of node ids.
+ * The ids of all sequences are stored in a single <code>int</code> array,
+ * every sequence in a row of the maximum length, so that generating a batch
+ * allocates no objects per token and a batch can be filled over and over
+ * again (see {@link FrozenChain#generate(int, int, SequenceBatch, long)}).
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class SequenceBatch {
+    
+    /** Ids of the sequences, row by row. */
+    private final int[] ids;
+    /** Lengths of the sequences. */
+    private final int[] lengths;
+    /** Maximum length of a sequence, length of a row. */
+    private final int maxLength;
+    
+    
+    
+    /**
+     * Constructs a new <code>SequenceBatch</code> for the given number of
+     * sequences of the given maximum length.
+     * 
+     * @param count number of sequences
+     * @param maxLength maximum length of a sequence
+     * @throws IllegalArgumentException if the count or maximum length is
+     * negative or the batch would have more than
+     * {@link Integer#MAX_VALUE} ids
+     */
+    public SequenceBatch(int count, int maxLength) {
+        if(count < 0 || maxLength < 0) {
+            throw new IllegalArgumentException("Negative size");
+        }
+        if((long)count * maxLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Batch too large");
+        }
+        
+        this.ids = new int[count * maxLength];
+        this.lengths = new int[count];
+        this.maxLength = maxLength;
+    }
+    
+    
+    
+    /**
+     * Returns the number of sequences.
+     * 
+     * @return number of sequences
+     */
+    public int getCount() {
+        return lengths.length;
+    }
+    
+    /**
+     * Returns the maximum length of a sequence.
+     * 
+     * @return maximum length of a sequence
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+    
+    /**
+     * Returns the length of the given sequence.
+     * 
+     * @param sequence index of the sequence
+     * @return length of the sequence
+     */
+    public int getLength(int sequence) {
+        return lengths[sequence];
+    }
+    
+    /**
+     * Returns the id of the given node of the given sequence.
+     * 
+     * @param sequence index of the sequence
+     * @param index index of the node in the sequence
+     * @return id of the node
+     * @throws IndexOutOfBoundsException if the index is not less than the
+     * length of the sequence
+     */
+    public int getId(int sequence, int index) {
+        if(index < 0 || index >= lengths[sequence]) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        
+        return ids[sequence*maxLength + index];
+    }
+    
+    /**
+     * Returns the ids of all sequences, row by row, without copying them.
+     * Sequence <code>i</code> starts at <code>i*getMaxLength()</code>; ids
+     * behind its length are left over from earlier generations.
+     * 
+     * @return ids of all sequences
+     */
+    public int[] getIds() {
+        return ids;
+    }
+    
+    /**
+     * Returns the data of the nodes of the given sequence.
+     * 
+     * @param <T> the type of data contained by the nodes
+     * @param sequence index of the sequence
+     * @param chain chain the sequence has been generated from
+     * @return data of the nodes of the sequence
+     */
+    public <T> List<T> getSequence(int sequence, FrozenChain<T> chain) {
+        final List<T> data = new ArrayList<>(lengths[sequence]);
+        final int offset = sequence * maxLength;
+        for(int i=0; i<lengths[sequence]; i++) {
+            data.add(chain.getData(ids[offset + i]));
+        }
+        return data;
+    }
+    
+    
+    
+    /**
+     * Generates the given range of sequences.
+     * Every sequence draws from its own generator, seeded with the given
+     * seed plus its index, so that its content doesn't depend on which
+     * thread generates it.
+     * 
+     * @param chain chain to walk over
+     * @param start id of the node every sequence starts after
+     * @param end id of the node that ends a sequence, -1 for none
+     * @param seed seed of the first sequence
+     * @param from index of the first sequence (including)
+     * @param to index of the last sequence (excluding)
+     */
+    void generate(FrozenChain<?> chain, int start, int end, long seed,
+            int from, int to) {
+        for(int i=from; i<to; i++) {
+            final IntUnaryOperator random =
+                    new SplittableRandom(seed + i)::nextInt;
+            final int offset = i * maxLength;
+            
+            int length = 0;
+            int node = start;
+            while(length < maxLength) {
+                node = chain.next(node, random);
+                if(node < 0 || node == end) {
+                    break;
+                }
+                ids[offset + length++] = node;
+            }
+            lengths[i] = length;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+
+/**
+ * Trains a Markov chain on many independent sequences (shards) in parallel.
+ * Map-reduce style {@link RecursiveTask} for a {@link ForkJoinPool}: the
+ * shards are split up by their numbers of tokens until every task trains a
+ * contiguous range of shards, or a single larger one, one after the other
+ * into a partial chain of its own. A range holds about a fourth of the
+ * tokens per worker of the pool, but at least a few ten thousand. The
+ * partial chains are merged back together with
+ * {@link MarkovChain#merge(java.util.Collection)} while joining. As no
+ * chain is shared while training, the workers don't contend on anything,
+ * and as many small shards, like paragraphs, share a partial chain, there
+ * are only a few merges per worker.
+ * The tokens of shards that aren't collections are counted with an extra
+ * iteration.
+ * 
+ * Every shard is trained starting at the node with the given start data,
+ * like a paragraph. Transitions across shard boundaries are not trained.
+ * 
+ * @param <T> the type of data contained by the nodes
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class ShardedTraining<T> extends RecursiveTask<MarkovChain<T>> {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /** Minimum number of tokens trained into one partial chain without
+     * splitting. */
+    private static final int THRESHOLD = 1 << 16;
+    /** Number of partial chains per worker of the pool. */
+    private static final int CHAINS_PER_WORKER = 4;
+    
+    /** Shards to train. */
+    private final List<? extends Iterable<? extends T>> shards;
+    /** Data of the node every shard starts at. */
+    private final T start;
+    /** How the nodes of the partial chains store their children. */
+    private final WeightMap.Storage storage;
+    /** Number of tokens of all shards before every shard and of all shards,
+     * null if not counted yet. */
+    private final long[] tokens;
+    /** Number of tokens trained into one partial chain without splitting. */
+    private final long threshold;
+    /** Index of the first shard (including). */
+    private final int from;
+    /** Index of the last shard (excluding). */
+    private final int to;
+    
+    
+    
+    /**
+     * Constructs a new <code>ShardedTraining</code> of the given shards.
+     * 
+     * @param shards shards to train
+     * @param start data of the node every shard starts at
+     */
+    public ShardedTraining(List<? extends Iterable<? extends T>> shards,
+            T start) {
+        this(shards, start, WeightMap.Storage.HASH_MAP);
+    }
+    
+    /**
+     * Constructs a new <code>ShardedTraining</code> of the given shards,
+     * whose resulting chain stores the children of its nodes the given way.
+     * 
+     * @param shards shards to train
+     * @param start data of the node every shard starts at
+     * @param storage how the nodes store their children
+     */
+    public ShardedTraining(List<? extends Iterable<? extends T>> shards,
+            T start, WeightMap.Storage storage) {
+        this(shards, start, storage, null, 0, 0, shards.size());
+    }
+    
+    /**
+     * Constructs a new <code>ShardedTraining</code> of the given range of
+     * shards.
+     * 
+     * @param shards shards to train
+     * @param start data of the node every shard starts at
+     * @param storage how the nodes store their children
+     * @param tokens number of tokens of all shards before every shard and of
+     * all shards, null to count them
+     * @param threshold number of tokens trained into one partial chain
+     * without splitting
+     * @param from index of the first shard (including)
+     * @param to index of the last shard (excluding)
+     */
+    private ShardedTraining(List<? extends Iterable<? extends T>> shards,
+            T start, WeightMap.Storage storage, long[] tokens,
+            long threshold, int from, int to) {
+        this.shards = shards;
+        this.start = start;
+        this.storage = storage;
+        this.tokens = tokens;
+        this.threshold = threshold;
+        this.from = from;
+        this.to = to;
+    }
+    
+    
+    
+    /**
+     * Trains the shards and returns the merged chain.
+     * 
+     * @return chain trained on all shards
+     */
+    @Override
+    protected MarkovChain<T> compute() {
+        if(tokens == null) {
+            final long[] counted = count(shards);
+            final ForkJoinPool pool = getPool();
+            final int workers = pool != null ? pool.getParallelism()
+                    : ForkJoinPool.getCommonPoolParallelism();
+            final long leaf = Math.max(THRESHOLD,
+                    counted[to] / ((long)CHAINS_PER_WORKER * workers));
+            return new ShardedTraining<>(shards, start, storage,
+                    counted, leaf, from, to).compute();
+        }
+        
+        if(to - from <= 1 || tokens[to] - tokens[from] <= threshold) {
+            final MarkovChain<T> chain = new MarkovChain<>(storage);
+            final MarkovNode<T> first = chain.getOrCreateNode(start);
+            for(int i=from; i<to; i++) {
+                MarkovNode<T> current = first;
+                for(T data : shards.get(i)) {
+                    current = current.apply(chain, data);
+                }
+            }
+            return chain;
+        }
+        
+        
+        //First shard starting in the second half of the tokens
+        final long middleToken = (tokens[from] + tokens[to]) >>> 1;
+        int low = from + 1;
+        int high = to - 1;
+        while(low < high) {
+            final int mid = (low + high) >>> 1;
+            if(tokens[mid] < middleToken) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        final ShardedTraining<T> left = new ShardedTraining<>(
+                shards, start, storage, tokens, threshold, from, low);
+        final ShardedTraining<T> right = new ShardedTraining<>(
+                shards, start, storage, tokens, threshold, low, to);
+        left.fork();
+        
+        //Merge the smaller chain into the larger one
+        final MarkovChain<T> rightChain = right.compute();
+        final MarkovChain<T> leftChain = left.join();
+        if(leftChain.size() >= rightChain.size()) {
+            leftChain.merge(rightChain);
+            return leftChain;
+        } else {
+            rightChain.merge(leftChain);
+            return rightChain;
+        }
+    }
+    
+    /**
+     * Counts the tokens of all shards before every shard and of all shards.
+     * 
+     * @param <T> the type of data contained by the nodes
+     * @param shards shards to count the tokens of
+     * @return number of tokens before every shard and of all shards
+     */
+    private static <T> long[] count(
+            List<? extends Iterable<? extends T>> shards) {
+        final long[] tokens = new long[shards.size() + 1];
+        for(int i=0; i<shards.size(); i++) {
+            final Iterable<? extends T> shard = shards.get(i);
+            long size = 0;
+            if(shard instanceof Collection) {
+                size = ((Collection<?>)shard).size();
+            } else {
+                for(T data : shard) {
+                    size++;
+                }
+            }
+            tokens[i+1] = tokens[i] + size;
+        }
+        return tokens;
+    }
+}
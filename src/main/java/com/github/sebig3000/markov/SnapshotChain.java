@@ -0,0 +1,341 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+
+
+
+/**
+ * Markov chain that can be trained while other threads generate from it.
+ * Training goes into a {@link MarkovChain} that only writers touch, one at
+ * a time. Readers never see it: they get immutable {@link FrozenChain}
+ * versions of it, which the writers publish every given number of updates
+ * or after a given time. Reading the current version is a single volatile
+ * read without any lock, and a reader keeps the version it got for as long
+ * as it needs, for example for a whole generated sequence, no matter how
+ * many versions are published meanwhile.
+ * 
+ * A new version is built copy-on-write from the previous one: the writers
+ * remember which nodes they changed, and only these are frozen again,
+ * while the edges of all other nodes are copied over in blocks. Publishing
+ * therefore costs a copy of the arrays plus the changed nodes, not a walk
+ * over all nodes. Changes made through {@link #update(Consumer)}, like
+ * pruning, can touch any node and make the next version a full freeze.
+ * 
+ * Versions are only published by writes (and {@link #publish()}): if the
+ * updates stop before the interval is reached, the last ones stay
+ * invisible until the next write or an explicit publication.
+ * 
+ * @param <T> the type of data contained by the nodes
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class SnapshotChain<T> {
+    
+    /** Default number of updates between two versions. */
+    public static final long DEFAULT_INTERVAL = 1 << 16;
+    
+    /** Chain that is trained, guarded by this object. */
+    private final MarkovChain<T> chain;
+    /** Dictionary of the node ids of the versions. */
+    private final TokenDictionary<T> dictionary;
+    /** Ids of the nodes changed since the last version. */
+    private final BitSet changed = new BitSet();
+    /** If any node may have changed since the last version. */
+    private boolean allChanged = false;
+    /** Number of updates since the last version. */
+    private long pending = 0;
+    /** Number of updates between two versions. */
+    private long interval = DEFAULT_INTERVAL;
+    /** Time between two versions, 0 for none. */
+    private long period = 0;
+    /** Clock the period is measured with. */
+    private LongSupplier clock = System::nanoTime;
+    /** Time of the last version. */
+    private long published;
+    
+    /** Current version. */
+    private volatile FrozenChain<T> snapshot;
+    /** Number of published versions. */
+    private volatile long version = 0;
+    
+    
+    
+    /**
+     * Constructs a new empty <code>SnapshotChain</code>.
+     */
+    public SnapshotChain() {
+        this(new MarkovChain<>(), new TokenDictionary<>());
+    }
+    
+    /**
+     * Constructs a new <code>SnapshotChain</code> that continues training
+     * the given chain, which must not be used directly anymore, and
+     * publishes its first version.
+     * 
+     * @param chain chain to train
+     * @param dictionary dictionary of the node ids of the versions, may be
+     * shared with other chains
+     */
+    public SnapshotChain(MarkovChain<T> chain, TokenDictionary<T> dictionary) {
+        this.chain = chain;
+        this.dictionary = dictionary;
+        snapshot = chain.freeze(dictionary);
+        published = clock.getAsLong();
+    }
+    
+    
+    
+    /**
+     * Returns the current version, without locking.
+     * The version is immutable and stays valid and consistent for as long
+     * as it is used.
+     * 
+     * @return current version
+     */
+    public FrozenChain<T> snapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Returns the number of published versions, not counting the first one.
+     * 
+     * @return number of published versions
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Returns the dictionary of the node ids of the versions.
+     * 
+     * @return dictionary
+     */
+    public TokenDictionary<T> getDictionary() {
+        return dictionary;
+    }
+    
+    
+    
+    /**
+     * Returns the number of updates between two versions.
+     * 
+     * @return number of updates between two versions
+     */
+    public synchronized long getPublishInterval() {
+        return interval;
+    }
+    
+    /**
+     * Sets the number of updates between two versions.
+     * Every trained transition counts as one update, every call of
+     * {@link #update(Consumer)} as one.
+     * 
+     * @param updates number of updates between two versions
+     * @throws IllegalArgumentException if the number is less than 1
+     */
+    public synchronized void setPublishInterval(long updates) {
+        if(updates < 1) {
+            throw new IllegalArgumentException("Interval less than 1");
+        }
+        
+        interval = updates;
+    }
+    
+    /**
+     * Sets the time after which the next update publishes a new version,
+     * even if the interval of updates hasn't been reached yet.
+     * 
+     * @param period time between two versions, 0 for none
+     * @param clock clock the period is measured with, like
+     * {@link System#nanoTime()}
+     * @throws IllegalArgumentException if the period is negative
+     */
+    public synchronized void setPublishPeriod(long period, LongSupplier clock) {
+        if(period < 0) {
+            throw new IllegalArgumentException("Period less than 0");
+        }
+        
+        this.period = period;
+        this.clock = clock;
+        published = clock.getAsLong();
+    }
+    
+    
+    
+    /**
+     * Increments the weight of the transition between the nodes with the
+     * given data by 1.
+     * 
+     * @param from data of the node the transition starts at
+     * @param to data of the node the transition ends at
+     * @see #increment(Object, Object, long)
+     */
+    public void accept(T from, T to) {
+        increment(from, to, 1);
+    }
+    
+    /**
+     * Increments the weight of the transition between the nodes with the
+     * given data, creating the nodes if needed.
+     * 
+     * @param from data of the node the transition starts at
+     * @param to data of the node the transition ends at
+     * @param delta amount to add to the weight
+     */
+    public synchronized void increment(T from, T to, long delta) {
+        final MarkovNode<T> node = chain.getOrCreateNode(from);
+        node.increment(chain.getOrCreateNode(to), delta);
+        changed(from, to);
+        pending++;
+        publishIfDue();
+    }
+    
+    /**
+     * Trains the transitions between the elements of the given sequence as
+     * one batch, which publishes at most one version at its end.
+     * 
+     * @param sequence sequence of data
+     */
+    public synchronized void train(Iterable<? extends T> sequence) {
+        MarkovNode<T> node = null;
+        for(T data : sequence) {
+            if(node == null) {
+                node = chain.getOrCreateNode(data);
+                dictionary.getOrAddId(data);
+            } else {
+                changed(node.getData(), data);
+                node = node.apply(chain, data);
+                pending++;
+            }
+        }
+        publishIfDue();
+    }
+    
+    /**
+     * Lets the given action change the trained chain, for example prune or
+     * rescale it, and counts it as one update.
+     * The next version is a full freeze, because any node may have changed.
+     * 
+     * @param action action on the trained chain, must not keep it
+     */
+    public synchronized void update(Consumer<? super MarkovChain<T>> action) {
+        action.accept(chain);
+        allChanged = true;
+        pending++;
+        publishIfDue();
+    }
+    
+    /**
+     * Publishes a new version with all updates so far, even if they are
+     * less than the interval.
+     * 
+     * @return new version
+     * @throws ArithmeticException if the weights of a node sum up beyond
+     * the range of <code>int</code>
+     */
+    public synchronized FrozenChain<T> publish() {
+        final FrozenChain<T> next;
+        if(allChanged) {
+            next = chain.freeze(dictionary);
+        } else {
+            next = snapshot.update(dictionary.size(), changed,
+                    id -> chain.getNode(dictionary.getToken(id)));
+        }
+        
+        changed.clear();
+        allChanged = false;
+        pending = 0;
+        published = clock.getAsLong();
+        snapshot = next;
+        version++;
+        return next;
+    }
+    
+    
+    
+    /**
+     * Marks the node with the given data as changed and makes sure both
+     * have an id.
+     * 
+     * @param from data of the changed node
+     * @param to data of its changed successor
+     */
+    private void changed(T from, T to) {
+        changed.set(dictionary.getOrAddId(from));
+        dictionary.getOrAddId(to);
+    }
+    
+    /**
+     * Publishes a new version if the interval of updates or the period is
+     * over.
+     */
+    private void publishIfDue() {
+        if(pending >= interval || (period > 0 && pending > 0
+                && clock.getAsLong() - published >= period)) {
+            publish();
+        }
+    }
+    
+    
+    
+    /**
+     * Returns an iterator that walks over the current version, starting at
+     * the node with the given data. The iterator keeps walking over that
+     * version, even if newer ones are published meanwhile.
+     * 
+     * @param start data of the node to start from
+     * @return iterator that walks over the current version
+     * @throws NoSuchElementException if there is no node with the given data
+     * @see FrozenChain#iterator(Object)
+     */
+    public Iterator<T> iterator(T start) {
+        return snapshot.iterator(start);
+    }
+    
+    /**
+     * Returns an iterator that walks over the current version, starting at
+     * the node with the given data and using the given random source.
+     * 
+     * @param start data of the node to start from
+     * @param random random source, returns a value below the given bound
+     * (see {@link WeightMap#get(IntUnaryOperator)})
+     * @return iterator that walks over the current version
+     * @throws NoSuchElementException if there is no node with the given data
+     * @see FrozenChain#iterator(Object, IntUnaryOperator)
+     */
+    public Iterator<T> iterator(T start, IntUnaryOperator random) {
+        return snapshot.iterator(start, random);
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Trains a chain of words on a text stream.
+ * The text is read in chunks and split into words at whitespace while
+ * reading, without creating a string per line. Words are handed over to a
+ * training thread in batches through a bounded queue, so reading and
+ * training overlap, and reading blocks (backpressure) if training can't
+ * keep up, which bounds the memory needed for any stream length.
+ * 
+ * Text is split into paragraphs at empty lines. Every paragraph is trained
+ * starting at the node with the start data and ends with a transition to
+ * the node with the end data, like the "$" and "\n" nodes in the examples.
+ * 
+ * After training, the number of trained words and the time it took are
+ * available to size training jobs.
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class StreamingTrainer {
+    
+    /** Default number of words per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    /** Default number of batches that may wait for training. */
+    public static final int DEFAULT_PENDING_BATCHES = 16;
+    
+    /** Batch that marks the end of the stream. */
+    private static final String[] END_OF_STREAM = new String[0];
+    
+    /** Chain to train. */
+    private final MarkovChain<String> chain;
+    /** Node every paragraph starts at. */
+    private final MarkovNode<String> start;
+    /** Node every paragraph ends with. */
+    private final MarkovNode<String> end;
+    /** Number of words per batch. */
+    private final int batchSize;
+    /** Number of batches that may wait for training. */
+    private final int pendingBatches;
+    
+    /** Number of trained words. */
+    private long tokenCount = 0;
+    /** Time spent training in nanoseconds. */
+    private long nanos = 0;
+    
+    
+    
+    /**
+     * Constructs a new <code>StreamingTrainer</code> with the default batch
+     * size and number of pending batches.
+     * 
+     * @param chain chain to train
+     * @param start data of the node every paragraph starts at
+     * @param end data of the node every paragraph ends with
+     */
+    public StreamingTrainer(MarkovChain<String> chain,
+            String start, String end) {
+        this(chain, start, end, DEFAULT_BATCH_SIZE, DEFAULT_PENDING_BATCHES);
+    }
+    
+    /**
+     * Constructs a new <code>StreamingTrainer</code>.
+     * 
+     * @param chain chain to train
+     * @param start data of the node every paragraph starts at
+     * @param end data of the node every paragraph ends with
+     * @param batchSize number of words per batch
+     * @param pendingBatches number of batches that may wait for training
+     * before reading blocks
+     */
+    public StreamingTrainer(MarkovChain<String> chain, String start,
+            String end, int batchSize, int pendingBatches) {
+        if(batchSize < 1 || pendingBatches < 1) {
+            throw new IllegalArgumentException("Batches must not be empty");
+        }
+        
+        this.chain = chain;
+        this.start = chain.getOrCreateNode(start);
+        this.end = chain.getOrCreateNode(end);
+        this.batchSize = batchSize;
+        this.pendingBatches = pendingBatches;
+    }
+    
+    
+    
+    /**
+     * Returns the number of words trained so far.
+     * Paragraph ends are not counted.
+     * 
+     * @return number of trained words
+     */
+    public long getTokenCount() {
+        return tokenCount;
+    }
+    
+    /**
+     * Returns the time spent training so far, including reading.
+     * 
+     * @return time spent training in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+    
+    /**
+     * Returns the number of trained words per second so far.
+     * 
+     * @return trained words per second
+     */
+    public double getTokensPerSecond() {
+        return nanos == 0 ? 0 : tokenCount / (nanos / 1e9);
+    }
+    
+    
+    
+    /**
+     * Trains the chain on the text of the file at the given path, decoded
+     * as UTF-8.
+     * 
+     * @param path path of the file
+     * @return number of trained words
+     * @throws IOException if reading fails
+     */
+    public long train(Path path) throws IOException {
+        try(InputStream in = Files.newInputStream(path)) {
+            return train(in);
+        }
+    }
+    
+    /**
+     * Trains the chain on the text of the given stream, decoded as UTF-8.
+     * The stream is not closed.
+     * 
+     * @param in stream to read
+     * @return number of trained words
+     * @throws IOException if reading fails
+     */
+    public long train(InputStream in) throws IOException {
+        return train(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Trains the chain on the text of the given reader.
+     * The reader is not closed.
+     * 
+     * @param reader reader to read
+     * @return number of trained words
+     * @throws IOException if reading fails
+     */
+    public long train(Reader reader) throws IOException {
+        final long begin = System.nanoTime();
+        
+        final BlockingQueue<String[]> queue =
+                new ArrayBlockingQueue<>(pendingBatches);
+        final FutureTask<Long> training =
+                new FutureTask<>(() -> consume(queue));
+        final Thread trainer = new Thread(training, "StreamingTrainer");
+        trainer.start();
+        
+        long tokens;
+        try {
+            produce(reader, queue, training);
+            tokens = training.get();
+        } catch(InterruptedException ex) {
+            trainer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Training interrupted");
+        } catch(ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ex.getCause();
+            }
+            throw new IllegalStateException("Training failed", ex.getCause());
+        } finally {
+            //Stop the trainer if reading failed
+            if(!training.isDone()) {
+                trainer.interrupt();
+            }
+        }
+        
+        tokenCount += tokens;
+        nanos += System.nanoTime() - begin;
+        return tokens;
+    }
+    
+    
+    
+    /**
+     * Reads the given reader, splits the text into words and puts them into
+     * the queue in batches. A null entry marks the end of a paragraph.
+     * 
+     * @param reader reader to read
+     * @param queue queue to put the batches into
+     * @param training training task, to stop producing if it failed
+     * @throws IOException if reading fails
+     * @throws InterruptedException if interrupted while waiting for space
+     * in the queue
+     */
+    private void produce(Reader reader, BlockingQueue<String[]> queue,
+            FutureTask<Long> training)
+            throws IOException, InterruptedException {
+        
+        final char[] buffer = new char[8192];
+        final StringBuilder word = new StringBuilder();
+        final Batcher batcher = new Batcher(queue, training);
+        //Line breaks since the last word, two or more mean an empty line
+        int lineBreaks = 0;
+        boolean inParagraph = false;
+        
+        int length;
+        while(!training.isDone() && (length = reader.read(buffer)) >= 0) {
+            for(int i=0; i<length; i++) {
+                final char c = buffer[i];
+                
+                if(!Character.isWhitespace(c)) {
+                    //Empty line before this word: new paragraph
+                    if(lineBreaks >= 2 && inParagraph) {
+                        batcher.add(null);
+                        inParagraph = false;
+                    }
+                    lineBreaks = 0;
+                    word.append(c);
+                    
+                } else {
+                    if(word.length() > 0) {
+                        batcher.add(word.toString());
+                        word.setLength(0);
+                        inParagraph = true;
+                    }
+                    if(c == '\n') {
+                        lineBreaks++;
+                    }
+                }
+            }
+        }
+        
+        if(word.length() > 0) {
+            batcher.add(word.toString());
+        }
+        batcher.flush();
+        batcher.put(END_OF_STREAM);
+    }
+    
+    /**
+     * Takes batches from the queue and trains the chain on them until the
+     * end of the stream.
+     * 
+     * @param queue queue to take the batches from
+     * @return number of trained words
+     * @throws InterruptedException if interrupted while waiting for a batch
+     */
+    private long consume(BlockingQueue<String[]> queue)
+            throws InterruptedException {
+        
+        long tokens = 0;
+        MarkovNode<String> current = start;
+        String[] batch;
+        while((batch = queue.take()) != END_OF_STREAM) {
+            for(String word : batch) {
+                if(word == null) {
+                    //New paragraph: jump to start
+                    current.accept(end);
+                    current = start;
+                } else {
+                    current = current.apply(chain, word);
+                    tokens++;
+                }
+            }
+        }
+        
+        //End the last paragraph
+        if(current != start) {
+            current.accept(end);
+        }
+        return tokens;
+    }
+    
+    
+    
+    /**
+     * Collects words into batches and puts full batches into a queue.
+     */
+    private class Batcher {
+        
+        /** Queue to put full batches into. */
+        private final BlockingQueue<String[]> queue;
+        /** Training task taking the batches. */
+        private final FutureTask<Long> training;
+        /** Current batch. */
+        private String[] batch = new String[batchSize];
+        /** Number of words in the current batch. */
+        private int size = 0;
+        
+        
+        
+        /**
+         * Constructs a new <code>Batcher</code>.
+         * 
+         * @param queue queue to put full batches into
+         * @param training training task taking the batches
+         */
+        Batcher(BlockingQueue<String[]> queue, FutureTask<Long> training) {
+            this.queue = queue;
+            this.training = training;
+        }
+        
+        
+        
+        /**
+         * Adds the given word to the current batch and puts the batch into
+         * the queue if it is full.
+         * 
+         * @param word word to add, null for the end of a paragraph
+         * @throws InterruptedException if interrupted while waiting for
+         * space in the queue
+         */
+        void add(String word) throws InterruptedException {
+            batch[size++] = word;
+            if(size == batch.length) {
+                put(batch);
+                batch = new String[batchSize];
+                size = 0;
+            }
+        }
+        
+        /**
+         * Puts the words of the current batch into the queue.
+         * 
+         * @throws InterruptedException if interrupted while waiting for
+         * space in the queue
+         */
+        void flush() throws InterruptedException {
+            if(size > 0) {
+                put(Arrays.copyOf(batch, size));
+                size = 0;
+            }
+        }
+        
+        /**
+         * Puts the given batch into the queue, waiting for space as long as
+         * the training task is running. If it isn't, the batch is dropped.
+         * 
+         * @param words batch to put
+         * @throws InterruptedException if interrupted while waiting for
+         * space in the queue
+         */
+        void put(String[] words) throws InterruptedException {
+            while(!training.isDone()
+                    && !queue.offer(words, 100, TimeUnit.MILLISECONDS)) {
+                //Wait until there is space or the training stopped
+            }
+        }
+    }
+}
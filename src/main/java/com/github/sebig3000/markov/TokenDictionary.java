@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+
+/**
+ * Dictionary of tokens with dense integer ids.
+ * Every distinct token gets the next free id, starting at 0, and keeps it.
+ * Chains that share a dictionary store every token only once and refer to
+ * it by its id, so that many models over the same vocabulary don't repeat
+ * it, and nodes can be looked up and persisted as ints.
+ * 
+ * Lookups in both directions are lock-free and may happen concurrently with
+ * adding tokens. Adding a new token takes a lock, so that the ids stay
+ * dense. Like every token-id map it contains no two equal tokens; null is a
+ * valid token.
+ * 
+ * @param <T> the type of tokens
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+public class TokenDictionary<T> {
+    
+    /** Stand-in for the null token, as ConcurrentHashMap doesn't allow it. */
+    private static final Object NULL_TOKEN = new Object();
+    
+    /** Token-id map of the masked tokens. */
+    private final ConcurrentHashMap<Object, Integer> ids =
+            new ConcurrentHashMap<>();
+    /** Tokens, indexed by id. Replaced by a larger copy when full. */
+    private volatile Object[] tokens = new Object[64];
+    /** Number of tokens. */
+    private volatile int size = 0;
+    
+    
+    
+    /**
+     * Returns the number of tokens, which is also the next free id.
+     * 
+     * @return number of tokens
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the id of the given token or -1 if it isn't contained.
+     * 
+     * @param token token
+     * @return id of the token or -1
+     */
+    public int getId(Object token) {
+        final Integer id = ids.get(mask(token));
+        return id == null ? -1 : id;
+    }
+    
+    /**
+     * Returns the id of the given token, adding it with the next free id if
+     * it isn't contained yet.
+     * 
+     * @param token token
+     * @return id of the token
+     */
+    public int getOrAddId(T token) {
+        final Integer id = ids.get(mask(token));
+        return id != null ? id : add(token);
+    }
+    
+    /**
+     * Adds the given token, if no other thread has added it meanwhile.
+     * 
+     * @param token token
+     * @return id of the token
+     */
+    private synchronized int add(T token) {
+        final Object masked = mask(token);
+        final Integer existing = ids.get(masked);
+        if(existing != null) {
+            return existing;
+        }
+        
+        final int id = size;
+        if(id == tokens.length) {
+            tokens = Arrays.copyOf(tokens, id*2);
+        }
+        //Write the token before publishing its id, so that every thread
+        //that finds the id also finds the token
+        tokens[id] = token;
+        ids.put(masked, id);
+        size = id + 1;
+        return id;
+    }
+    
+    /**
+     * Returns the token with the given id.
+     * 
+     * @param id id of the token
+     * @return token with the given id
+     * @throws IndexOutOfBoundsException if there is no token with the given
+     * id
+     */
+    @SuppressWarnings("unchecked")
+    public T getToken(int id) {
+        if(id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Id: " + id);
+        }
+        
+        return (T)tokens[id];
+    }
+    
+    
+    
+    /**
+     * Replaces the null token with its stand-in.
+     * 
+     * @param token token
+     * @return masked token
+     */
+    private static Object mask(Object token) {
+        return token == null ? NULL_TOKEN : token;
+    }
+}
@@ -26,15 +26,23 @@
 
 package com.github.sebig3000.markov;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+import java.util.function.ObjLongConsumer;
 import java.util.function.Supplier;
 
 
@@ -49,11 +57,48 @@ import java.util.function.Supplier;
  * All of these methods get delegated to an underlying {@link HashMap}, to
  * whose documentation should be referred for more detailed information about
  * this class behaviour.
+ * Alternatively the keys and weights can be stored in an open addressing
+ * table with primitive weights (see {@link Storage}), which needs less
+ * memory and increments weights without boxing them, or in a thread-safe
+ * store, so that many threads can train the same map without locking.
  * To get a random key, use the {@link Supplier} or {@link Iterator} interface
  * with <code>get</code> or <code>next</code>.
+ * Unless a seed or a random number generator is given at construction, the
+ * map has no generator of its own and uses the {@link ThreadLocalRandom} of
+ * the calling thread. The random source can also be passed to
+ * <code>get</code> by the caller, so that many threads can select from the
+ * same maps without contention and with reproducible results.
+ * The selection uses a sampling index with the cumulative weights, which is
+ * built on the first selection after the weights have changed, so that a
+ * selection takes logarithmic instead of linear time. To bound the memory
+ * of the indices of many maps, the maps can share a {@link SamplingCache},
+ * which keeps only the indices of the most used maps and lets the others
+ * select with a linear scan.
  * Using <code>accept</code> of the {@link Consumer} interface, the weight of
  * the given key can be incremented (used for training applications, like for
- * Markov chains).
+ * Markov chains). <code>increment</code> adds any value to the weight.
+ * 
+ * The sum of all weights is a <code>long</code> and can't overflow. The
+ * weights themselves are <code>int</code>s, unless they are stored in a
+ * {@link Storage#LONG_TABLE} or {@link Storage#CONCURRENT} store, and an
+ * {@link ArithmeticException} is thrown instead of letting them overflow.
+ * Through the {@link Map} interface, whose values are <code>Integer</code>s,
+ * larger weights are reported as {@link Integer#MAX_VALUE}; use
+ * <code>getWeight</code> for their exact value.
+ * To keep training long-running accumulators without ever reaching the
+ * limit, all weights can be rescaled proportionally, either explicitly with
+ * <code>rescale</code> or automatically whenever their sum exceeds a given
+ * limit (see {@link #setWeightLimit(long)}).
+ * 
+ * For online training on streams, where only recent observations should
+ * matter, <code>accept</code> can forget old observations, either
+ * exponentially with a half-life (see {@link #setHalfLife(double)}) or
+ * exactly after a window of the last accepted keys (see
+ * {@link #setWindow(int)}). Both take amortized constant time per accepted
+ * key and don't change the weights of any other map.
+ * To cap the memory, keys with low weights can be removed, explicitly or
+ * while training (see {@link #setMaxSize(int)}).
+ * Training and selection can be observed with a {@link MetricsListener}.
  * 
  * @param <T> the type of keys maintained by this map
  * 
@@ -63,18 +108,69 @@ import java.util.function.Supplier;
 public class WeightMap<T> implements Map<T, Integer>,
         Supplier<T>, Consumer<T>, Iterator<T> {
     
+    /**
+     * Ways to store the keys and weights.
+     */
+    public enum Storage {
+        /** Keys and boxed weights in a {@link HashMap}. */
+        HASH_MAP,
+        /** Keys and primitive weights in an open addressing table. Needs
+         * less memory and increments weights in place. */
+        TABLE,
+        /** Like {@link #TABLE}, but with 64 bit weights, so that single
+         * weights may exceed {@link Integer#MAX_VALUE}. */
+        LONG_TABLE,
+        /** Keys and striped counters in a concurrent map. <code>accept</code>
+         * and <code>increment</code> may be called by many threads at once
+         * and the random selection always sees a consistent snapshot of the
+         * weights. */
+        CONCURRENT
+    }
+    
+    
+    
     /** Key-weight map. Delegation was chosen over inheritance so that all
      * ways, on which the weights (=values) can be changed (put, remove, etc.),
      * are known and overridden. Otherwise, if all HashMap methods with said
      * behaviour would have to be extended with the totalWeights handling, and
      * that would not be as clear as this solution. */
-    private final Map<T, Integer> map = new HashMap<>();
+    private final WeightStore<T> map;
     /** Sum of all weights. Needed for random selection */
-    private int totalWeights = 0;
-    /** Random number generator used for key selection. */
+    private long totalWeights = 0;
+    /** Sum of all weights if the storage is concurrent, null otherwise. */
+    private final LongAdder concurrentTotalWeights;
+    /** Number of modifications of the weights. Sampling indices are only
+     * valid for the number they were built at, as the sum of all weights
+     * alone may stay the same when keys are replaced. */
+    private long modifications = 0;
+    /** Number of modifications if the storage is concurrent, null
+     * otherwise. */
+    private final LongAdder concurrentModifications;
+    /** Random number generator used for key selection, null to use the
+     * generator of the calling thread. */
     private final Random rand;
+    /** Sampling index of the current weights, null if the weights changed
+     * since it has been built. Being immutable, it can be shared with other
+     * threads without synchronization. */
+    private SamplingIndex<T> index;
+    /** State in the shared cache of sampling indices, null to keep the
+     * index in this map. */
+    private SamplingCache.Entry<T> cacheEntry;
+    /** Listener for training and selection, null for none. */
+    private MetricsListener metrics;
     /** Last key returned by (Iterator.)next, used for (Iterator.)remove. */
     private T lastKey;
+    /** Sum of all weights above which all weights get halved, 0 for no
+     * limit. */
+    private long weightLimit = 0;
+    /** Number of keys to prune to while training, 0 for no limit. */
+    private int maxSize = 0;
+    /** Largest weight the store can hold. */
+    private final long maxWeight;
+    /** State of forgetting old observations while training, null to keep
+     * them all. Only allocated when needed, as most maps are nodes of
+     * chains that never forget. */
+    private Online online;
     
     
     
@@ -93,7 +189,7 @@ public class WeightMap<T> implements Map<T, Integer>,
      * Constructs a new empty <code>WeightMap</code>.
      */
     public WeightMap() {
-        this(new Random());
+        this(Storage.HASH_MAP);
     }
     
     /**
@@ -110,9 +206,53 @@ public class WeightMap<T> implements Map<T, Integer>,
      * Constructs a new empty <code>WeightMap</code>.
      * 
      * @param rand uses the given random number generator as internal number
-     * generator
+     * generator, null to use the generator of the calling thread
      */
     public WeightMap(Random rand) {
+        this(Storage.HASH_MAP, rand);
+    }
+    
+    /**
+     * Constructs a new empty <code>WeightMap</code> that stores its keys and
+     * weights the given way.
+     * 
+     * @param storage how to store the keys and weights
+     */
+    public WeightMap(Storage storage) {
+        this(storage, null);
+    }
+    
+    /**
+     * Constructs a new empty <code>WeightMap</code> that stores its keys and
+     * weights the given way.
+     * 
+     * @param storage how to store the keys and weights
+     * @param rand uses the given random number generator as internal number
+     * generator, null to use the generator of the calling thread
+     */
+    public WeightMap(Storage storage, Random rand) {
+        switch(storage) {
+            case TABLE:
+                map = new WeightTable<>(false);
+                break;
+            case LONG_TABLE:
+                map = new WeightTable<>(true);
+                break;
+            case CONCURRENT:
+                map = new ConcurrentWeightStore<>();
+                break;
+            case HASH_MAP:
+            default:
+                map = new HashWeightStore<>();
+                break;
+        }
+        concurrentTotalWeights =
+                storage == Storage.CONCURRENT ? new LongAdder() : null;
+        concurrentModifications =
+                storage == Storage.CONCURRENT ? new LongAdder() : null;
+        maxWeight = storage == Storage.LONG_TABLE
+                || storage == Storage.CONCURRENT ?
+                Long.MAX_VALUE : Integer.MAX_VALUE;
         this.rand = rand;
     }
     
@@ -120,11 +260,564 @@ public class WeightMap<T> implements Map<T, Integer>,
     
     /**
      * Returns the sum of all weights.
+     * The sum of the weights of 64 bit storage, or of many large int
+     * weights, may not fit into an int; use {@link #getTotalWeightsLong()}
+     * for those.
      * 
      * @return sum of all weights
+     * @throws ArithmeticException if the sum is greater than
+     * Integer.MAX_VALUE
      */
     public int getTotalWeights() {
-        return totalWeights;
+        final long total = getTotalWeightsLong();
+        if(total > Integer.MAX_VALUE) {
+            throw new ArithmeticException(
+                    "Sum of all weights greater than Integer.MAX_VALUE");
+        }
+        return (int)total;
+    }
+    
+    /**
+     * Returns the sum of all weights as a long, which can't overflow.
+     * 
+     * @return sum of all weights
+     */
+    public long getTotalWeightsLong() {
+        return concurrentTotalWeights == null ?
+                totalWeights : concurrentTotalWeights.sum();
+    }
+    
+    /**
+     * Adds the given value to the sum of all weights and drops the sampling
+     * index.
+     * Has to be called after every change of the weights, even if the sum
+     * doesn't change.
+     * 
+     * @param delta value to add
+     */
+    private void addTotalWeights(long delta) {
+        if(concurrentTotalWeights == null) {
+            totalWeights += delta;
+        } else {
+            concurrentTotalWeights.add(delta);
+        }
+        modified();
+    }
+    
+    /**
+     * Counts a modification of the weights and drops the sampling index.
+     */
+    private void modified() {
+        if(concurrentModifications == null) {
+            modifications++;
+        } else {
+            concurrentModifications.increment();
+        }
+        
+        //Don't write the field if not needed, it may be shared by threads
+        if(index != null) {
+            index = null;
+        }
+    }
+    
+    /**
+     * Returns the number of modifications of the weights, the version of
+     * the sampling index of the current weights.
+     * 
+     * @return number of modifications
+     */
+    private long getModifications() {
+        return concurrentModifications == null ?
+                modifications : concurrentModifications.sum();
+    }
+    
+    /**
+     * Returns the weight of the given key or 0 if this map doesn't contain
+     * it.
+     * Unlike <code>get(key)</code> this doesn't box the weight.
+     * 
+     * @param key key whose weight should be returned
+     * @return weight of the given key
+     */
+    public long getWeight(Object key) {
+        return map.getWeight(key);
+    }
+    
+    /**
+     * Performs the given action with every key and its weight.
+     * Unlike iterating over the entries this neither boxes nor limits the
+     * weights.
+     * 
+     * @param action action to perform with every key and its weight
+     */
+    public void forEachWeight(ObjLongConsumer<? super T> action) {
+        map.forEachWeight(action);
+    }
+    
+    /**
+     * Adds the given value to the weight of the given key or adds the key
+     * to this map with the value as weight, if it is not yet contained.
+     * With {@link Storage#TABLE} the weight is changed in place and nothing
+     * is allocated.
+     * 
+     * @param key key whose weight should be changed
+     * @param delta value to add to the weight
+     * @throws IllegalArgumentException if the weight would become negative
+     * @throws ArithmeticException if the weight would overflow
+     */
+    public void increment(T key, long delta) {
+        //Weight first, so that the total never exceeds the sum of weights
+        map.increment(key, delta);
+        addTotalWeights(delta);
+        
+        if(weightLimit > 0 && getTotalWeightsLong() > weightLimit) {
+            limitWeights();
+        }
+        if(maxSize > 0 && map.size() > 2*maxSize) {
+            retainTop(maxSize);
+        }
+    }
+    
+    /**
+     * Removes all keys with a weight less than the given one.
+     * 
+     * @param minWeight least weight of the keys to keep
+     * @return number of removed keys
+     */
+    public int removeBelow(long minWeight) {
+        final List<T> removed = new ArrayList<>();
+        map.forEachWeight((key, weight) -> {
+            if(weight < minWeight) {
+                removed.add(key);
+            }
+        });
+        
+        //Through this map, so that the sum of all weights stays consistent
+        for(T key : removed) {
+            remove(key);
+        }
+        return removed.size();
+    }
+    
+    /**
+     * Keeps only the given number of keys with the largest weights and
+     * removes all others.
+     * Of keys with equal weights, the ones found first are kept.
+     * 
+     * @param k number of keys to keep
+     * @return number of removed keys
+     * @throws IllegalArgumentException if k is negative
+     */
+    public synchronized int retainTop(int k) {
+        if(k < 0) {
+            throw new IllegalArgumentException("k less than 0");
+        }
+        if(map.size() <= k) {
+            return 0;
+        }
+        
+        final int capacity = map.size();
+        final Object[] keys = new Object[capacity];
+        final long[] weights = new long[capacity];
+        final int[] n = {0};
+        map.forEachWeight((key, weight) -> {
+            //Keys added by other threads meanwhile are kept
+            if(n[0] < capacity) {
+                keys[n[0]] = key;
+                weights[n[0]++] = weight;
+            }
+        });
+        if(n[0] <= k) {
+            return 0;
+        }
+        
+        //Weight of the k-th heaviest key, keys of that weight fill up
+        final long[] sorted = Arrays.copyOf(weights, n[0]);
+        Arrays.sort(sorted);
+        final long threshold = k == 0 ? Long.MAX_VALUE : sorted[n[0] - k];
+        int ties = k;
+        for(int i=n[0]-k; i<n[0]; i++) {
+            if(sorted[i] > threshold) {
+                ties--;
+            }
+        }
+        
+        int removed = 0;
+        for(int i=0; i<n[0]; i++) {
+            if(weights[i] < threshold
+                    || (weights[i] == threshold && ties-- <= 0)) {
+                remove(keys[i]);
+                removed++;
+            }
+        }
+        return removed;
+    }
+    
+    /**
+     * Shrinks the storage to fit the current number of keys, if the store
+     * can, e.g. after many keys have been removed.
+     */
+    public synchronized void trimToSize() {
+        map.trimToSize();
+        //The iteration order, which indices follow, may have changed
+        modified();
+    }
+    
+    /**
+     * Returns the number of keys this map is pruned to while training.
+     * 
+     * @return number of keys to keep, 0 for no limit
+     * @see #setMaxSize(int)
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Limits the number of keys while training.
+     * Whenever an increment lets this map contain more than twice the given
+     * number of keys, only the given number of keys with the largest
+     * weights are kept (see {@link #retainTop(int)}), so that pruning takes
+     * amortized constant time per added key and the memory stays bounded.
+     * Should be set before training.
+     * 
+     * @param size number of keys to keep, 0 for no limit
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public void setMaxSize(int size) {
+        if(size < 0) {
+            throw new IllegalArgumentException("Size less than 0");
+        }
+        
+        maxSize = size;
+    }
+    
+    /**
+     * Returns the cache that holds the sampling index of this map.
+     * 
+     * @return sampling cache, null if this map keeps its index itself
+     * @see #setSamplingCache(SamplingCache)
+     */
+    public SamplingCache getSamplingCache() {
+        return cacheEntry == null ? null : cacheEntry.getCache();
+    }
+    
+    /**
+     * Lets the given cache hold the sampling index of this map.
+     * The index is then only kept while the cache has room for it;
+     * otherwise keys are selected with a linear scan over the weights, the
+     * same keys as with the index.
+     * Should be set before selecting from multiple threads.
+     * 
+     * @param cache sampling cache, shared with other maps, or null to keep
+     * the index in this map
+     */
+    public void setSamplingCache(SamplingCache cache) {
+        if(cacheEntry != null) {
+            cacheEntry.remove();
+        }
+        cacheEntry = cache == null ? null : new SamplingCache.Entry<>(cache);
+        modified();
+    }
+    
+    /**
+     * Returns the listener that is told about training and selection.
+     * 
+     * @return metrics listener, null if none
+     */
+    public MetricsListener getMetricsListener() {
+        return metrics;
+    }
+    
+    /**
+     * Sets the listener that is told about every accepted key and every
+     * random selection.
+     * 
+     * @param listener metrics listener, null for none
+     */
+    public void setMetricsListener(MetricsListener listener) {
+        metrics = listener;
+    }
+    
+    /**
+     * Returns a rough estimate of the heap used by this map, including the
+     * store and the sampling index, but without the keys.
+     * 
+     * @return estimated heap in bytes
+     * @see WeightStore
+     */
+    long estimateBytes() {
+        //Fields of this map and of a node
+        long bytes = WeightStore.align(WeightStore.OBJECT_HEADER_BYTES
+                        + 10*WeightStore.REFERENCE_BYTES + 4*Long.BYTES
+                        + Integer.BYTES)
+                + map.estimateBytes();
+        if(concurrentTotalWeights != null) {
+            bytes += 2 * WeightStore.LONG_ADDER_BYTES;
+        }
+        final SamplingIndex<T> current = index;
+        if(current != null) {
+            bytes += current.estimateBytes();
+        }
+        final SamplingCache.Entry<T> entry = cacheEntry;
+        if(entry != null) {
+            bytes += entry.estimateBytes();
+        }
+        final Online state = online;
+        if(state != null) {
+            bytes += state.estimateBytes();
+        }
+        return bytes;
+    }
+    
+    /**
+     * Divides all weights by the given divisor, rounding up so that no key
+     * drops out of the selection.
+     * The probabilities of the keys stay approximately the same, but new
+     * observations get more influence.
+     * With {@link Storage#CONCURRENT} other threads may keep incrementing
+     * weights meanwhile; their increments are not divided.
+     * 
+     * @param divisor value to divide the weights by
+     * @throws IllegalArgumentException if the divisor is less than 1
+     */
+    public void rescale(long divisor) {
+        if(divisor < 1) {
+            throw new IllegalArgumentException("Divisor less than 1");
+        }
+        
+        addTotalWeights(map.divide(divisor, true));
+    }
+    
+    /**
+     * Returns the sum of all weights above which all weights get halved.
+     * 
+     * @return limit of the sum of all weights, 0 for no limit
+     * @see #setWeightLimit(long)
+     */
+    public long getWeightLimit() {
+        return weightLimit;
+    }
+    
+    /**
+     * Sets the sum of all weights above which all weights get halved.
+     * Whenever an increment lets the sum of all weights exceed the limit,
+     * all weights are halved (see {@link #rescale(long)}) until it doesn't
+     * anymore, so that a long-running accumulator can keep training
+     * without overflowing and with bounded weights.
+     * Should be set before training.
+     * 
+     * @param limit limit of the sum of all weights, 0 for no limit
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public void setWeightLimit(long limit) {
+        if(limit < 0) {
+            throw new IllegalArgumentException("Limit less than 0");
+        }
+        
+        weightLimit = limit;
+    }
+    
+    /**
+     * Halves all weights until their sum doesn't exceed the limit anymore.
+     * Synchronized so that concurrent increments exceeding the limit
+     * don't halve the weights several times.
+     */
+    private synchronized void limitWeights() {
+        while(getTotalWeightsLong() > weightLimit) {
+            final long change = map.divide(2, true);
+            addTotalWeights(change);
+            
+            //Weights of 1 can't be halved any further
+            if(change == 0) {
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Returns the half-life of accepted keys.
+     * 
+     * @return half-life, 0 for no decay
+     * @see #setHalfLife(double, LongSupplier)
+     */
+    public double getHalfLife() {
+        final Online state = online;
+        return state == null ? 0 : state.halfLife;
+    }
+    
+    /**
+     * Lets the weight of every accepted key decay exponentially with the
+     * given half-life, measured in keys accepted by this map.
+     * 
+     * @param halfLife number of accepted keys after which the weight of an
+     * accepted key counts half, 0 for no decay
+     * @throws IllegalArgumentException if the half-life is negative
+     * @throws IllegalStateException if a window is set
+     * @see #setHalfLife(double, LongSupplier)
+     */
+    public void setHalfLife(double halfLife) {
+        setHalfLife(halfLife, null);
+    }
+    
+    /**
+     * Lets the weight of every accepted key decay exponentially with the
+     * given half-life, measured with the given clock, for example
+     * <code>System::currentTimeMillis</code>.
+     * Instead of decaying all weights, an accepted key gets a weight that
+     * grows exponentially with time, which gives the same probabilities.
+     * Only when the weights get large, all weights of this map are divided
+     * and the ones that dropped to 0 are forgotten, so accepting a key
+     * takes amortized constant time. Should be set before training;
+     * <code>accept</code> then synchronizes on this map.
+     * 
+     * @param halfLife time after which the weight of an accepted key
+     * counts half, 0 for no decay
+     * @param clock clock the half-life is measured with, null to count the
+     * keys accepted by this map
+     * @throws IllegalArgumentException if the half-life is negative
+     * @throws IllegalStateException if a window is set
+     */
+    public synchronized void setHalfLife(double halfLife, LongSupplier clock) {
+        if(!(halfLife >= 0)) {
+            throw new IllegalArgumentException("Half-life less than 0");
+        }
+        if(halfLife > 0 && getWindow() > 0) {
+            throw new IllegalStateException("Window already set");
+        }
+        
+        if(halfLife > 0) {
+            online = new Online(halfLife, clock, 1L << decayBits());
+        } else if(getWindow() == 0) {
+            online = null;
+        }
+    }
+    
+    /**
+     * Returns the number of last accepted keys whose weights are kept.
+     * 
+     * @return size of the window, 0 for no window
+     * @see #setWindow(int)
+     */
+    public int getWindow() {
+        final Online state = online;
+        return state == null || state.window == null ?
+                0 : state.window.length;
+    }
+    
+    /**
+     * Keeps only the weights of the given number of last accepted keys.
+     * Whenever a key is accepted into a full window, the weight of the
+     * oldest key in the window is decremented again, and the key removed
+     * when its weight drops to 0. Weights set otherwise are not affected.
+     * Should be set before training; <code>accept</code> then synchronizes
+     * on this map.
+     * 
+     * @param size number of last accepted keys whose weights are kept,
+     * 0 for no window
+     * @throws IllegalArgumentException if the size is negative
+     * @throws IllegalStateException if a half-life is set
+     */
+    public synchronized void setWindow(int size) {
+        if(size < 0) {
+            throw new IllegalArgumentException("Size less than 0");
+        }
+        if(size > 0 && getHalfLife() > 0) {
+            throw new IllegalStateException("Half-life already set");
+        }
+        
+        if(size > 0) {
+            online = new Online(size);
+        } else if(getHalfLife() == 0) {
+            online = null;
+        }
+    }
+    
+    /**
+     * Returns the number of bits the weight of a key accepted now may grow
+     * by before all weights are divided, and the precision of the weights
+     * right after.
+     * 
+     * @return number of bits
+     */
+    private int decayBits() {
+        return maxWeight == Long.MAX_VALUE ? 20 : 8;
+    }
+    
+    /**
+     * Accepts the given key into the window or with the weight of the
+     * current time.
+     * 
+     * @param key key to accept
+     */
+    private synchronized void acceptOnline(T key) {
+        final Online state = online;
+        if(state == null) {
+            //Switched off meanwhile
+            increment(key, 1);
+            return;
+        }
+        
+        final Object[] window = state.window;
+        if(window != null) {
+            if(state.windowFill == window.length) {
+                @SuppressWarnings("unchecked")
+                final T oldest = (T)window[state.windowPosition];
+                //The key may have been removed meanwhile
+                if(map.getWeight(oldest) > 0) {
+                    if(map.increment(oldest, -1) == 0) {
+                        map.remove(oldest);
+                    }
+                    addTotalWeights(-1);
+                }
+            } else {
+                state.windowFill++;
+            }
+            window[state.windowPosition] = key;
+            state.windowPosition = (state.windowPosition + 1) % window.length;
+            increment(key, 1);
+            return;
+        }
+        
+        
+        final long now = state.clock == null ?
+                state.lastTime + 1 : state.clock.getAsLong();
+        final double halfLives =
+                Math.max(0, now - state.lastTime) / state.halfLife;
+        state.lastTime = now;
+        
+        final int bits = decayBits();
+        if(halfLives >= Long.SIZE) {
+            //Everything accepted so far is negligible
+            addTotalWeights(map.divide(Long.MAX_VALUE, false));
+            state.unit = 1L << bits;
+        } else {
+            state.unit *= Math.pow(2, halfLives);
+        }
+        
+        //Divide all weights before the weights could overflow
+        final long totalLimit = maxWeight >> 1;
+        while(state.unit > 1L << 2*bits
+                || getTotalWeightsLong() > totalLimit) {
+            addTotalWeights(map.divide(1L << bits, false));
+            state.unit = Math.max(1, state.unit / (1L << bits));
+        }
+        
+        increment(key, Math.round(state.unit));
+    }
+    
+    /**
+     * Adds the weights of the given map to the weights of this map.
+     * Unlike <code>putAll</code>, which overwrites the weights of keys
+     * contained by both maps, their weights are summed up.
+     * 
+     * @param m map whose weights should be added
+     * @throws IllegalArgumentException if a weight would become negative
+     */
+    public void addAll(Map<? extends T, ? extends Integer> m) {
+        for(Entry<? extends T, ? extends Integer> entry : m.entrySet()) {
+            increment(entry.getKey(), entry.getValue());
+        }
     }
     
     
@@ -180,12 +873,10 @@ public class WeightMap<T> implements Map<T, Integer>,
         }
         
         
-        totalWeights += value;
-        
+        //The returned weight may be limited to the range of int
+        final long weight = map.getWeight(key);
         final Integer last = map.put(key, value);
-        if(last != null) {
-            totalWeights -= last;
-        }
+        addTotalWeights(value - weight);
         
         return last;
     }
@@ -195,10 +886,12 @@ public class WeightMap<T> implements Map<T, Integer>,
      */
     @Override
     public Integer remove(Object key) {
+        //The returned weight may be limited to the range of int
+        final long weight = map.getWeight(key);
         final Integer last = map.remove(key);
         
         if(last != null) {
-            totalWeights -= last;
+            addTotalWeights(-weight);
         }
         
         return last;
@@ -220,7 +913,21 @@ public class WeightMap<T> implements Map<T, Integer>,
     @Override
     public void clear() {
         map.clear();
-        totalWeights = 0;
+        final Online state = online;
+        if(state != null && state.window != null) {
+            Arrays.fill(state.window, null);
+            state.windowPosition = 0;
+            state.windowFill = 0;
+        }
+        if(concurrentTotalWeights == null) {
+            totalWeights = 0;
+        } else {
+            concurrentTotalWeights.reset();
+        }
+        modified();
+        if(cacheEntry != null) {
+            cacheEntry.remove();
+        }
     }
     
     /**
@@ -258,26 +965,169 @@ public class WeightMap<T> implements Map<T, Integer>,
      */
     @Override
     public T get() {
-        if(totalWeights <= 0) {
-            //Avoid exception from rand.nextInt(totalWeights)
-            //if totalWeight is 0 (means there are no keys in map)
-            throw new NoSuchElementException("Map is empty");
+        final SamplingIndex<T> current = selectionIndex();
+        final MetricsListener listener = metrics;
+        if(listener != null) {
+            listener.sampled(scanned(current));
         }
-        
+        final Random random = rand == null ? ThreadLocalRandom.current() : rand;
+        final long total = current != null ?
+                current.getTotalWeights() : scanTotalWeights();
         
         //Choose random cumulative distribution function value
         // -> return corresponding x (sort of)
-        int value = rand.nextInt(totalWeights);
+        final long value = total <= Integer.MAX_VALUE ?
+                random.nextInt((int)total) : nextLong(random::nextInt, total);
+        return current != null ? current.select(value) : scan(value);
+    }
+    
+    /**
+     * Returns a random key, drawn with the given random source.
+     * The source is given the sum of the weights as bound and has to return
+     * a uniformly distributed value between (including) 0 and (excluding)
+     * this bound, like <code>nextInt(bound)</code> of {@link Random},
+     * {@link java.util.SplittableRandom} or {@link ThreadLocalRandom}:
+     * <pre>
+     * map.get(new SplittableRandom(seed)::nextInt)
+     * </pre>
+     * If the sum exceeds the range of <code>int</code>, the value is drawn
+     * from several values below smaller bounds.
+     * 
+     * @param random random source, returns a value below the given bound
+     * @return random key
+     * @throws NoSuchElementException if map is empty
+     */
+    public T get(IntUnaryOperator random) {
+        final SamplingIndex<T> current = selectionIndex();
+        final MetricsListener listener = metrics;
+        if(listener != null) {
+            listener.sampled(scanned(current));
+        }
+        if(current == null) {
+            return scan(nextLong(random, scanTotalWeights()));
+        }
+        return current.select(nextLong(random, current.getTotalWeights()));
+    }
+    
+    /**
+     * Draws a uniformly distributed value between (including) 0 and
+     * (excluding) the given bound from a random source for <code>int</code>
+     * values.
+     * Bounds within the range of <code>int</code> take a single value from
+     * the source. Larger bounds take 63 random bits out of three values and
+     * reject the ones that would favour low results, the same way
+     * {@link Random#nextInt(int)} does.
+     * 
+     * @param random random source, returns a value below the given bound
+     * @param bound upper bound (excluding), positive
+     * @return random value between 0 and the bound
+     */
+    static long nextLong(IntUnaryOperator random, long bound) {
+        if(bound <= Integer.MAX_VALUE) {
+            return random.applyAsInt((int)bound);
+        }
         
-        //Consistent order is not guaranteed, but should not be problem
-        for(Entry<T, Integer> entry : entrySet()) {
-            if(entry.getValue() > value) {
-                return entry.getKey();
-            }
-            value -= entry.getValue();
+        final long m = bound - 1;
+        long u;
+        long r;
+        do {
+            u = (long)random.applyAsInt(1<<30) << 33
+                    | (long)random.applyAsInt(1<<30) << 3
+                    | random.applyAsInt(8);
+            r = u % bound;
+        } while(u - r + m < 0);
+        return r;
+    }
+    
+    /**
+     * Returns the sampling index to select with, or null if the weights
+     * should be scanned because the sampling cache has no room for the
+     * index of this map.
+     * 
+     * @return sampling index of the current weights or null
+     * @throws NoSuchElementException if map is empty
+     */
+    private SamplingIndex<T> selectionIndex() {
+        final SamplingCache.Entry<T> entry = cacheEntry;
+        if(entry == null) {
+            return currentIndex();
         }
         
-        throw new ArithmeticException("Weights are broken");
+        final SamplingIndex<T> current =
+                entry.lookup(map, getModifications());
+        if(current != null && current.getTotalWeights() <= 0) {
+            throw new NoSuchElementException("Map is empty");
+        }
+        return current;
+    }
+    
+    /**
+     * Returns the number of entries a selection examines.
+     * 
+     * @param current sampling index to select with, null for a scan
+     * @return number of examined entries
+     */
+    private int scanned(SamplingIndex<T> current) {
+        return current != null ? current.steps() : map.size();
+    }
+    
+    /**
+     * Returns the sum of all weights to draw a value for a scan with.
+     * 
+     * @return sum of all weights
+     * @throws NoSuchElementException if map is empty
+     */
+    private long scanTotalWeights() {
+        final long total = getTotalWeightsLong();
+        if(total <= 0) {
+            throw new NoSuchElementException("Map is empty");
+        }
+        return total;
+    }
+    
+    /**
+     * Returns the key the given value lands on, by going through all keys.
+     * Selects the same key as a sampling index would.
+     * If other threads reduced the weights meanwhile and the value lands
+     * behind all keys, the last key is returned.
+     * 
+     * @param value value between (including) 0 and (excluding) the sum of
+     * all weights
+     * @return key the given value lands on
+     * @throws NoSuchElementException if map is empty
+     */
+    private T scan(long value) {
+        final Scan<T> scan = new Scan<>(value);
+        map.forEachWeight(scan);
+        if(!scan.found) {
+            throw new NoSuchElementException("Map is empty");
+        }
+        return scan.key;
+    }
+    
+    /**
+     * Returns the sampling index of the current weights, building it if the
+     * weights changed since the last selection.
+     * 
+     * @return sampling index of the current weights
+     * @throws NoSuchElementException if map is empty
+     */
+    private SamplingIndex<T> currentIndex() {
+        SamplingIndex<T> current = index;
+        final long version = getModifications();
+        if(current == null || current.getVersion() != version) {
+            current = new SamplingIndex<>(map, version);
+            index = current;
+        }
+        
+        //The index is a snapshot, so its own total is used instead of the
+        //total of this map, which other threads may have changed meanwhile
+        if(current.getTotalWeights() <= 0) {
+            //Avoid exception from drawing a value below 0
+            //if total is 0 (means there are no keys in map)
+            throw new NoSuchElementException("Map is empty");
+        }
+        return current;
     }
     
     
@@ -286,18 +1136,23 @@ public class WeightMap<T> implements Map<T, Integer>,
     /**
      * Increments the weight of the given key or adds it to this map with
      * a weight of 1, if it is not yet contained.
+     * With a half-life the weight of the key is incremented by the weight
+     * of the current time instead, and with a window the weight of the
+     * oldest key in the window is decremented.
      * 
      * @param key key whose weight should be incremented
      */
     @Override
     public void accept(T key) {
-        Integer currentWeight = map.get(key);
-        
-        if(currentWeight == null) {
-            currentWeight = 0;
+        if(online == null) {
+            increment(key, 1);
+        } else {
+            acceptOnline(key);
+        }
+        final MetricsListener listener = metrics;
+        if(listener != null) {
+            listener.trained();
         }
-        
-        put(key, currentWeight+1);
     }
     
     
@@ -372,4 +1227,119 @@ public class WeightMap<T> implements Map<T, Integer>,
     public String toString() {
         return map.toString();
     }
+    
+    
+    
+    /**
+     * State of forgetting old observations, either exponentially with a
+     * half-life or after a window of the last accepted keys. Guarded by the
+     * map.
+     */
+    private static class Online {
+        
+        /** Half-life of accepted keys, 0 for a window. */
+        private final double halfLife;
+        /** Clock the half-life is measured with, null to count accepted
+         * keys. */
+        private final LongSupplier clock;
+        /** Time of the last accepted key. */
+        private long lastTime;
+        /** Weight of a key accepted now. Grows over time instead of all
+         * other weights decaying. */
+        private double unit;
+        /** Last accepted keys in a ring, null for a half-life. */
+        private final Object[] window;
+        /** Position of the oldest key in the window. */
+        private int windowPosition = 0;
+        /** Number of keys in the window. */
+        private int windowFill = 0;
+        
+        
+        
+        /**
+         * Constructs a new <code>Online</code> state that lets the weights
+         * decay.
+         * 
+         * @param halfLife half-life of accepted keys, greater than 0
+         * @param clock clock the half-life is measured with, null to count
+         * accepted keys
+         * @param unit initial weight of an accepted key
+         */
+        Online(double halfLife, LongSupplier clock, double unit) {
+            this.halfLife = halfLife;
+            this.clock = clock;
+            this.lastTime = clock == null ? 0 : clock.getAsLong();
+            this.unit = unit;
+            this.window = null;
+        }
+        
+        /**
+         * Constructs a new <code>Online</code> state that keeps a window of
+         * the last accepted keys.
+         * 
+         * @param size size of the window, greater than 0
+         */
+        Online(int size) {
+            this.halfLife = 0;
+            this.clock = null;
+            this.window = new Object[size];
+        }
+        
+        
+        
+        /**
+         * Returns an estimate of the heap used by this state, without the
+         * keys.
+         * 
+         * @return estimated heap in bytes
+         * @see WeightStore
+         */
+        long estimateBytes() {
+            return WeightStore.align(WeightStore.OBJECT_HEADER_BYTES
+                            + 2*WeightStore.REFERENCE_BYTES + Long.BYTES
+                            + 2*Double.BYTES + 2*Integer.BYTES)
+                    + (window == null ? 0 : WeightStore.arrayBytes(
+                            window.length, WeightStore.REFERENCE_BYTES));
+        }
+    }
+    
+    /**
+     * Finds the key a value lands on while going through the weights.
+     * 
+     * @param <T> the type of keys
+     */
+    private static class Scan<T> implements ObjLongConsumer<T> {
+        
+        /** Remaining value, below 0 once the key has been passed. */
+        private long remaining;
+        /** Key the value lands on, or the last key with a weight. */
+        private T key;
+        /** If a key with a weight has been seen. */
+        private boolean found = false;
+        
+        
+        
+        /**
+         * Constructs a new <code>Scan</code>.
+         * 
+         * @param value value to find the key of
+         */
+        Scan(long value) {
+            remaining = value;
+        }
+        
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void accept(T key, long weight) {
+            if(remaining >= 0 && weight > 0) {
+                this.key = key;
+                found = true;
+                remaining -= weight;
+            }
+        }
+    }
 }
@@ -0,0 +1,219 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+
+
+/**
+ * Storage of the keys and weights of a {@link WeightMap}.
+ * Besides the {@link Map} interface a store can change a weight in place,
+ * which implementations can do without boxing the weight.
+ * 
+ * Weights are handled as <code>long</code>. Stores with <code>int</code>
+ * weights throw an {@link ArithmeticException} instead of letting a weight
+ * overflow. As the values of the {@link Map} interface are
+ * <code>Integer</code>s, it reports weights above
+ * {@link Integer#MAX_VALUE} as {@link Integer#MAX_VALUE}, just like
+ * {@link java.util.Collection#size()} does for large collections.
+ * 
+ * The estimates of heap usage are rough. They assume a 64 bit HotSpot JVM
+ * with compressed references and class pointers, the default for heaps
+ * below 32 GiB, which lays out an object as a header followed by its fields
+ * and aligns it to 8 bytes. Without compressed references headers take 16
+ * bytes and references 8 bytes, so the actual heap can be considerably
+ * larger. Padding between fields and the internals of library classes are
+ * only approximated.
+ * 
+ * @param <T> the type of keys maintained by this store
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+interface WeightStore<T> extends Map<T, Integer> {
+    
+    /** Size of the header of an object. */
+    int OBJECT_HEADER_BYTES = 12;
+    /** Size of the header of an array, including its length. */
+    int ARRAY_HEADER_BYTES = 16;
+    /** Size of a compressed reference. */
+    int REFERENCE_BYTES = 4;
+    /** Alignment of objects, a power of two. */
+    int OBJECT_ALIGNMENT = 8;
+    /** Size of the fields {@link java.util.AbstractMap} adds. */
+    int ABSTRACT_MAP_BYTES = 2*REFERENCE_BYTES;
+    /** Size of a {@link java.util.HashMap} object, without its table. */
+    int HASH_MAP_BYTES = 48;
+    /** Size of a {@link java.util.concurrent.ConcurrentHashMap} object,
+     * without its table. */
+    int CONCURRENT_HASH_MAP_BYTES = 64;
+    /** Size of an entry of a {@link java.util.HashMap} or a
+     * {@link java.util.concurrent.ConcurrentHashMap}: header, hash and
+     * references to the key, the value and the next entry. */
+    int HASH_MAP_ENTRY_BYTES = 32;
+    /** Size of an {@link Integer}. */
+    int INTEGER_BYTES = 16;
+    /** Size of an uncontended {@link java.util.concurrent.atomic.LongAdder}:
+     * header, base, reference to the cells and a lock. */
+    int LONG_ADDER_BYTES = 32;
+    
+    
+    
+    /**
+     * Returns the weight of the given key or 0 if it isn't contained.
+     * 
+     * @param key key whose weight should be returned
+     * @return weight of the given key
+     */
+    long getWeight(Object key);
+    
+    /**
+     * Adds the given value to the weight of the given key.
+     * If the key is not yet contained, it is added with the given value as
+     * weight.
+     * 
+     * @param key key whose weight should be changed
+     * @param delta value to add to the weight
+     * @return new weight of the key
+     * @throws IllegalArgumentException if the new weight would be negative
+     * @throws ArithmeticException if the new weight would overflow
+     */
+    long increment(T key, long delta);
+    
+    /**
+     * Divides all weights by the given divisor.
+     * Rounding up, no weight drops to 0. Rounding down, keys whose weight
+     * drops to 0 are removed, unless other threads may increment them
+     * meanwhile.
+     * 
+     * @param divisor value to divide the weights by, at least 1
+     * @param roundUp if the weights should be rounded up instead of down
+     * @return change of the sum of all weights, not positive
+     */
+    long divide(long divisor, boolean roundUp);
+    
+    /**
+     * Performs the given action with every key and its weight.
+     * Unlike iterating over the entries this neither boxes nor limits the
+     * weights.
+     * 
+     * @param action action to perform with every key and its weight
+     */
+    void forEachWeight(ObjLongConsumer<? super T> action);
+    
+    /**
+     * Shrinks the storage to fit the current number of keys, if it can.
+     */
+    default void trimToSize() {
+    }
+    
+    /**
+     * Returns a rough estimate of the heap used by this store, without the
+     * keys, under the assumptions of {@link WeightStore}.
+     * 
+     * @return estimated heap in bytes
+     */
+    long estimateBytes();
+    
+    /**
+     * Rounds the given size of an object up to {@link #OBJECT_ALIGNMENT}.
+     * 
+     * @param bytes size of the header and fields of an object
+     * @return aligned size
+     */
+    static long align(long bytes) {
+        return (bytes + OBJECT_ALIGNMENT-1) & -OBJECT_ALIGNMENT;
+    }
+    
+    /**
+     * Returns the estimated size of an array.
+     * 
+     * @param length length of the array
+     * @param elementBytes size of an element, {@link #REFERENCE_BYTES} for
+     * references
+     * @return estimated size in bytes
+     */
+    static long arrayBytes(long length, int elementBytes) {
+        return align(ARRAY_HEADER_BYTES + length*elementBytes);
+    }
+    
+    /**
+     * Returns the estimated size of a hash map with chained entries, like
+     * {@link java.util.HashMap} or
+     * {@link java.util.concurrent.ConcurrentHashMap}, whose table keeps a
+     * load factor of 0.75.
+     * 
+     * @param size number of entries
+     * @param objectBytes size of the map object itself
+     * @param entryBytes size of an entry with its value
+     * @return estimated size in bytes
+     */
+    static long hashMapBytes(int size, int objectBytes, int entryBytes) {
+        long capacity = 16;
+        while(capacity * 3 / 4 < size) {
+            capacity <<= 1;
+        }
+        return align(objectBytes) + arrayBytes(capacity, REFERENCE_BYTES)
+                + (long)size * entryBytes;
+    }
+    
+    /**
+     * Returns the given weight as <code>Integer</code> for the {@link Map}
+     * interface, limited to {@link Integer#MAX_VALUE}.
+     * 
+     * @param weight weight
+     * @return weight limited to the range of <code>int</code>
+     */
+    static Integer toInteger(long weight) {
+        return (int)Math.min(weight, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Returns the given weight divided by the given divisor, rounded up.
+     * 
+     * @param weight weight, not negative
+     * @param divisor divisor, at least 1
+     * @return weight divided by the divisor, rounded up
+     */
+    static long divideUp(long weight, long divisor) {
+        return weight / divisor + (weight % divisor == 0 ? 0 : 1);
+    }
+    
+    /**
+     * Returns the given weight divided by the given divisor.
+     * 
+     * @param weight weight, not negative
+     * @param divisor divisor, at least 1
+     * @param roundUp if the result should be rounded up instead of down
+     * @return weight divided by the divisor
+     */
+    static long divide(long weight, long divisor, boolean roundUp) {
+        return roundUp ? divideUp(weight, divisor) : weight / divisor;
+    }
+}
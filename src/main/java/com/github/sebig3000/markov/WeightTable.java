@@ -0,0 +1,552 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.ObjLongConsumer;
+
+
+
+/**
+ * {@link WeightStore} using open addressing.
+ * Keys and weights are stored in two parallel arrays, a key array and a
+ * primitive <code>int</code> array, so that an entry needs no objects of its
+ * own and a weight can be incremented in place without allocating anything.
+ * Constructed for long weights, the weights are stored in a
+ * <code>long</code> array instead, so that they can grow beyond the range
+ * of <code>int</code> at the cost of 4 more bytes per slot.
+ * Collisions are resolved by linear probing. Removed keys leave a marker
+ * behind, which gets cleaned up on the next resize.
+ * 
+ * The {@link java.util.Map} interface is only a compatibility adapter: its
+ * methods box the weights and the entries are created while iterating.
+ * 
+ * @param <T> the type of keys maintained by this store
+ * 
+ * @author Sebastian Gössl
+ * @version 1.0 16.10.2026
+ */
+class WeightTable<T> extends AbstractMap<T, Integer>
+        implements WeightStore<T> {
+    
+    /** Marker for a slot whose key has been removed. */
+    private static final Object REMOVED = new Object();
+    /** Stand-in for the null key, as null marks an empty slot. */
+    private static final Object NULL_KEY = new Object();
+    /** Initial capacity, must be a power of 2. */
+    private static final int INITIAL_CAPACITY = 8;
+    
+    /** Keys, null for empty slots. */
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    /** Weights of the keys in the same slots, null if the weights are
+     * long. */
+    private int[] weights;
+    /** Long weights of the keys in the same slots, null if the weights are
+     * int. */
+    private long[] longWeights;
+    /** Number of contained keys. */
+    private int size = 0;
+    /** Number of slots that are not empty (keys and removed markers). */
+    private int used = 0;
+    /** Number of structural modifications, used by the iterators. */
+    private int modCount = 0;
+    
+    
+    
+    /**
+     * Constructs a new empty <code>WeightTable</code> with int weights.
+     */
+    WeightTable() {
+        this(false);
+    }
+    
+    /**
+     * Constructs a new empty <code>WeightTable</code>.
+     * 
+     * @param longWeights if the weights should be stored as long instead of
+     * int
+     */
+    WeightTable(boolean longWeights) {
+        if(longWeights) {
+            this.longWeights = new long[INITIAL_CAPACITY];
+        } else {
+            this.weights = new int[INITIAL_CAPACITY];
+        }
+    }
+    
+    
+    
+    /**
+     * Returns the weight in the given slot.
+     * 
+     * @param slot slot
+     * @return weight in the given slot
+     */
+    private long weight(int slot) {
+        return weights != null ? weights[slot] : longWeights[slot];
+    }
+    
+    /**
+     * Sets the weight in the given slot.
+     * 
+     * @param slot slot
+     * @param weight weight, fitting into the weight array
+     */
+    private void setWeight(int slot, long weight) {
+        if(weights != null) {
+            weights[slot] = (int)weight;
+        } else {
+            longWeights[slot] = weight;
+        }
+    }
+    
+    /**
+     * Returns the slot of the given key or -1 if it isn't contained.
+     * 
+     * @param key masked key to search for
+     * @return slot of the given key or -1
+     */
+    private int find(Object key) {
+        final int mask = keys.length - 1;
+        for(int i=hash(key)&mask; keys[i]!=null; i=(i+1)&mask) {
+            if(keys[i] != REMOVED && keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the slot of the given key, inserting it with weight 0 if it
+     * isn't contained yet.
+     * 
+     * @param key masked key to search for
+     * @return slot of the given key
+     */
+    private int findOrInsert(Object key) {
+        final int mask = keys.length - 1;
+        int free = -1;
+        int i = hash(key) & mask;
+        for(; keys[i]!=null; i=(i+1)&mask) {
+            if(keys[i] == REMOVED) {
+                if(free < 0) {
+                    free = i;
+                }
+            } else if(keys[i].equals(key)) {
+                return i;
+            }
+        }
+        
+        //Reuse the first removed slot on the way, if there was one
+        if(free < 0) {
+            free = i;
+            used++;
+        }
+        keys[free] = key;
+        setWeight(free, 0);
+        size++;
+        modCount++;
+        
+        //Keep at least a quarter of the slots empty so that probing ends
+        if(used > keys.length - (keys.length>>2)) {
+            resize();
+            return find(key);
+        }
+        return free;
+    }
+    
+    /**
+     * Rehashes all keys into new arrays, dropping the removed markers.
+     * The capacity is doubled if more than half of the slots are taken by
+     * keys.
+     */
+    private void resize() {
+        rehash(size > (keys.length>>1) ? keys.length<<1 : keys.length);
+    }
+    
+    /**
+     * Rehashes all keys into new arrays of the given capacity, dropping the
+     * removed markers.
+     * 
+     * @param capacity new number of slots, a power of two larger than the
+     * number of keys
+     */
+    private void rehash(int capacity) {
+        final Object[] oldKeys = keys;
+        final int[] oldWeights = weights;
+        final long[] oldLongWeights = longWeights;
+        
+        keys = new Object[capacity];
+        if(oldWeights != null) {
+            weights = new int[capacity];
+        } else {
+            longWeights = new long[capacity];
+        }
+        used = size;
+        
+        final int mask = capacity - 1;
+        for(int j=0; j<oldKeys.length; j++) {
+            if(oldKeys[j] != null && oldKeys[j] != REMOVED) {
+                int i = hash(oldKeys[j]) & mask;
+                while(keys[i] != null) {
+                    i = (i+1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                setWeight(i, oldWeights != null ?
+                        oldWeights[j] : oldLongWeights[j]);
+            }
+        }
+    }
+    
+    /**
+     * Removes the key in the given slot.
+     * 
+     * @param slot slot to clear
+     */
+    private void removeSlot(int slot) {
+        keys[slot] = REMOVED;
+        setWeight(slot, 0);
+        size--;
+        modCount++;
+    }
+    
+    /**
+     * Spreads the hash code of the given key over all bits, as linear
+     * probing only uses the lower ones.
+     * 
+     * @param key masked key
+     * @return spread hash code
+     */
+    private static int hash(Object key) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Replaces the null key with its stand-in.
+     * 
+     * @param key key
+     * @return masked key
+     */
+    private static Object mask(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+    
+    /**
+     * Replaces the stand-in of the null key with null.
+     * 
+     * @param key masked key
+     * @return key
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T unmask(Object key) {
+        return key == NULL_KEY ? null : (T)key;
+    }
+    
+    
+    
+    //WeightStore
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getWeight(Object key) {
+        final int slot = find(mask(key));
+        return slot < 0 ? 0 : weight(slot);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long increment(T key, long delta) {
+        final Object masked = mask(key);
+        
+        //Check before inserting so that a failed call changes nothing
+        final long weight = Math.addExact(getWeight(masked), delta);
+        if(weight < 0) {
+            throw new IllegalArgumentException("Weight less than 0");
+        }
+        if(weights != null && weight > Integer.MAX_VALUE) {
+            throw new ArithmeticException("integer overflow");
+        }
+        
+        final int slot = findOrInsert(masked);
+        setWeight(slot, weight);
+        return weight;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long divide(long divisor, boolean roundUp) {
+        long change = 0;
+        for(int i=0; i<keys.length; i++) {
+            if(keys[i] != null && keys[i] != REMOVED) {
+                final long weight = weight(i);
+                final long divided =
+                        WeightStore.divide(weight, divisor, roundUp);
+                if(divided == 0) {
+                    removeSlot(i);
+                } else {
+                    setWeight(i, divided);
+                }
+                change += divided - weight;
+            }
+        }
+        return change;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachWeight(ObjLongConsumer<? super T> action) {
+        for(int i=0; i<keys.length; i++) {
+            if(keys[i] != null && keys[i] != REMOVED) {
+                action.accept(WeightTable.<T>unmask(keys[i]), weight(i));
+            }
+        }
+    }
+    
+    /**
+     * Halves the capacity as long as at most half of the slots stay taken by
+     * keys, the same load a resize leaves behind.
+     */
+    @Override
+    public void trimToSize() {
+        int capacity = keys.length;
+        while(capacity > INITIAL_CAPACITY && size <= (capacity>>2)) {
+            capacity >>= 1;
+        }
+        if(capacity < keys.length) {
+            rehash(capacity);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long estimateBytes() {
+        return WeightStore.align(WeightStore.OBJECT_HEADER_BYTES
+                        + WeightStore.ABSTRACT_MAP_BYTES
+                        + 3*WeightStore.REFERENCE_BYTES + 3*Integer.BYTES)
+                + WeightStore.arrayBytes(keys.length,
+                        WeightStore.REFERENCE_BYTES)
+                + (weights != null ?
+                        WeightStore.arrayBytes(weights.length, Integer.BYTES)
+                        : WeightStore.arrayBytes(longWeights.length,
+                                Long.BYTES));
+    }
+    
+    
+    
+    //Map
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return find(mask(key)) >= 0;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer get(Object key) {
+        final int slot = find(mask(key));
+        return slot < 0 ? null : WeightStore.toInteger(weight(slot));
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer put(T key, Integer value) {
+        final Object masked = mask(key);
+        
+        final int old = find(masked);
+        final Integer last = old < 0 ?
+                null : WeightStore.toInteger(weight(old));
+        
+        //Find the slot first, inserting may replace the arrays
+        final int slot = findOrInsert(masked);
+        setWeight(slot, value);
+        return last;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer remove(Object key) {
+        final int slot = find(mask(key));
+        if(slot < 0) {
+            return null;
+        }
+        
+        final Integer last = WeightStore.toInteger(weight(slot));
+        removeSlot(slot);
+        return last;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        if(weights != null) {
+            Arrays.fill(weights, 0);
+        } else {
+            Arrays.fill(longWeights, 0);
+        }
+        size = 0;
+        used = 0;
+        modCount++;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Entry<T, Integer>> entrySet() {
+        return new AbstractSet<Entry<T, Integer>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+            
+            @Override
+            public void clear() {
+                WeightTable.this.clear();
+            }
+            
+            @Override
+            public Iterator<Entry<T, Integer>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+    
+    
+    
+    /**
+     * Iterator over the occupied slots.
+     * Its entries write through to the table.
+     */
+    private class EntryIterator implements Iterator<Entry<T, Integer>> {
+        
+        /** Next slot to check. */
+        private int next = 0;
+        /** Slot of the last returned entry, -1 if there is none. */
+        private int last = -1;
+        /** Expected modification count. */
+        private int expectedModCount = modCount;
+        
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext() {
+            while(next < keys.length
+                    && (keys[next] == null || keys[next] == REMOVED)) {
+                next++;
+            }
+            return next < keys.length;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry<T, Integer> next() {
+            if(modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            
+            last = next++;
+            final int slot = last;
+            return new SimpleEntry<T, Integer>(
+                    WeightTable.<T>unmask(keys[slot]),
+                    WeightStore.toInteger(weight(slot))) {
+                private static final long serialVersionUID = 1L;
+                
+                @Override
+                public Integer setValue(Integer value) {
+                    if(modCount != expectedModCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    Objects.requireNonNull(value);
+                    setWeight(slot, value);
+                    return super.setValue(value);
+                }
+            };
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void remove() {
+            if(last < 0) {
+                throw new IllegalStateException();
+            }
+            if(modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            
+            //Removing only leaves a marker, so no key moves to another slot
+            removeSlot(last);
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+}
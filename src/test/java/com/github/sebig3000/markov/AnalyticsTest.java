@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+
+/**
+ * Analytics test.
+ * Compares the stationary distribution, the distribution after two steps
+ * and the hitting times of a small chain with the exact values. Then
+ * computes the stationary distribution of a chain with millions of nodes on
+ * one and on all cores and compares the results and times.
+ * 
+ * @author Sebastian Gössl
+ */
+public class AnalyticsTest {
+    
+    public static void main(String[] args) {
+        
+        //Small chain: A -> A, A -> B, B -> A, B -> End (twice as often)
+        final MarkovChain<String> small = new MarkovChain<>();
+        final MarkovNode<String> a = small.getOrCreateNode("A");
+        final MarkovNode<String> b = small.getOrCreateNode("B");
+        final MarkovNode<String> end = small.getOrCreateNode("End");
+        a.increment(a, 1);
+        a.increment(b, 1);
+        b.increment(a, 1);
+        b.increment(end, 2);
+        final FrozenChain<String> frozen = small.freeze();
+        final ChainAnalytics<String> analytics =
+                new ChainAnalytics<>(frozen);
+        final int idA = frozen.getId("A");
+        final int idB = frozen.getId("B");
+        final int idEnd = frozen.getId("End");
+        
+        final ChainAnalytics.Result stationary =
+                analytics.stationaryDistribution(idA, 1e-12, 10000);
+        System.out.println("Stationary distribution (restart at A): "
+                + stationary);
+        System.out.println("  exact: " + (near(stationary, idA, 6.0/11)
+                && near(stationary, idB, 3.0/11)
+                && near(stationary, idEnd, 2.0/11)));
+        
+        final ChainAnalytics.Result twoSteps =
+                analytics.distributionAfter(idA, 2);
+        System.out.println("Two steps from A: "
+                + Arrays.toString(twoSteps.getValues()));
+        System.out.println("  exact: " + (near(twoSteps, idA, 5.0/12)
+                && near(twoSteps, idB, 1.0/4)
+                && near(twoSteps, idEnd, 1.0/3)));
+        
+        final ChainAnalytics.Result hitting =
+                analytics.hittingTimes(idEnd, 1e-12, 10000);
+        System.out.println("Steps until End: " + hitting);
+        System.out.println("  exact: " + (near(hitting, idA, 4.5)
+                && near(hitting, idB, 2.5)
+                && near(hitting, idEnd, 0)));
+        
+        
+        //Large chain with skewed targets
+        final int n = 2000000;
+        final Random rand = new Random(42);
+        final Object[] tokens = new Object[n];
+        final int[] offsets = new int[n+1];
+        final int[] targets = new int[n*8];
+        final int[] cumulativeWeights = new int[n*8];
+        final int[] row = new int[8];
+        int e = 0;
+        for(int i=0; i<n; i++) {
+            tokens[i] = i;
+            offsets[i] = e;
+            for(int j=0; j<row.length; j++) {
+                row[j] = (int)Math.pow(n, rand.nextDouble()) - 1;
+            }
+            Arrays.sort(row);
+            int sum = 0;
+            for(int j=0; j<row.length; j++) {
+                if(j > 0 && row[j] == row[j-1]) {
+                    continue;
+                }
+                sum += 1 + rand.nextInt(10);
+                targets[e] = row[j];
+                cumulativeWeights[e] = sum;
+                e++;
+            }
+        }
+        offsets[n] = e;
+        final FrozenChain<Integer> large = new FrozenChain<>(tokens, offsets,
+                targets, cumulativeWeights);
+        System.out.printf("Large chain: %d nodes, %d edges%n",
+                large.size(), large.getEdgeCount());
+        
+        final ForkJoinPool single = new ForkJoinPool(1);
+        ChainAnalytics.Result sequential = null;
+        ChainAnalytics.Result parallel = null;
+        for(int run=0; run<3; run++) {
+            sequential = new ChainAnalytics<>(large, single)
+                    .stationaryDistribution(-1, 1e-9, 1000);
+            parallel = new ChainAnalytics<>(large)
+                    .stationaryDistribution(-1, 1e-9, 1000);
+        }
+        single.shutdown();
+        
+        double difference = 0;
+        double sum = 0;
+        for(int i=0; i<n; i++) {
+            difference = Math.max(difference, Math.abs(
+                    sequential.getValue(i) - parallel.getValue(i)));
+            sum += parallel.getValue(i);
+        }
+        System.out.println("  1 thread:  " + sequential);
+        System.out.println("  " + ForkJoinPool.commonPool().getParallelism()
+                + " threads: " + parallel);
+        System.out.printf("  speedup: %.1f, largest difference: %.2e, "
+                + "sum: %.9f%n",
+                (double)sequential.getNanos() / parallel.getNanos(),
+                difference, sum);
+    }
+    
+    /**
+     * Returns if the value of the given node is near the given one.
+     * 
+     * @param result result
+     * @param id id of the node
+     * @param expected expected value
+     * @return if the value is near the expected one
+     */
+    private static boolean near(ChainAnalytics.Result result, int id,
+            double expected) {
+        return Math.abs(result.getValue(id) - expected) < 1e-9;
+    }
+}
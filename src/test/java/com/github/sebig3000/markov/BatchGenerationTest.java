@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+
+/**
+ * Batch generation test.
+ * Trains a chain on synthetic sentences, freezes it and generates batches of
+ * sentences on pools with different parallelism. Checks that the batches
+ * are equal, that every generated transition has been trained and measures
+ * the throughput in sequences per second.
+ * 
+ * @author Sebastian Gössl
+ */
+public class BatchGenerationTest {
+    
+    public static void main(String[] args) {
+        
+        //Train sentences of 5 to 30 words between a start and an end node
+        final Random rand = new Random(42);
+        final MarkovChain<String> chain = new MarkovChain<>();
+        final MarkovNode<String> start = chain.getOrCreateNode("$");
+        for(int s=0; s<100000; s++) {
+            MarkovNode<String> current = start;
+            final int length = 5 + rand.nextInt(26);
+            for(int i=0; i<length; i++) {
+                final int token = (int)Math.abs(rand.nextGaussian() * 2000);
+                current = current.apply(chain, "w" + token);
+            }
+            current.apply(chain, ".");
+        }
+        final FrozenChain<String> frozen = chain.freeze();
+        final int startId = frozen.getId("$");
+        final int endId = frozen.getId(".");
+        
+        
+        //The result must not depend on the pool
+        final SequenceBatch single = new SequenceBatch(10000, 50);
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        frozen.generate(startId, endId, single, 7, pool);
+        pool.shutdown();
+        final SequenceBatch common = frozen.generate("$", ".", 10000, 50, 7);
+        boolean equal = true;
+        for(int i=0; i<single.getCount(); i++) {
+            equal &= single.getLength(i) == common.getLength(i)
+                    && Arrays.equals(
+                            Arrays.copyOfRange(single.getIds(),
+                                    i*50, i*50 + single.getLength(i)),
+                            Arrays.copyOfRange(common.getIds(),
+                                    i*50, i*50 + common.getLength(i)));
+        }
+        System.out.println("Independent of the pool: " + equal);
+        
+        //Every transition has to exist
+        boolean trained = true;
+        for(int i=0; i<common.getCount(); i++) {
+            int from = startId;
+            for(int j=0; j<common.getLength(i); j++) {
+                final int to = common.getId(i, j);
+                trained &= to != endId && frozen.getWeight(from, to) > 0;
+                from = to;
+            }
+        }
+        System.out.println("Only trained transitions: " + trained);
+        System.out.println(String.join(" ", common.getSequence(0, frozen)));
+        
+        
+        //Throughput, reusing the same batch
+        final SequenceBatch batch = new SequenceBatch(10000, 50);
+        for(int i=0; i<10; i++) {
+            frozen.generate(startId, endId, batch, i);
+        }
+        final int runs = 50;
+        final long begin = System.nanoTime();
+        for(int i=0; i<runs; i++) {
+            frozen.generate(startId, endId, batch, i);
+        }
+        final long end = System.nanoTime();
+        System.out.printf("%.0f sequences/s (%d threads)%n",
+                runs * batch.getCount() / ((end-begin) / 1e9),
+                ForkJoinPool.getCommonPoolParallelism());
+    }
+}
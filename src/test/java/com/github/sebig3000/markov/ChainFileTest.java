@@ -0,0 +1,300 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+
+
+/**
+ * ChainFile test.
+ * Saves a trained chain into a temporary file, loads it again and checks
+ * that all edges kept their weights. Outputs the file size and the time
+ * saving and loading took.
+ * Then checks that truncated files, files with random corrupted bytes and
+ * files with invalid counts, weights, targets and tokens are rejected with
+ * an IOException, from files and from streams.
+ * 
+ * @author Sebastian Gössl
+ */
+public class ChainFileTest {
+    
+    public static void main(String[] args) throws IOException {
+        
+        //Train on a corpus with a skewed vocabulary, like natural text
+        final Random rand = new Random(42);
+        final MarkovChain<String> chain = new MarkovChain<>();
+        MarkovNode<String> current = chain.getOrCreateNode("$");
+        for(int i=0; i<3000000; i++) {
+            final int token = (int)Math.abs(rand.nextGaussian() * 5000);
+            current = current.apply(chain, "w" + token);
+        }
+        final FrozenChain<String> frozen = chain.freeze();
+        
+        
+        final Path file = Files.createTempFile("chain", ".mrkv");
+        try {
+            long begin = System.nanoTime();
+            ChainFile.write(frozen, file);
+            long end = System.nanoTime();
+            System.out.printf("Saved %d nodes, %d edges into %d bytes "
+                    + "in %.3f s%n", frozen.size(), frozen.getEdgeCount(),
+                    Files.size(file), (end-begin) / 1e9);
+            
+            begin = System.nanoTime();
+            final FrozenChain<String> loaded = ChainFile.read(file);
+            end = System.nanoTime();
+            System.out.printf("Loaded in %.3f s%n", (end-begin) / 1e9);
+            
+            
+            boolean equal = frozen.size() == loaded.size()
+                    && frozen.getEdgeCount() == loaded.getEdgeCount();
+            for(int i=0; i<frozen.size() && equal; i++) {
+                final int id = loaded.getId(frozen.getData(i));
+                equal &= frozen.getTotalWeights(i)
+                        == loaded.getTotalWeights(id);
+                for(int e=frozen.getEdgeStart(i); e<frozen.getEdgeEnd(i);
+                        e++) {
+                    equal &= frozen.getEdgeWeight(i, e) == loaded.getWeight(
+                            id, loaded.getId(
+                                    frozen.getData(frozen.getTarget(e))));
+                }
+            }
+            System.out.println("Same weights: " + equal);
+            
+            final MarkovChain<String> thawed = loaded.thaw();
+            System.out.println("Thawed chain equal: "
+                    + (thawed.size() == chain.size()
+                    && thawed.getNode("$").getTotalWeights()
+                    == chain.getNode("$").getTotalWeights()));
+            
+            
+            //Truncated files
+            final byte[] bytes = Files.readAllBytes(file);
+            boolean rejected = true;
+            for(int length : new int[]{0, 3, 6, 100, bytes.length / 2,
+                    bytes.length - 1}) {
+                rejected &= rejects(file, Arrays.copyOf(bytes, length));
+            }
+            System.out.println("Truncated files rejected: " + rejected);
+            
+        } finally {
+            Files.delete(file);
+        }
+        
+        
+        corruptBytes();
+        invalidFiles();
+    }
+    
+    
+    
+    /**
+     * Saves a small chain, corrupts single random bytes of the file and
+     * loads it. Every load has to either succeed or throw an IOException.
+     * 
+     * @throws IOException if writing the file fails
+     */
+    private static void corruptBytes() throws IOException {
+        final Random rand = new Random(42);
+        final MarkovChain<String> chain = new MarkovChain<>();
+        MarkovNode<String> current = chain.getOrCreateNode("$");
+        for(int i=0; i<2000; i++) {
+            final int token = (int)Math.abs(rand.nextGaussian() * 50);
+            current = current.apply(chain, "w" + token);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChainFile.write(chain.freeze(), Channels.newChannel(out), token ->
+                token.getBytes(StandardCharsets.UTF_8));
+        final byte[] bytes = out.toByteArray();
+        
+        int rejected = 0;
+        int loaded = 0;
+        boolean others = false;
+        for(int i=0; i<2000; i++) {
+            final byte[] corrupted = bytes.clone();
+            corrupted[rand.nextInt(corrupted.length)] ^=
+                    1 << rand.nextInt(8);
+            try {
+                read(corrupted);
+                loaded++;
+            } catch(IOException ex) {
+                rejected++;
+            } catch(RuntimeException | OutOfMemoryError ex) {
+                others = true;
+            }
+        }
+        System.out.printf("Corrupted files: %d rejected, %d still valid, "
+                + "no other exceptions: %b%n", rejected, loaded, !others);
+    }
+    
+    /**
+     * Checks that files with invalid counts, weights, targets or tokens are
+     * rejected and a valid one is loaded.
+     * 
+     * @throws IOException if writing a file fails
+     */
+    private static void invalidFiles() throws IOException {
+        final Path file = Files.createTempFile("chain", ".mrkv");
+        try {
+            //Nodes a and b, edge a -> b with weight 2
+            boolean valid = !rejects(file, chainFile(2, 1, "a", "b",
+                    1, 1, 2, 0));
+            
+            boolean rejected = true;
+            //Node count way beyond the file
+            rejected &= rejects(file, chainFile(2000000000, 1, "a", "b",
+                    1, 1, 2, 0));
+            //Edge count way beyond the file
+            rejected &= rejects(file, chainFile(2, 2000000000, "a", "b",
+                    1, 1, 2, 0));
+            //Token length beyond the file
+            rejected &= rejects(file, chainFile(1, 0, 1000000000));
+            //Weight 0 and negative weight
+            rejected &= rejects(file, chainFile(2, 1, "a", "b",
+                    1, 1, 0, 0));
+            rejected &= rejects(file, chainFile(2, 1, "a", "b",
+                    1, 1, -1, 0));
+            //Sum of the weights of a node beyond int
+            rejected &= rejects(file, chainFile(2, 2, "a", "b",
+                    2, 0, Integer.MAX_VALUE, 1, 1, 0));
+            //Same target twice
+            rejected &= rejects(file, chainFile(2, 2, "a", "b",
+                    2, 1, 1, 0, 1, 0));
+            //Target beyond the nodes
+            rejected &= rejects(file, chainFile(2, 1, "a", "b",
+                    1, 5, 1, 0));
+            //Same token twice
+            rejected &= rejects(file, chainFile(2, 1, "a", "a",
+                    1, 1, 2, 0));
+            //Fewer edges than announced
+            rejected &= rejects(file, chainFile(2, 2, "a", "b",
+                    1, 1, 2, 0));
+            
+            System.out.println("Valid file loaded: " + valid
+                    + ", invalid files rejected: " + rejected);
+        } finally {
+            Files.delete(file);
+        }
+    }
+    
+    /**
+     * Returns the bytes of a chain file with the given content after the
+     * magic number and version. Integers are written as variable-length
+     * integers, strings as tokens.
+     * 
+     * @param content integers and strings
+     * @return bytes of the file
+     * @throws IOException never
+     */
+    private static byte[] chainFile(Object... content) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x4D524B56);
+        writeVarint(out, 1);
+        for(Object o : content) {
+            if(o instanceof String) {
+                final byte[] token =
+                        ((String)o).getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, token.length + 1);
+                out.write(token);
+            } else {
+                writeVarint(out, (Integer)o);
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Writes an unsigned variable-length integer.
+     * 
+     * @param out stream to write into
+     * @param value value
+     * @throws IOException never
+     */
+    private static void writeVarint(DataOutputStream out, int value)
+            throws IOException {
+        while((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+    
+    /**
+     * Returns if the given bytes are rejected as a corrupt chain file, both
+     * from a file and from a stream.
+     * 
+     * @param file file to write the bytes into
+     * @param bytes bytes of the file
+     * @return if both reads threw an IOException
+     * @throws IOException if writing the file fails
+     */
+    private static boolean rejects(Path file, byte[] bytes)
+            throws IOException {
+        Files.write(file, bytes);
+        boolean rejected = true;
+        try {
+            ChainFile.read(file);
+            rejected = false;
+        } catch(IOException ex) {
+            rejected &= ex.getMessage().startsWith("Corrupt chain file")
+                    || ex.getMessage().equals("Not a chain file");
+        }
+        try {
+            read(bytes);
+            rejected = false;
+        } catch(IOException ex) {
+            rejected &= ex.getMessage().startsWith("Corrupt chain file")
+                    || ex.getMessage().equals("Not a chain file");
+        }
+        return rejected;
+    }
+    
+    /**
+     * Reads a chain of strings from the given bytes through a stream, whose
+     * size the reader doesn't know.
+     * 
+     * @param bytes bytes of the file
+     * @return read chain
+     * @throws IOException if the bytes are no valid chain file
+     */
+    private static FrozenChain<String> read(byte[] bytes) throws IOException {
+        return ChainFile.read(
+                Channels.newChannel(new ByteArrayInputStream(bytes)),
+                token -> new String(token, StandardCharsets.UTF_8));
+    }
+}
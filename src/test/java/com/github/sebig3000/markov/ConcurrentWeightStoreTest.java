@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+/**
+ * ConcurrentWeightStore test.
+ * Lets a growing number of threads train one shared concurrent chain while
+ * another thread keeps sampling from it. Afterwards the weights of all nodes
+ * have to add up to the number of trained transitions and every node's total
+ * has to match the sum of its weights.
+ * Also outputs the training throughput, which should grow with the threads.
+ * Then lets threads decrement one weight at once until it refuses, which
+ * has to stop exactly at 0.
+ * 
+ * @author Sebastian Gössl
+ */
+public class ConcurrentWeightStoreTest {
+    
+    public static void main(String[] args) throws InterruptedException {
+        
+        final int tokensPerThread = 1000000;
+        //At least a few threads, so that there is contention on every machine
+        final int maxThreads =
+                Math.max(4, Runtime.getRuntime().availableProcessors());
+        
+        for(int threads=1; threads<=maxThreads; threads*=2) {
+            final MarkovChain<Integer> chain =
+                    new MarkovChain<>(WeightMap.Storage.CONCURRENT);
+            final MarkovNode<Integer> start = chain.getOrCreateNode(-1);
+            //One transition, so that the sampler has something to choose
+            start.apply(chain, 0);
+            
+            
+            //Sample while training, must never fail
+            final AtomicBoolean training = new AtomicBoolean(true);
+            final AtomicLong samples = new AtomicLong();
+            final Thread sampler = new Thread(() -> {
+                while(training.get()) {
+                    final MarkovNode<Integer> node = start.get();
+                    if(node.hasNext()) {
+                        node.get();
+                    }
+                    samples.incrementAndGet();
+                }
+            });
+            sampler.start();
+            
+            
+            //Train
+            final List<Thread> trainers = new ArrayList<>();
+            for(int t=0; t<threads; t++) {
+                final long seed = t;
+                trainers.add(new Thread(() -> {
+                    final Random rand = new Random(seed);
+                    MarkovNode<Integer> current = start;
+                    for(int i=0; i<tokensPerThread; i++) {
+                        //Skewed vocabulary, so that threads share hot nodes
+                        final int token =
+                                (int)Math.abs(rand.nextGaussian() * 1000);
+                        current = current.apply(chain, token);
+                    }
+                }));
+            }
+            final long begin = System.nanoTime();
+            for(Thread trainer : trainers) {
+                trainer.start();
+            }
+            for(Thread trainer : trainers) {
+                trainer.join();
+            }
+            final long end = System.nanoTime();
+            training.set(false);
+            sampler.join();
+            
+            
+            //Check weights
+            long total = 0;
+            boolean consistent = true;
+            for(MarkovNode<Integer> node : chain) {
+                long sum = 0;
+                for(Map.Entry<MarkovNode<Integer>, Integer> entry
+                        : node.entrySet()) {
+                    sum += entry.getValue();
+                }
+                consistent &= sum == node.getTotalWeights();
+                total += node.getTotalWeights();
+            }
+            
+            System.out.printf("%2d threads: %12.0f tokens/s, %d samples, "
+                    + "total weights %s, nodes consistent: %b%n",
+                    threads,
+                    (double)threads*tokensPerThread / ((end-begin) / 1e9),
+                    samples.get(),
+                    total == (long)threads*tokensPerThread + 1 ?
+                            "correct" : "WRONG (" + total + ")",
+                    consistent);
+        }
+        
+        
+        //Concurrent decrements must not pass 0
+        final int weight = 1000000;
+        final WeightMap<String> map =
+                new WeightMap<>(WeightMap.Storage.CONCURRENT);
+        map.increment("a", weight);
+        final AtomicLong decrements = new AtomicLong();
+        final List<Thread> decrementers = new ArrayList<>();
+        for(int t=0; t<maxThreads; t++) {
+            decrementers.add(new Thread(() -> {
+                try {
+                    while(true) {
+                        map.increment("a", -1);
+                        decrements.incrementAndGet();
+                    }
+                } catch(IllegalArgumentException ex) {
+                    //Weight exhausted
+                }
+            }));
+        }
+        for(Thread decrementer : decrementers) {
+            decrementer.start();
+        }
+        for(Thread decrementer : decrementers) {
+            decrementer.join();
+        }
+        System.out.printf("Decrements: %d of %d, weight: %d, total: %d%n",
+                decrements.get(), weight, map.getWeight("a"),
+                map.getTotalWeightsLong());
+    }
+}
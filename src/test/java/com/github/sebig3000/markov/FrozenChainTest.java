@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+
+
+/**
+ * FrozenChain test.
+ * Trains a chain on a synthetic corpus, freezes it and compares the heap
+ * used by both representations. Then checks that every edge kept its weight,
+ * generates a sequence from the frozen chain and checks that equally seeded
+ * random sources generate equal sequences on different threads.
+ * 
+ * @author Sebastian Gössl
+ */
+public class FrozenChainTest {
+    
+    public static void main(String[] args) {
+        
+        //Train on a corpus with a skewed vocabulary, like natural text
+        final Random rand = new Random(42);
+        final long before = Heap.used();
+        final MarkovChain<String> chain = new MarkovChain<>();
+        MarkovNode<String> current = chain.getOrCreateNode("$");
+        for(int i=0; i<1000000; i++) {
+            final int token = (int)Math.abs(rand.nextGaussian() * 2000);
+            current = current.apply(chain, "w" + token);
+        }
+        final long trained = Heap.used() - before;
+        
+        final FrozenChain<String> frozen = chain.freeze();
+        final long frozenSize = Heap.used() - before - trained;
+        System.out.printf("Nodes: %d, edges: %d%n",
+                frozen.size(), frozen.getEdgeCount());
+        System.out.printf("MarkovChain: %d bytes, FrozenChain: %d bytes%n",
+                trained, frozenSize);
+        
+        
+        //Every edge has to keep its weight
+        boolean equal = true;
+        for(MarkovNode<String> node : chain) {
+            final int from = frozen.getId(node.getData());
+            equal &= node.getTotalWeights() == frozen.getTotalWeights(from);
+            for(Map.Entry<MarkovNode<String>, Integer> entry
+                    : node.entrySet()) {
+                final int to = frozen.getId(entry.getKey().getData());
+                equal &= entry.getValue() == frozen.getWeight(from, to);
+            }
+        }
+        System.out.println("Same weights: " + equal);
+        
+        
+        //Generate a sequence of 20 nodes
+        final Iterator<String> iterator = frozen.iterator("$", new Random(1));
+        for(int i=0; i<20 && iterator.hasNext(); i++) {
+            System.out.print(iterator.next() + ' ');
+        }
+        System.out.println();
+        
+        
+        //Equally seeded random sources have to generate equal sequences,
+        //no matter on which thread
+        final StringBuilder[] sequences = new StringBuilder[2];
+        final Thread[] threads = new Thread[sequences.length];
+        for(int t=0; t<threads.length; t++) {
+            final StringBuilder sequence = sequences[t] = new StringBuilder();
+            threads[t] = new Thread(() -> {
+                final SplittableRandom random = new SplittableRandom(7);
+                final Iterator<String> it =
+                        frozen.iterator("$", random::nextInt);
+                for(int i=0; i<1000 && it.hasNext(); i++) {
+                    sequence.append(it.next()).append(' ');
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            try {
+                thread.join();
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        System.out.println("Reproducible: "
+                + sequences[0].toString().equals(sequences[1].toString()));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Random;
+
+
+
+/**
+ * Long weights test.
+ * Lets the weights of a map pass the range of int and checks that the keys
+ * are still selected proportionally to their weights. Then checks that int
+ * weights refuse to overflow and that a weight limit keeps the weights of an
+ * accumulator bounded without changing their proportions much.
+ * 
+ * @author Sebastian Gössl
+ */
+public class LongWeightsTest {
+    
+    public static void main(String[] args) {
+        
+        //Weights and total beyond the range of int
+        for(WeightMap.Storage storage : new WeightMap.Storage[]{
+                WeightMap.Storage.LONG_TABLE, WeightMap.Storage.CONCURRENT}) {
+            final WeightMap<String> map =
+                    new WeightMap<>(storage, new Random(42));
+            map.increment("a", 3L << 31);
+            map.increment("b", 1L << 31);
+            
+            int a = 0;
+            final int n = 1000000;
+            for(int i=0; i<n; i++) {
+                if("a".equals(map.get())) {
+                    a++;
+                }
+            }
+            boolean thrown = false;
+            try {
+                map.getTotalWeights();
+            } catch(ArithmeticException ex) {
+                thrown = true;
+            }
+            System.out.printf("%-10s total: %d, int total throws: %b, "
+                    + "weight of a: %d, a selected: %.4f (expected 0.75)%n",
+                    storage, map.getTotalWeightsLong(), thrown,
+                    map.getWeight("a"), (double)a / n);
+        }
+        
+        
+        //Int weights throw instead of overflowing
+        for(WeightMap.Storage storage : new WeightMap.Storage[]{
+                WeightMap.Storage.HASH_MAP, WeightMap.Storage.TABLE}) {
+            final WeightMap<String> map = new WeightMap<>(storage);
+            map.increment("a", Integer.MAX_VALUE);
+            boolean thrown = false;
+            try {
+                map.accept("a");
+            } catch(ArithmeticException ex) {
+                thrown = true;
+            }
+            System.out.printf("%-10s overflow detected: %b, "
+                    + "weight unchanged: %b%n", storage, thrown,
+                    map.getWeight("a") == Integer.MAX_VALUE
+                    && map.getTotalWeights() == Integer.MAX_VALUE);
+        }
+        
+        
+        //Weight limit
+        final Random rand = new Random(42);
+        final WeightMap<Integer> limited =
+                new WeightMap<>(WeightMap.Storage.TABLE);
+        limited.setWeightLimit(1 << 20);
+        final long[] counts = new long[10];
+        for(int i=0; i<100000000; i++) {
+            final int key = Math.min(9, (int)(-Math.log(rand.nextDouble())));
+            counts[key]++;
+            limited.accept(key);
+        }
+        long sum = 0;
+        double error = 0;
+        for(int key=0; key<counts.length; key++) {
+            sum += limited.getWeight(key);
+            error = Math.max(error, Math.abs(
+                    (double)limited.getWeight(key)/limited.getTotalWeights()
+                    - counts[key]/1e8));
+        }
+        System.out.printf("Limited total: %d (limit %d), consistent: %b, "
+                + "max probability error: %.4f%n",
+                limited.getTotalWeights(), limited.getWeightLimit(),
+                sum == limited.getTotalWeights(), error);
+    }
+}
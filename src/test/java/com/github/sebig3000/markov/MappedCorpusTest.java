@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+
+/**
+ * MappedCorpus test.
+ * Writes synthetic paragraphs into a temporary file and trains on it once
+ * memory-mapped in four chunks on several threads and once with a
+ * StreamingTrainer. Both chains must have the same weights, with LF and
+ * CR LF line endings, without any empty lines, where every chunk boundary
+ * lies within a paragraph, and with words separated by non-ASCII spaces,
+ * some of which (no-break spaces) don't separate words. The throughputs are
+ * measured after a warm-up of both, with a worker per core.
+ * 
+ * @author Sebastian Gössl
+ */
+public class MappedCorpusTest {
+    
+    public static void main(String[] args) throws IOException {
+        
+        compare("LF", "\n", true, " ");
+        compare("CR LF", "\r\n", true, " ");
+        compare("No empty lines", "\n", false, " ");
+        compare("Unicode spaces", "\n", true,
+                " \u2003\u3000\u205F\u001F\u00A0\u202F");
+    }
+    
+    
+    
+    /**
+     * Writes about 16 MB of synthetic paragraphs into a temporary file,
+     * trains on it both ways and prints if the weights are the same and the
+     * throughputs.
+     * 
+     * @param name name of the format
+     * @param lineSeparator line separator
+     * @param emptyLines if paragraphs are separated by empty lines
+     * @param spaces characters to randomly separate words with
+     * @throws IOException if writing or reading fails
+     */
+    private static void compare(String name, String lineSeparator,
+            boolean emptyLines, String spaces) throws IOException {
+        final Path file = Files.createTempFile("corpus", ".txt");
+        try {
+            final Random rand = new Random(42);
+            try(BufferedWriter writer =
+                    Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for(int p=0; p<100000; p++) {
+                    for(int line=rand.nextInt(5)+1; line>0; line--) {
+                        for(int w=rand.nextInt(10)+1; w>0; w--) {
+                            writer.write("wört"
+                                    + (int)Math.abs(rand.nextGaussian()*1000)
+                                    + spaces.charAt(
+                                            rand.nextInt(spaces.length())));
+                        }
+                        writer.write(lineSeparator);
+                    }
+                    if(emptyLines) {
+                        writer.write(lineSeparator);
+                    }
+                }
+            }
+            
+            
+            //Four chunks, whose boundaries have to be handled
+            final MappedCorpus corpus = new MappedCorpus(file);
+            final ForkJoinPool chunked = new ForkJoinPool(4);
+            final MarkovChain<String> mapped =
+                    corpus.train("$", "\n", chunked);
+            final long mappedTokens = corpus.getTokenCount();
+            chunked.shutdown();
+            
+            final ForkJoinPool pool = new ForkJoinPool(
+                    Runtime.getRuntime().availableProcessors());
+            MarkovChain<String> streamed = null;
+            StreamingTrainer trainer = null;
+            double mappedRate = 0;
+            for(int i=0; i<3; i++) {
+                final long begin = System.nanoTime();
+                corpus.train("$", "\n", pool);
+                final long end = System.nanoTime();
+                mappedRate = corpus.getTokenCount() / ((end-begin) / 1e9);
+                
+                streamed = new MarkovChain<>();
+                trainer = new StreamingTrainer(streamed, "$", "\n");
+                trainer.train(file);
+            }
+            pool.shutdown();
+            
+            
+            boolean equal = mappedTokens == trainer.getTokenCount()
+                    && mapped.size() == streamed.size();
+            for(MarkovNode<String> node : streamed) {
+                final MarkovNode<String> other = mapped.getNode(node.getData());
+                equal &= other != null
+                        && new HashMap<>(node).equals(new HashMap<>(other));
+            }
+            System.out.printf("%-14s mapped: %9.0f words/s, "
+                    + "streaming: %9.0f words/s, same weights: %b%n",
+                    name, mappedRate, trainer.getTokensPerSecond(), equal);
+            
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
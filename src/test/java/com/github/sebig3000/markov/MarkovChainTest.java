@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+
+
+/**
+ * MarkovChain test.
+ * Trains chains on a synthetic corpus with a growing vocabulary, once with a
+ * plain {@link HashSet} as node set (linear child search) and once with a
+ * {@link MarkovChain} (indexed child search), and outputs the training
+ * throughput in tokens per second.
+ * The indexed throughput should stay about the same for all vocabulary
+ * sizes, while the linear one drops with the vocabulary size.
+ * 
+ * @author Sebastian Gössl
+ */
+public class MarkovChainTest {
+    
+    public static void main(String[] args) {
+        
+        final int tokens = 200000;
+        
+        for(int vocabulary=1000; vocabulary<=1000000; vocabulary*=10) {
+            //Same seed for both runs so that they train the same corpus
+            final int[] corpus = corpus(tokens, vocabulary, 42);
+            
+            //The linear search gets too slow for large vocabularies
+            if(vocabulary <= 10000) {
+                final double linear = train(new HashSet<>(), corpus);
+                System.out.printf("Vocabulary %8d, HashSet:     %12.0f "
+                        + "tokens/s%n", vocabulary, linear);
+            }
+            
+            final double indexed = train(new MarkovChain<>(), corpus);
+            System.out.printf("Vocabulary %8d, MarkovChain: %12.0f "
+                    + "tokens/s%n", vocabulary, indexed);
+        }
+    }
+    
+    /**
+     * Generates a random corpus of the given length, whose tokens are drawn
+     * uniformly from a vocabulary of the given size.
+     * 
+     * @param length number of tokens
+     * @param vocabulary number of distinct tokens
+     * @param seed seed for the random number generator
+     * @return random corpus
+     */
+    private static int[] corpus(int length, int vocabulary, long seed) {
+        final Random rand = new Random(seed);
+        final int[] corpus = new int[length];
+        for(int i=0; i<length; i++) {
+            corpus[i] = rand.nextInt(vocabulary);
+        }
+        return corpus;
+    }
+    
+    /**
+     * Trains the given node set on the given corpus and returns the
+     * throughput.
+     * 
+     * @param nodes node set to train
+     * @param corpus tokens to train on
+     * @return trained tokens per second
+     */
+    private static double train(Set<MarkovNode<Integer>> nodes,
+            int[] corpus) {
+        final MarkovNode<Integer> start = new MarkovNode<>(-1);
+        nodes.add(start);
+        
+        final long begin = System.nanoTime();
+        MarkovNode<Integer> current = start;
+        for(int token : corpus) {
+            current = current.apply(nodes, token);
+        }
+        final long end = System.nanoTime();
+        
+        return corpus.length / ((end-begin) / 1e9);
+    }
+}
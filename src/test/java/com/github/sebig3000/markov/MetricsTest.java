@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+
+/**
+ * Metrics test.
+ * Trains chains with every storage while counting the events, generates
+ * from them and prints the metrics and statistics. Compares the estimated
+ * heap of the chains, including the sampling indices built while
+ * generating, with the measured one and the generation throughput
+ * without and with a listener.
+ * 
+ * @author Sebastian Gössl
+ */
+public class MetricsTest {
+    
+    public static void main(String[] args) {
+        
+        //Zipf-like corpus: few frequent and many rare tokens
+        final Random rand = new Random(42);
+        final int[] corpus = new int[1000000];
+        for(int i=0; i<corpus.length; i++) {
+            corpus[i] = (int)Math.pow(10000, rand.nextDouble()) - 1;
+        }
+        
+        for(WeightMap.Storage storage : WeightMap.Storage.values()) {
+            final ChainMetrics metrics = new ChainMetrics();
+            final long before = Heap.used();
+            final MarkovChain<Integer> chain = new MarkovChain<>(storage);
+            chain.setMetricsListener(metrics);
+            train(chain, corpus);
+            walk(chain, 100, 1000);
+            final long measured = Heap.used() - before;
+            
+            final ChainStatistics statistics = chain.getStatistics();
+            System.out.println(storage + ":");
+            System.out.println("  " + metrics);
+            System.out.println("  scanned: "
+                    + Arrays.toString(metrics.getScanHistogram()));
+            System.out.println("  " + statistics);
+            System.out.printf("  counted correctly: %b, estimated heap: "
+                    + "%d MiB, measured: %d MiB%n",
+                    metrics.getTrained() == corpus.length
+                    && metrics.getNodesCreated() == chain.size()
+                    && metrics.getSamples() == 100 * 1000
+                    && metrics.getSequences() == 100,
+                    statistics.getEstimatedBytes() >> 20, measured >> 20);
+        }
+        
+        
+        //Overhead
+        final MarkovChain<Integer> chain =
+                new MarkovChain<>(WeightMap.Storage.TABLE);
+        train(chain, corpus);
+        for(int run=0; run<6; run++) {
+            final boolean enabled = run % 2 == 1;
+            chain.setMetricsListener(enabled ? new ChainMetrics() : null);
+            
+            final long begin = System.nanoTime();
+            walk(chain, 1000, 10000);
+            final long end = System.nanoTime();
+            if(run >= 4) {
+                System.out.printf("Listener %-8s %12.0f steps/s%n",
+                        enabled ? "enabled:" : "disabled:",
+                        1000 * 10000 / ((end-begin) / 1e9));
+            }
+        }
+    }
+    
+    /**
+     * Trains the given chain on the given corpus.
+     * 
+     * @param chain chain
+     * @param corpus corpus
+     */
+    private static void train(MarkovChain<Integer> chain, int[] corpus) {
+        MarkovNode<Integer> current = chain.getOrCreateNode(-1);
+        for(int token : corpus) {
+            current = current.apply(chain, token);
+        }
+    }
+    
+    /**
+     * Generates the given number of sequences of the given length from the
+     * given chain with one reused iterator.
+     * 
+     * @param chain chain
+     * @param sequences number of sequences
+     * @param length number of steps per sequence
+     * @return sum of the generated data, so that the walk isn't eliminated
+     */
+    private static long walk(MarkovChain<Integer> chain, int sequences,
+            int length) {
+        final MarkovNode<Integer> start = chain.getNode(-1);
+        MarkovNode.MarkovIterator<Integer> iterator = null;
+        long sum = 0;
+        for(int i=0; i<sequences; i++) {
+            if(iterator == null) {
+                iterator = new MarkovNode.MarkovIterator<>(start);
+            } else {
+                iterator.reset(start, false);
+            }
+            for(int j=0; j<length && iterator.hasNext(); j++) {
+                sum += iterator.next();
+            }
+        }
+        return sum;
+    }
+}
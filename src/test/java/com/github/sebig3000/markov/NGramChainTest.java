@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+
+
+/**
+ * NGramChain test.
+ * Trains first and second order chains on sentences where the word after
+ * "the" depends on the word before it. Only the second order chain can
+ * learn that, the first order one mixes the sentences up.
+ * Then shows backoff on a context that has never been seen in full.
+ * 
+ * @author Sebastian Gössl
+ */
+public class NGramChainTest {
+    
+    public static void main(String[] args) {
+        
+        final List<List<String>> sentences = Arrays.asList(
+                Arrays.asList("I", "pet", "the", "cat", "."),
+                Arrays.asList("I", "drive", "the", "car", "."),
+                Arrays.asList("you", "pet", "the", "cat", "."),
+                Arrays.asList("you", "drive", "the", "car", "."));
+        
+        for(int order=1; order<=2; order++) {
+            final NGramChain<String> chain = new NGramChain<>(order, "$");
+            for(List<String> sentence : sentences) {
+                chain.train(sentence);
+            }
+            
+            //Count the generated sentences that are not in the corpus
+            int wrong = 0;
+            for(int i=0; i<1000; i++) {
+                final StringBuilder sentence = new StringBuilder();
+                final Iterator<String> iterator = chain.iterator();
+                while(iterator.hasNext()) {
+                    sentence.append(iterator.next()).append(' ');
+                }
+                if(sentence.indexOf("pet the car") >= 0
+                        || sentence.indexOf("drive the cat") >= 0) {
+                    wrong++;
+                }
+            }
+            System.out.println("Order " + order + ": " + wrong
+                    + " of 1000 generated sentences mixed up");
+        }
+        
+        
+        //"drive the" has been seen, "steer the" hasn't, but "the" has
+        final NGramChain<String> chain = new NGramChain<>(2, "$");
+        for(List<String> sentence : sentences) {
+            chain.train(sentence);
+        }
+        System.out.println("After \"drive the\": "
+                + chain.getSuccessors(Arrays.asList("drive", "the")));
+        System.out.println("After \"steer the\": "
+                + chain.getSuccessors(Arrays.asList("steer", "the"))
+                + ", backs off to \"the\": "
+                + chain.getSuccessors(Arrays.asList("the")));
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+
+
+/**
+ * Off-heap test.
+ * Trains the same corpus into a mutable chain and into off-heap chains in
+ * direct buffers with small segments and in mapped files, and compares
+ * their weights, frozen copies and sampling frequencies. Then trains a
+ * large corpus into a mutable and an off-heap chain and compares the heap
+ * they need and the time spent on garbage collection.
+ * 
+ * @author Sebastian Gössl
+ */
+public class OffHeapTest {
+    
+    public static void main(String[] args) throws IOException {
+        
+        //Skewed random corpus
+        final Random rand = new Random(42);
+        final Integer[] corpus = new Integer[1000000];
+        for(int i=0; i<corpus.length; i++) {
+            corpus[i] = (int)Math.pow(20000, rand.nextDouble()) - 1;
+        }
+        
+        final MarkovChain<Integer> reference = new MarkovChain<>();
+        MarkovNode<Integer> node = reference.getOrCreateNode(corpus[0]);
+        for(int i=1; i<corpus.length; i++) {
+            node = node.apply(reference, corpus[i]);
+        }
+        
+        final Path directory = Files.createTempDirectory("offheap");
+        try(OffHeapChain<Integer> direct = new OffHeapChain<>(
+                    new TokenDictionary<>(), 20);
+                OffHeapChain<Integer> mapped = new OffHeapChain<>(
+                    directory, new TokenDictionary<>())) {
+            direct.train(Arrays.asList(corpus));
+            int id = mapped.getOrCreateId(corpus[0]);
+            for(int i=1; i<corpus.length; i++) {
+                id = mapped.apply(id, corpus[i]);
+            }
+            
+            System.out.println("Direct: " + same(reference, direct)
+                    + ", mapped: " + same(reference, mapped)
+                    + ", " + direct.getEdgeCount() + " edges in "
+                    + direct.getOffHeapBytes() / 1024 + " KiB");
+            
+            final FrozenChain<Integer> frozen = direct.freeze();
+            boolean sameFrozen = frozen.getEdgeCount()
+                    == direct.getEdgeCount();
+            for(MarkovNode<Integer> from : reference) {
+                final int i = frozen.getId(from.getData());
+                for(MarkovNode<Integer> to : from.keySet()) {
+                    sameFrozen &= frozen.getWeight(i,
+                            frozen.getId(to.getData())) == from.getWeight(to);
+                }
+            }
+            System.out.println("Frozen: " + sameFrozen);
+            
+            //Frequencies of the successors of the most frequent token,
+            //compared with the ones of the frozen chain as a baseline
+            final int hot = direct.getId(0);
+            final int samples = 1000000;
+            final int[] counts = new int[direct.size()];
+            final int[] frozenCounts = new int[direct.size()];
+            final SplittableRandom random = new SplittableRandom(42);
+            for(int i=0; i<samples; i++) {
+                counts[direct.next(hot, random::nextInt)]++;
+                frozenCounts[frozen.next(hot, random::nextInt)]++;
+            }
+            double distance = 0;
+            double frozenDistance = 0;
+            for(int i=0; i<counts.length; i++) {
+                final double p = (double)direct.getWeight(hot, i)
+                        / direct.getTotalWeights(hot);
+                distance += Math.abs(p - (double)counts[i] / samples);
+                frozenDistance += Math.abs(p
+                        - (double)frozenCounts[i] / samples);
+            }
+            System.out.printf("Sampling %d successors: total variation "
+                    + "distance %.4f, frozen: %.4f%n",
+                    direct.getSuccessorCount(hot), distance / 2,
+                    frozenDistance / 2);
+        }
+        System.out.println("Mapped files deleted: "
+                + !Files.list(directory).findAny().isPresent());
+        Files.delete(directory);
+        
+        
+        //Large corpus
+        final int tokens = 10000000;
+        final int vocabulary = 2000000;
+        System.out.printf("%d tokens, vocabulary %d:%n", tokens, vocabulary);
+        
+        long before = Heap.used();
+        long collections = collectionMillis();
+        long time = System.nanoTime();
+        final MarkovChain<Integer> mutable = new MarkovChain<>(
+                WeightMap.Storage.TABLE);
+        rand.setSeed(42);
+        node = mutable.getOrCreateNode(0);
+        for(int i=0; i<tokens; i++) {
+            node = node.apply(mutable,
+                    (int)Math.pow(vocabulary, rand.nextDouble()) - 1);
+        }
+        time = System.nanoTime() - time;
+        collections = collectionMillis() - collections;
+        System.out.printf("  mutable:  %.1fs, GC %.1fs, heap %d MiB%n",
+                time / 1e9, collections / 1e3,
+                (Heap.used() - before) >> 20);
+        final long transitions = mutable.getTransitionCount();
+        mutable.clear();
+        node = null;
+        
+        before = Heap.used();
+        collections = collectionMillis();
+        time = System.nanoTime();
+        try(OffHeapChain<Integer> chain = new OffHeapChain<>()) {
+            rand.setSeed(42);
+            int id = chain.getOrCreateId(0);
+            for(int i=0; i<tokens; i++) {
+                id = chain.apply(id,
+                        (int)Math.pow(vocabulary, rand.nextDouble()) - 1);
+            }
+            time = System.nanoTime() - time;
+            collections = collectionMillis() - collections;
+            System.out.printf("  off-heap: %.1fs, GC %.1fs, heap %d MiB, "
+                    + "off-heap %d MiB, same edges: %b%n",
+                    time / 1e9, collections / 1e3,
+                    (Heap.used() - before) >> 20,
+                    chain.getOffHeapBytes() >> 20,
+                    chain.getEdgeCount() == transitions);
+        }
+    }
+    
+    /**
+     * Returns if the given chains have the same weights.
+     * 
+     * @param reference mutable chain
+     * @param chain off-heap chain
+     * @return if the weights are the same
+     */
+    private static boolean same(MarkovChain<Integer> reference,
+            OffHeapChain<Integer> chain) {
+        boolean same = reference.getTransitionCount() == chain.getEdgeCount();
+        for(MarkovNode<Integer> from : reference) {
+            final int i = chain.getId(from.getData());
+            same &= from.getTotalWeights() == chain.getTotalWeights(i)
+                    && from.size() == chain.getSuccessorCount(i);
+            for(MarkovNode<Integer> to : from.keySet()) {
+                same &= chain.getWeight(i, chain.getId(to.getData()))
+                        == from.getWeight(to);
+            }
+        }
+        return same;
+    }
+    
+    /**
+     * Returns the time spent on garbage collection so far.
+     * 
+     * @return milliseconds spent on garbage collection
+     */
+    private static long collectionMillis() {
+        long millis = 0;
+        for(GarbageCollectorMXBean bean
+                : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(bean.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+}
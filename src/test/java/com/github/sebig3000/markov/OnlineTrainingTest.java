@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+
+
+/**
+ * Online training test.
+ * Trains maps on a stream whose distribution changes over time and compares
+ * the probabilities of the keys with exactly decayed weights (by count and
+ * by a clock) and with the counts of the last keys (window). Then compares
+ * the training throughput of a chain without and with forgetting.
+ * 
+ * @author Sebastian Gössl
+ */
+public class OnlineTrainingTest {
+    
+    public static void main(String[] args) {
+        
+        //Exponential decay by count and by clock
+        final long[] time = {0};
+        for(WeightMap.Storage storage : new WeightMap.Storage[]{
+                WeightMap.Storage.TABLE, WeightMap.Storage.LONG_TABLE}) {
+            for(boolean clocked : new boolean[]{false, true}) {
+                final WeightMap<Integer> map = new WeightMap<>(storage);
+                final double halfLife = clocked ? 5000 : 1000;
+                map.setHalfLife(halfLife, clocked ? () -> time[0] : null);
+                
+                final Map<Integer, Double> expected = new HashMap<>();
+                final Random rand = new Random(42);
+                for(int i=0; i<1000000; i++) {
+                    //The stream drifts from low to high keys
+                    final int key = (int)Math.abs(rand.nextGaussian() * 10)
+                            + i / 10000;
+                    final long step = clocked ? rand.nextInt(10) : 1;
+                    time[0] += step;
+                    final double decay = Math.pow(0.5, step / halfLife);
+                    expected.replaceAll((k, w) -> w * decay);
+                    expected.merge(key, 1.0, Double::sum);
+                    map.accept(key);
+                }
+                
+                System.out.printf("%-10s %-5s max probability error: %.6f, "
+                        + "keys: %d%n", storage, clocked ? "clock" : "count",
+                        maxError(map, expected), map.size());
+            }
+        }
+        
+        
+        //Window of the last keys
+        final WeightMap<Integer> windowed =
+                new WeightMap<>(WeightMap.Storage.TABLE);
+        windowed.setWindow(10000);
+        final Queue<Integer> last = new ArrayDeque<>();
+        final Random rand = new Random(42);
+        for(int i=0; i<1000000; i++) {
+            final int key = (int)Math.abs(rand.nextGaussian() * 10)
+                    + i / 10000;
+            windowed.accept(key);
+            last.add(key);
+            if(last.size() > 10000) {
+                last.remove();
+            }
+        }
+        final Map<Integer, Integer> counts = new HashMap<>();
+        for(int key : last) {
+            counts.merge(key, 1, Integer::sum);
+        }
+        System.out.println("Window equals the counts of the last keys: "
+                + counts.equals(windowed));
+        
+        
+        //Throughput of a chain
+        final int[] corpus = new int[2000000];
+        for(int i=0; i<corpus.length; i++) {
+            corpus[i] = (int)Math.abs(rand.nextGaussian() * 1000);
+        }
+        for(int mode=0; mode<3; mode++) {
+            for(int run=0; run<3; run++) {
+                final MarkovChain<Integer> chain =
+                        new MarkovChain<>(WeightMap.Storage.LONG_TABLE);
+                if(mode == 1) {
+                    chain.setHalfLife(100, null);
+                } else if(mode == 2) {
+                    chain.setWindow(100);
+                }
+                
+                final long begin = System.nanoTime();
+                MarkovNode<Integer> current = chain.getOrCreateNode(-1);
+                for(int token : corpus) {
+                    current = current.apply(chain, token);
+                }
+                final long end = System.nanoTime();
+                if(run == 2) {
+                    System.out.printf("%-9s %12.0f transitions/s%n",
+                            new String[]{"Plain", "Half-life", "Window"}[mode],
+                            corpus.length / ((end-begin) / 1e9));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the largest difference between the probability of a key in
+     * the given map and in the given expected weights.
+     * 
+     * @param map map
+     * @param expected expected weights
+     * @return largest difference of the probabilities
+     */
+    private static double maxError(WeightMap<Integer> map,
+            Map<Integer, Double> expected) {
+        final double total = expected.values().stream()
+                .mapToDouble(Double::doubleValue).sum();
+        double error = 0;
+        for(Map.Entry<Integer, Double> entry : expected.entrySet()) {
+            error = Math.max(error, Math.abs(entry.getValue() / total
+                    - (double)map.getWeight(entry.getKey())
+                    / map.getTotalWeightsLong()));
+        }
+        return error;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Random;
+
+
+
+/**
+ * Pruning test.
+ * Trains chains on a corpus with a long tail of rare transitions and prunes
+ * them below a weight, to the top successors and to a budget of transitions.
+ * Prints the transitions, nodes and used heap before and after and checks
+ * that the sums of all weights stay consistent. Then trains with a limit of
+ * successors and prints the largest number of transitions while training.
+ * 
+ * @author Sebastian Gössl
+ */
+public class PruningTest {
+    
+    public static void main(String[] args) {
+        
+        //Zipf-like corpus: few frequent and many rare tokens
+        final Random rand = new Random(42);
+        final int[] corpus = new int[2000000];
+        for(int i=0; i<corpus.length; i++) {
+            corpus[i] = (int)Math.pow(100000, rand.nextDouble()) - 1;
+        }
+        
+        for(int mode=0; mode<3; mode++) {
+            MarkovChain<Integer> chain = train(corpus, 0);
+            final long transitions = chain.getTransitionCount();
+            final int nodes = chain.size();
+            final long heap = Heap.used();
+            
+            final long removed;
+            if(mode == 0) {
+                removed = chain.pruneBelow(2);
+            } else if(mode == 1) {
+                removed = chain.pruneToTop(4);
+            } else {
+                removed = chain.pruneToBudget(transitions / 10);
+            }
+            final long prunedHeap = Heap.used();
+            
+            System.out.printf("%-6s transitions: %8d -> %8d (removed %8d), "
+                    + "nodes: %6d -> %6d, heap: %5d MiB -> %5d MiB, "
+                    + "consistent: %b%n",
+                    new String[]{"Below", "Top", "Budget"}[mode],
+                    transitions, chain.getTransitionCount(), removed,
+                    nodes, chain.size(), heap >> 20, prunedHeap >> 20,
+                    consistent(chain)
+                    && transitions - removed == chain.getTransitionCount());
+            chain = null;
+        }
+        
+        
+        //Streaming limit while training
+        final MarkovChain<Integer> unlimited = train(corpus, 0);
+        final MarkovChain<Integer> limited = train(corpus, 16);
+        System.out.printf("Training with at most 16 successors: %d instead "
+                + "of %d transitions, consistent: %b%n",
+                limited.getTransitionCount(),
+                unlimited.getTransitionCount(), consistent(limited));
+    }
+    
+    /**
+     * Trains a chain on the given corpus.
+     * 
+     * @param corpus corpus
+     * @param maxSuccessors number of successors every node keeps while
+     * training, 0 for no limit
+     * @return trained chain
+     */
+    private static MarkovChain<Integer> train(int[] corpus,
+            int maxSuccessors) {
+        final MarkovChain<Integer> chain =
+                new MarkovChain<>(WeightMap.Storage.TABLE);
+        chain.setMaxSuccessors(maxSuccessors);
+        MarkovNode<Integer> current = chain.getOrCreateNode(-1);
+        for(int token : corpus) {
+            current = current.apply(chain, token);
+        }
+        return chain;
+    }
+    
+    /**
+     * Returns if the sum of all weights of every node equals the sum of its
+     * weights and every transition leads to a node of the chain.
+     * 
+     * @param chain chain
+     * @return if the chain is consistent
+     */
+    private static boolean consistent(MarkovChain<Integer> chain) {
+        for(MarkovNode<Integer> node : chain) {
+            final long[] sum = {0};
+            final boolean[] contained = {true};
+            node.forEachWeight((child, weight) -> {
+                sum[0] += weight;
+                contained[0] &= chain.getNode(child.getData()) == child;
+            });
+            if(sum[0] != node.getTotalWeights() || !contained[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
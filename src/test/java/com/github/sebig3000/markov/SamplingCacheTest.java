@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.Random;
+
+
+
+/**
+ * Sampling cache test.
+ * Checks that replacing keys without changing the sum of all weights
+ * outdates the sampling index, without and with caches.
+ * Then trains a chain on a corpus with few frequent and many rare tokens and
+ * generates from it without a cache and with caches of different budgets
+ * and eviction policies, while training it now and then. Checks that the
+ * same sequence is generated and prints the hits, misses, evictions, cached
+ * keys and throughput. A cache without budget shows the cost of scanning
+ * only, which small budgets should stay below.
+ * 
+ * @author Sebastian Gössl
+ */
+public class SamplingCacheTest {
+    
+    public static void main(String[] args) {
+        
+        System.out.printf("Replaced keys, no cache: %b%n",
+                replaceKeys(null));
+        for(SamplingCache.Eviction eviction : SamplingCache.Eviction.values()) {
+            System.out.printf("Replaced keys, %s: %b%n", eviction,
+                    replaceKeys(new SamplingCache(100, eviction)));
+        }
+        
+        //Zipf-like corpus: few frequent and many rare tokens
+        final Random rand = new Random(42);
+        final int[] corpus = new int[1000000];
+        for(int i=0; i<corpus.length; i++) {
+            corpus[i] = (int)Math.pow(10000, rand.nextDouble()) - 1;
+        }
+        
+        final long beginUncached = System.nanoTime();
+        final long expected = generate(corpus, null);
+        final long endUncached = System.nanoTime();
+        System.out.printf("No cache: %6.0f ms%n",
+                (endUncached-beginUncached) / 1e6);
+        for(SamplingCache.Eviction eviction : SamplingCache.Eviction.values()) {
+            for(long capacity : new long[]{0, 10000, 100000, 300000}) {
+                final SamplingCache cache =
+                        new SamplingCache(capacity, eviction);
+                final long begin = System.nanoTime();
+                final long hash = generate(corpus, cache);
+                final long end = System.nanoTime();
+                
+                final long hits = cache.getHits();
+                final long misses = cache.getMisses();
+                System.out.printf("%-3s %7d keys: hits %8d, misses %8d "
+                        + "(%5.1f%% hit rate), evictions %7d, cached %7d "
+                        + "keys of %5d nodes, %6.0f ms, same: %b%n",
+                        eviction, capacity, hits, misses,
+                        100.0 * hits / (hits + misses),
+                        cache.getEvictions(), cache.getSize(),
+                        cache.getCount(), (end-begin) / 1e6,
+                        hash == expected);
+            }
+        }
+    }
+    
+    /**
+     * Replaces keys of maps without changing the sum of all weights, once
+     * by removing and putting and once through a full window, and checks
+     * that only the new keys are selected afterwards.
+     * 
+     * @param cache sampling cache, null for none
+     * @return if only the new keys have been selected
+     */
+    private static boolean replaceKeys(SamplingCache cache) {
+        final WeightMap<String> replaced = new WeightMap<>();
+        replaced.setSamplingCache(cache);
+        replaced.put("x", 5);
+        replaced.get();
+        replaced.remove("x");
+        replaced.put("y", 5);
+        
+        final WeightMap<String> windowed = new WeightMap<>();
+        windowed.setSamplingCache(cache);
+        windowed.setWindow(4);
+        for(int i=0; i<4; i++) {
+            windowed.accept("a");
+        }
+        windowed.get();
+        for(int i=0; i<4; i++) {
+            windowed.accept("b");
+        }
+        
+        for(int i=0; i<1000; i++) {
+            if(!replaced.get().equals("y") || !windowed.get().equals("b")) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Trains a chain on the given corpus and generates from it, training it
+     * a little every 1000 steps.
+     * 
+     * @param corpus corpus
+     * @param cache sampling cache, null for none
+     * @return hash of the generated sequence
+     */
+    private static long generate(int[] corpus, SamplingCache cache) {
+        final MarkovChain<Integer> chain =
+                new MarkovChain<>(WeightMap.Storage.TABLE);
+        MarkovNode<Integer> current = chain.getOrCreateNode(-1);
+        for(int token : corpus) {
+            current = current.apply(chain, token);
+        }
+        chain.setSamplingCache(cache);
+        
+        final Random rand = new Random(1);
+        long hash = 0;
+        current = chain.getOrCreateNode(-1);
+        for(int i=0; i<200000; i++) {
+            if(current.isEmpty()) {
+                current = chain.getOrCreateNode(-1);
+            }
+            if(i % 1000 == 0) {
+                current.apply(chain, corpus[i]);
+            }
+            current = current.get(rand::nextInt);
+            hash = 31*hash + current.getData();
+        }
+        return hash;
+    }
+}
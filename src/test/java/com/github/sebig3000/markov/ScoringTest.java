@@ -0,0 +1,207 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+
+/**
+ * Scoring test.
+ * Compares the scores of a few sequences of a small chain, with and
+ * without smoothing, with the exact values. Then scores a million random
+ * walks over a chain with hundreds of thousands of nodes on one and on all
+ * cores and compares the throughput with looking up every transition in
+ * the nodes of a mutable chain.
+ * 
+ * @author Sebastian Gössl
+ */
+public class ScoringTest {
+    
+    public static void main(String[] args) {
+        
+        //Small chain: A -> A, A -> B, B -> A, B -> End (twice as often)
+        final MarkovChain<String> small = new MarkovChain<>();
+        final MarkovNode<String> a = small.getOrCreateNode("A");
+        final MarkovNode<String> b = small.getOrCreateNode("B");
+        final MarkovNode<String> end = small.getOrCreateNode("End");
+        a.increment(a, 1);
+        a.increment(b, 1);
+        b.increment(a, 1);
+        b.increment(end, 2);
+        final FrozenChain<String> frozen = small.freeze();
+        final ChainScorer<String> plain = new ChainScorer<>(frozen);
+        final ChainScorer<String> smoothed = new ChainScorer<>(frozen, 1);
+        
+        final List<String> seen = Arrays.asList("A", "A", "B", "End");
+        final List<String> unseen = Arrays.asList("A", "End", "A");
+        final List<String> unknown = Arrays.asList("A", "Z", "B");
+        System.out.println("Without smoothing: "
+                + near(plain.score(seen),
+                        Math.log(1.0/2 * 1.0/2 * 2.0/3))
+                + " " + (plain.score(unseen) == Double.NEGATIVE_INFINITY)
+                + " " + (plain.score(unknown) == Double.NEGATIVE_INFINITY));
+        //Every node has 3 more weight: A 2/5, 2/5, 1/5, B 2/6, 1/6, 3/6
+        System.out.println("With smoothing:    "
+                + near(smoothed.score(seen),
+                        Math.log(2.0/5 * 2.0/5 * 3.0/6))
+                + " " + near(smoothed.score(unseen),
+                        Math.log(1.0/5 * 1.0/3))
+                + " " + near(smoothed.score(unknown),
+                        Math.log(1.0/5 * 1.0/3)));
+        
+        
+        //Large chain with skewed targets
+        final int n = 200000;
+        final Random rand = new Random(42);
+        final Object[] tokens = new Object[n];
+        final int[] offsets = new int[n+1];
+        final int[] targets = new int[n*8];
+        final int[] cumulativeWeights = new int[n*8];
+        final int[] row = new int[8];
+        int e = 0;
+        for(int i=0; i<n; i++) {
+            tokens[i] = i;
+            offsets[i] = e;
+            for(int j=0; j<row.length; j++) {
+                row[j] = (int)Math.pow(n, rand.nextDouble()) - 1;
+            }
+            Arrays.sort(row);
+            int sum = 0;
+            for(int j=0; j<row.length; j++) {
+                if(j > 0 && row[j] == row[j-1]) {
+                    continue;
+                }
+                sum += 1 + rand.nextInt(10);
+                targets[e] = row[j];
+                cumulativeWeights[e] = sum;
+                e++;
+            }
+        }
+        offsets[n] = e;
+        final FrozenChain<Integer> large = new FrozenChain<>(tokens, offsets,
+                targets, cumulativeWeights);
+        final ChainScorer<Integer> scorer = new ChainScorer<>(large, 0.1);
+        
+        //Random walks of 20 nodes, every tenth with a random node in it
+        final int count = 1000000;
+        final int length = 20;
+        final SequenceBatch batch = new SequenceBatch(count, length);
+        large.generate(n/2, -1, batch, 42);
+        final int[] ids = new int[count * length];
+        final int[] sequences = new int[count + 1];
+        int size = 0;
+        for(int i=0; i<count; i++) {
+            sequences[i] = size;
+            for(int j=0; j<batch.getLength(i); j++) {
+                ids[size++] = batch.getId(i, j);
+            }
+            if(i % 10 == 0) {
+                ids[sequences[i] + rand.nextInt(size - sequences[i])] =
+                        rand.nextInt(n);
+            }
+        }
+        sequences[count] = size;
+        System.out.printf("Large chain: %d nodes, %d edges, %d sequences "
+                + "of %d transitions%n", large.size(), large.getEdgeCount(),
+                count, length - 1);
+        
+        final double[] sequential = new double[count];
+        final double[] parallel = new double[count];
+        final ForkJoinPool single = new ForkJoinPool(1);
+        long singleTime = Long.MAX_VALUE;
+        long parallelTime = Long.MAX_VALUE;
+        for(int run=0; run<5; run++) {
+            long time = System.nanoTime();
+            scorer.scoreBatch(ids, sequences, sequential, single);
+            singleTime = Math.min(singleTime, System.nanoTime() - time);
+            time = System.nanoTime();
+            scorer.scoreBatch(ids, sequences, parallel);
+            parallelTime = Math.min(parallelTime, System.nanoTime() - time);
+        }
+        single.shutdown();
+        System.out.printf("  1 thread:  %.1fM sequences/s%n",
+                count / (singleTime / 1e3));
+        System.out.printf("  %d threads: %.1fM sequences/s, same scores: "
+                + "%b%n", ForkJoinPool.commonPool().getParallelism(),
+                count / (parallelTime / 1e3),
+                Arrays.equals(sequential, parallel));
+        
+        //Generated sequences without the random nodes
+        final double[] generated = new double[count];
+        scorer.scoreBatch(batch, generated);
+        boolean same = true;
+        for(int i=1; i<count; i+=10) {
+            same &= generated[i] == sequential[i];
+        }
+        System.out.println("  sequence batch: " + same);
+        
+        //Looking up the nodes by data and every transition in a node
+        final MarkovChain<Integer> thawed = large.thaw();
+        final int baseline = count / 10;
+        final double vocabulary = large.size();
+        boolean equal = true;
+        long time = System.nanoTime();
+        for(int i=0; i<baseline; i++) {
+            final List<Integer> sequence = new ArrayList<>(length);
+            for(int j=sequences[i]; j<sequences[i+1]; j++) {
+                sequence.add(ids[j]);
+            }
+            double score = 0;
+            for(int j=1; j<sequence.size(); j++) {
+                final MarkovNode<Integer> from =
+                        thawed.getNode(sequence.get(j-1));
+                final MarkovNode<Integer> to =
+                        thawed.getNode(sequence.get(j));
+                final double weight = from == null || to == null ?
+                        0 : from.getWeight(to);
+                final double total = from == null ?
+                        0 : from.getTotalWeights();
+                score += Math.log((weight + 0.1) / (total + 0.1 * vocabulary));
+            }
+            equal &= Math.abs(score - sequential[i]) < 1e-9;
+        }
+        time = System.nanoTime() - time;
+        System.out.printf("  node lookups: %.1fM sequences/s, same scores: "
+                + "%b%n", baseline / (time / 1e3), equal);
+    }
+    
+    /**
+     * Returns if the given score is near the given one.
+     * 
+     * @param score score
+     * @param expected expected score
+     * @return if the score is near the expected one
+     */
+    private static boolean near(double score, double expected) {
+        return Math.abs(score - expected) < 1e-12;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+
+
+/**
+ * Search test.
+ * Enumerates all sequences of a small chain that satisfy some constraints
+ * and compares them with the most probable sequences the beam search finds,
+ * the probability the sampler computes and the frequencies of the sequences
+ * it draws. Then compares sampling under constraints with generating and
+ * discarding on a chain with hundreds of thousands of nodes.
+ * 
+ * @author Sebastian Gössl
+ */
+public class SearchTest {
+    
+    public static void main(String[] args) {
+        
+        //Small random chain with cycles and a node without successors
+        final int n = 7;
+        final Random rand = new Random(42);
+        final Object[] tokens = new Object[n];
+        final int[] offsets = new int[n+1];
+        final int[] targets = new int[n*n];
+        final int[] cumulativeWeights = new int[n*n];
+        int e = 0;
+        for(int i=0; i<n; i++) {
+            tokens[i] = "T" + i;
+            offsets[i] = e;
+            int sum = 0;
+            for(int j=0; j<n && i!=n-1; j++) {
+                if(rand.nextInt(3) > 0) {
+                    sum += 1 + rand.nextInt(5);
+                    targets[e] = j;
+                    cumulativeWeights[e] = sum;
+                    e++;
+                }
+            }
+        }
+        offsets[n] = e;
+        final FrozenChain<String> small = new FrozenChain<>(tokens, offsets,
+                targets, cumulativeWeights);
+        final ChainSearch<String> search = new ChainSearch<>(small);
+        
+        check(search, new ChainSearch.Constraints(5, 2, 6).ban(2));
+        check(search, new ChainSearch.Constraints(-1, 3, 5).ban(1));
+        check(search, new ChainSearch.Constraints(-1, 0, 3));
+        
+        
+        //Large chain with skewed targets
+        final int m = 200000;
+        final Object[] largeTokens = new Object[m];
+        final int[] largeOffsets = new int[m+1];
+        final int[] largeTargets = new int[m*8];
+        final int[] largeWeights = new int[m*8];
+        final int[] row = new int[8];
+        e = 0;
+        for(int i=0; i<m; i++) {
+            largeTokens[i] = i;
+            largeOffsets[i] = e;
+            for(int j=0; j<row.length; j++) {
+                row[j] = (int)Math.pow(m, rand.nextDouble()) - 1;
+            }
+            Arrays.sort(row);
+            int sum = 0;
+            for(int j=0; j<row.length; j++) {
+                if(j > 0 && row[j] == row[j-1]) {
+                    continue;
+                }
+                sum += 1 + rand.nextInt(10);
+                largeTargets[e] = row[j];
+                largeWeights[e] = sum;
+                e++;
+            }
+        }
+        largeOffsets[m] = e;
+        final FrozenChain<Integer> large = new FrozenChain<>(largeTokens,
+                largeOffsets, largeTargets, largeWeights);
+        final ChainSearch<Integer> largeSearch = new ChainSearch<>(large);
+        System.out.printf("Large chain: %d nodes, %d edges%n",
+                large.size(), large.getEdgeCount());
+        
+        //End at the hottest node after 16 to 20 nodes, avoiding the next
+        final int start = m / 2;
+        final ChainSearch.Constraints constraints =
+                new ChainSearch.Constraints(0, 16, 20);
+        for(int i=1; i<=10; i++) {
+            constraints.ban(i);
+        }
+        
+        long time = System.nanoTime();
+        final List<ChainSearch.ScoredSequence> best =
+                largeSearch.beamSearch(start, constraints, 256, 5);
+        time = System.nanoTime() - time;
+        System.out.printf("  beam search: %.1fms, best: %s%n",
+                time / 1e6, best.get(0));
+        
+        time = System.nanoTime();
+        final ChainSearch<Integer>.Sampler sampler =
+                largeSearch.sampler(start, constraints);
+        time = System.nanoTime() - time;
+        System.out.printf("  sampler: %.1fms to prepare, probability to "
+                + "satisfy the constraints: %.3e%n",
+                time / 1e6, sampler.getProbability());
+        
+        final int samples = 100000;
+        final int[] buffer = new int[constraints.getMaxLength()];
+        final SplittableRandom random = new SplittableRandom(42);
+        boolean satisfied = true;
+        time = System.nanoTime();
+        for(int i=0; i<samples; i++) {
+            final int length = sampler.sample(random::nextInt, buffer);
+            satisfied &= constraints.isSatisfied(buffer, length);
+        }
+        time = System.nanoTime() - time;
+        System.out.printf("  %d samples: %.1fms, all satisfied: %b%n",
+                samples, time / 1e6, satisfied);
+        
+        //Generate and discard until as many satisfy the constraints
+        int accepted = 0;
+        long generated = 0;
+        time = System.nanoTime();
+        final long budget = 10_000_000_000L;
+        while(accepted < samples && System.nanoTime() - time < budget) {
+            generated++;
+            int node = start;
+            int length = 0;
+            while(length <= constraints.getMaxLength()) {
+                node = large.next(node, random::nextInt);
+                if(node < 0 || node == constraints.getEnd()
+                        || constraints.isBanned(node)) {
+                    break;
+                }
+                buffer[Math.min(length, buffer.length-1)] = node;
+                length++;
+            }
+            if(node == constraints.getEnd()
+                    && constraints.isSatisfied(buffer, length)) {
+                accepted++;
+            }
+        }
+        time = System.nanoTime() - time;
+        System.out.printf("  generating and discarding: %d of %d satisfied "
+                + "in %.1fms%n", accepted, generated, time / 1e6);
+    }
+    
+    /**
+     * Compares the beam search and the sampler with all sequences of the
+     * given chain that satisfy the given constraints.
+     * 
+     * @param search search over the chain
+     * @param constraints constraints of the sequences
+     */
+    private static void check(ChainSearch<String> search,
+            ChainSearch.Constraints constraints) {
+        final FrozenChain<String> chain = search.getChain();
+        final Map<String, Double> all = new HashMap<>();
+        enumerate(chain, constraints, 0, new int[0], 0, all);
+        double total = 0;
+        for(double p : all.values()) {
+            total += p;
+        }
+        System.out.printf("End %d, length %d to %d: %d sequences, "
+                + "probability %.9f%n", constraints.getEnd(),
+                constraints.getMinLength(), constraints.getMaxLength(),
+                all.size(), total);
+        
+        //Beam wide enough to be exact
+        final List<String> expected = new ArrayList<>(all.keySet());
+        expected.sort((x, y) -> Double.compare(all.get(y), all.get(x)));
+        final List<ChainSearch.ScoredSequence> best =
+                search.beamSearch(0, constraints, 10000, 5);
+        boolean same = best.size() == Math.min(5, expected.size());
+        for(int i=0; i<best.size(); i++) {
+            final String ids = Arrays.toString(best.get(i).getIds());
+            same &= Math.abs(all.get(ids)
+                    - Math.exp(best.get(i).getLogProbability())) < 1e-12
+                    && Math.abs(all.get(ids) - all.get(expected.get(i)))
+                    < 1e-12;
+        }
+        System.out.println("  beam search: " + best.get(0) + " ... "
+                + same);
+        
+        final ChainSearch<String>.Sampler sampler =
+                search.sampler(0, constraints);
+        System.out.println("  sampler probability: "
+                + (Math.abs(sampler.getProbability() - total) < 1e-12));
+        
+        final int samples = 1000000;
+        final Map<String, Integer> counts = new HashMap<>();
+        final int[] buffer = new int[constraints.getMaxLength()];
+        final SplittableRandom random = new SplittableRandom(42);
+        for(int i=0; i<samples; i++) {
+            final int length = sampler.sample(random::nextInt, buffer);
+            counts.merge(Arrays.toString(Arrays.copyOf(buffer, length)), 1,
+                    Integer::sum);
+        }
+        double distance = 0;
+        for(Map.Entry<String, Double> entry : all.entrySet()) {
+            distance += Math.abs(entry.getValue() / total
+                    - counts.getOrDefault(entry.getKey(), 0)
+                    / (double)samples);
+        }
+        System.out.printf("  sampled: %d sequences, all valid: %b, "
+                + "total variation distance: %.4f%n", counts.size(),
+                all.keySet().containsAll(counts.keySet()), distance / 2);
+    }
+    
+    /**
+     * Adds all sequences that satisfy the given constraints after the given
+     * one with their probabilities.
+     * 
+     * @param chain chain
+     * @param constraints constraints of the sequences
+     * @param node last node
+     * @param ids nodes so far
+     * @param p probability so far
+     * @param all sequences with their probabilities
+     */
+    private static void enumerate(FrozenChain<String> chain,
+            ChainSearch.Constraints constraints, int node, int[] ids,
+            double p, Map<String, Double> all) {
+        final double probability = ids.length == 0 ? 1 : p;
+        for(int e=chain.getEdgeStart(node); e<chain.getEdgeEnd(node); e++) {
+            final int next = chain.getTarget(e);
+            final double q = probability * chain.getEdgeWeight(node, e)
+                    / chain.getTotalWeights(node);
+            if(next == constraints.getEnd()) {
+                if(ids.length >= constraints.getMinLength()) {
+                    all.merge(Arrays.toString(ids), q, Double::sum);
+                }
+                continue;
+            }
+            if(constraints.isBanned(next)
+                    || ids.length == constraints.getMaxLength()) {
+                continue;
+            }
+            
+            final int[] longer = Arrays.copyOf(ids, ids.length+1);
+            longer[ids.length] = next;
+            if(constraints.getEnd() < 0
+                    && (longer.length == constraints.getMaxLength()
+                    || chain.getEdgeStart(next) == chain.getEdgeEnd(next))) {
+                if(longer.length >= constraints.getMinLength()) {
+                    all.merge(Arrays.toString(longer), q, Double::sum);
+                }
+                continue;
+            }
+            enumerate(chain, constraints, next, longer, q, all);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+
+/**
+ * ShardedTraining test.
+ * Trains a chain on synthetic shards once sequentially and once in parallel
+ * on a fork-join pool and compares the resulting weights and the training
+ * throughput, for a few large shards and for many small ones, like
+ * paragraphs.
+ * 
+ * @author Sebastian Gössl
+ */
+public class ShardedTrainingTest {
+    
+    public static void main(String[] args) {
+        
+        compare("Large shards", shards(64, 50000));
+        compare("Paragraphs", shards(20000, 160));
+    }
+    
+    
+    
+    /**
+     * Generates shards with a skewed vocabulary, like paragraphs of natural
+     * text.
+     * 
+     * @param count number of shards
+     * @param length number of tokens per shard
+     * @return shards
+     */
+    private static List<List<Integer>> shards(int count, int length) {
+        final Random rand = new Random(42);
+        final List<List<Integer>> shards = new ArrayList<>();
+        for(int i=0; i<count; i++) {
+            final List<Integer> shard = new ArrayList<>();
+            for(int j=0; j<length; j++) {
+                shard.add((int)Math.abs(rand.nextGaussian() * 1000));
+            }
+            shards.add(shard);
+        }
+        return shards;
+    }
+    
+    /**
+     * Trains a chain on the given shards sequentially and in parallel and
+     * prints the throughputs and if the weights are the same.
+     * 
+     * @param name name of the shards
+     * @param shards shards to train
+     */
+    private static void compare(String name, List<List<Integer>> shards) {
+        long tokens = 0;
+        for(List<Integer> shard : shards) {
+            tokens += shard.size();
+        }
+        
+        //Sequential
+        long begin = System.nanoTime();
+        final MarkovChain<Integer> sequential = new MarkovChain<>();
+        final MarkovNode<Integer> start = sequential.getOrCreateNode(-1);
+        for(List<Integer> shard : shards) {
+            MarkovNode<Integer> current = start;
+            for(Integer token : shard) {
+                current = current.apply(sequential, token);
+            }
+        }
+        long end = System.nanoTime();
+        System.out.printf("%s (%d shards)%n", name, shards.size());
+        System.out.printf("Sequential: %12.0f tokens/s%n",
+                tokens / ((end-begin) / 1e9));
+        
+        //Parallel
+        begin = System.nanoTime();
+        final MarkovChain<Integer> parallel = ForkJoinPool.commonPool()
+                .invoke(new ShardedTraining<>(shards, -1));
+        end = System.nanoTime();
+        System.out.printf("Parallel:   %12.0f tokens/s (%d threads)%n",
+                tokens / ((end-begin) / 1e9),
+                ForkJoinPool.commonPool().getParallelism());
+        
+        
+        //Compare
+        boolean equal = sequential.size() == parallel.size();
+        for(MarkovNode<Integer> node : sequential) {
+            final MarkovNode<Integer> other = parallel.getNode(node.getData());
+            equal &= other != null
+                    && new HashMap<>(node).equals(new HashMap<>(other));
+        }
+        System.out.println("Same weights: " + equal);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+/**
+ * Snapshot test.
+ * Trains a snapshot chain and a plain chain on the same feed, prunes both
+ * in between, and compares every few versions with a full freeze of the
+ * plain chain. Then lets threads walk over the versions while another one
+ * keeps training and publishing, and compares the time to publish a
+ * version copy-on-write with a full freeze.
+ * 
+ * @author Sebastian Gössl
+ */
+public class SnapshotTest {
+    
+    public static void main(String[] args) throws InterruptedException {
+        
+        //Same feed into both chains, versions every 10000 updates
+        final Random rand = new Random(42);
+        final SnapshotChain<Integer> live = new SnapshotChain<>();
+        live.setPublishInterval(10000);
+        final MarkovChain<Integer> reference = new MarkovChain<>();
+        boolean same = true;
+        int previous = 0;
+        for(int i=1; i<=1000000; i++) {
+            final int token = token(rand, 5000);
+            live.accept(previous, token);
+            reference.getOrCreateNode(previous)
+                    .increment(reference.getOrCreateNode(token), 1);
+            previous = token;
+            
+            if(i == 500000) {
+                live.update(chain -> chain.pruneBelow(2));
+                reference.pruneBelow(2);
+            }
+            if(i % 100000 == 0) {
+                same &= same(live.publish(), reference);
+            }
+        }
+        System.out.println("Versions: " + live.getVersion()
+                + ", same as a full freeze: " + same);
+        
+        
+        //Readers walk over the versions while a writer trains
+        final SnapshotChain<Integer> shared = new SnapshotChain<>();
+        shared.setPublishInterval(50000);
+        final int batches = 50000;
+        final AtomicBoolean training = new AtomicBoolean(true);
+        final AtomicLong walks = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final List<Thread> readers = new ArrayList<>();
+        for(int r=0; r<2; r++) {
+            final long seed = r;
+            readers.add(new Thread(() -> {
+                final SplittableRandom random = new SplittableRandom(seed);
+                long version = -1;
+                while(training.get()) {
+                    //Leave the only core to the writer now and then
+                    Thread.yield();
+                    try {
+                        //One version for the whole walk
+                        final FrozenChain<Integer> snapshot =
+                                shared.snapshot();
+                        if(shared.getVersion() < version) {
+                            errors.incrementAndGet();
+                        }
+                        version = shared.getVersion();
+                        int node = random.nextInt(snapshot.size());
+                        for(int step=0; step<50; step++) {
+                            final int next =
+                                    snapshot.next(node, random::nextInt);
+                            if(next < 0) {
+                                break;
+                            }
+                            if(snapshot.getWeight(node, next) <= 0) {
+                                errors.incrementAndGet();
+                            }
+                            node = next;
+                        }
+                        walks.incrementAndGet();
+                    } catch(RuntimeException ex) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        //Readers start on the first version
+        shared.train(sentence(rand));
+        shared.publish();
+        readers.forEach(Thread::start);
+        
+        long time = System.nanoTime();
+        for(int b=0; b<batches; b++) {
+            shared.train(sentence(rand));
+        }
+        time = System.nanoTime() - time;
+        training.set(false);
+        for(Thread reader : readers) {
+            reader.join();
+        }
+        System.out.printf("Concurrent: %.1fM updates/s, %d versions, "
+                + "%d walks, errors: %d%n",
+                batches * 99 / (time / 1e3), shared.getVersion(),
+                walks.get(), errors.get());
+        
+        //Fewer versions, less copying
+        for(long interval : new long[] {10000, 100000, 1000000}) {
+            final SnapshotChain<Integer> alone = new SnapshotChain<>();
+            alone.setPublishInterval(interval);
+            time = System.nanoTime();
+            for(int b=0; b<batches; b++) {
+                alone.train(sentence(rand));
+            }
+            time = System.nanoTime() - time;
+            System.out.printf("Interval %d: %.1fM updates/s, %d versions%n",
+                    interval, batches * 99 / (time / 1e3),
+                    alone.getVersion());
+        }
+        
+        //One changed node against all of them
+        final int runs = 20;
+        long incremental = 0;
+        long full = 0;
+        for(int run=0; run<runs; run++) {
+            shared.accept(token(rand, 100000), token(rand, 100000));
+            time = System.nanoTime();
+            shared.publish();
+            incremental += System.nanoTime() - time;
+            
+            shared.update(chain -> {});
+            time = System.nanoTime();
+            shared.publish();
+            full += System.nanoTime() - time;
+        }
+        System.out.printf("Publishing %d nodes, %d edges: copy-on-write "
+                + "%.1fms, full freeze %.1fms%n", shared.snapshot().size(),
+                shared.snapshot().getEdgeCount(), incremental / 1e6 / runs,
+                full / 1e6 / runs);
+    }
+    
+    /**
+     * Returns a random token with a skewed distribution.
+     * 
+     * @param rand random number generator
+     * @param vocabulary number of distinct tokens
+     * @return random token
+     */
+    private static int token(Random rand, int vocabulary) {
+        return (int)Math.pow(vocabulary, rand.nextDouble()) - 1;
+    }
+    
+    /**
+     * Returns a random sentence of 100 tokens out of a vocabulary of 100000.
+     * 
+     * @param rand random number generator
+     * @return random sentence
+     */
+    private static List<Integer> sentence(Random rand) {
+        final List<Integer> sentence = new ArrayList<>(100);
+        for(int i=0; i<100; i++) {
+            sentence.add(token(rand, 100000));
+        }
+        return sentence;
+    }
+    
+    /**
+     * Returns if the given version has the same weights as the given chain.
+     * 
+     * @param snapshot version
+     * @param reference chain
+     * @return if the weights are the same
+     */
+    private static boolean same(FrozenChain<Integer> snapshot,
+            MarkovChain<Integer> reference) {
+        boolean same = snapshot.getEdgeCount()
+                == reference.getTransitionCount();
+        for(MarkovNode<Integer> from : reference) {
+            final int i = snapshot.getId(from.getData());
+            for(MarkovNode<Integer> to : from.keySet()) {
+                same &= snapshot.getWeight(i, snapshot.getId(to.getData()))
+                        == from.getWeight(to);
+            }
+        }
+        return same;
+    }
+}
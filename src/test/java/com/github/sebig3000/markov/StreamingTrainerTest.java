@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Random;
+
+
+
+/**
+ * StreamingTrainer test.
+ * Trains a chain on synthetic paragraphs and checks the number of trained
+ * words and paragraphs, outputs the throughput and generates a paragraph.
+ * If a path is given as argument, that file is trained on instead.
+ * 
+ * @author Sebastian Gössl
+ */
+public class StreamingTrainerTest {
+    
+    public static void main(String[] args) throws IOException {
+        
+        final MarkovChain<String> chain = new MarkovChain<>();
+        final StreamingTrainer trainer =
+                new StreamingTrainer(chain, "$", "\n");
+        
+        if(args.length > 0) {
+            trainer.train(Paths.get(args[0]));
+            
+        } else {
+            //Paragraphs of lines of words, separated by empty lines
+            final Random rand = new Random(42);
+            final StringBuilder text = new StringBuilder();
+            final int paragraphs = 10000;
+            int words = 0;
+            for(int p=0; p<paragraphs; p++) {
+                for(int line=rand.nextInt(5)+1; line>0; line--) {
+                    for(int w=rand.nextInt(10)+1; w>0; w--) {
+                        text.append('w')
+                                .append((int)Math.abs(rand.nextGaussian()*100))
+                                .append(w>1 ? "  " : "");
+                        words++;
+                    }
+                    text.append('\n');
+                }
+                text.append(p%2==0 ? "\n" : "   \r\n\n");
+            }
+            
+            trainer.train(new StringReader(text.toString()));
+            System.out.println("Trained words correct: "
+                    + (trainer.getTokenCount() == words));
+            System.out.println("Paragraphs correct: "
+                    + (chain.getNode("$").getTotalWeights() == paragraphs));
+        }
+        
+        System.out.printf("%d words in %.3f s: %.0f words/s%n",
+                trainer.getTokenCount(), trainer.getNanos() / 1e9,
+                trainer.getTokensPerSecond());
+        
+        final Iterator<String> iterator = chain.getNode("$").iterator();
+        while(iterator.hasNext()) {
+            final String word = iterator.next();
+            System.out.print(word.equals("\n") ? word : (word + ' '));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+
+/**
+ * TokenDictionary test.
+ * First lets several threads add overlapping tokens at once and checks that
+ * the ids are dense and map back to their tokens. Then freezes several
+ * chains over the same vocabulary, with a dictionary each and with one
+ * shared dictionary, compares the heap both need and checks that a chain
+ * moved onto the shared dictionary kept its weights.
+ * 
+ * @author Sebastian Gössl
+ */
+public class TokenDictionaryTest {
+    
+    public static void main(String[] args) throws InterruptedException {
+        
+        //Concurrent adding
+        final TokenDictionary<String> concurrent = new TokenDictionary<>();
+        final Thread[] threads = new Thread[4];
+        for(int t=0; t<threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(() -> {
+                final Random rand = new Random(seed);
+                for(int i=0; i<1000000; i++) {
+                    concurrent.getOrAddId("t" + rand.nextInt(100000));
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        boolean dense = true;
+        for(int id=0; id<concurrent.size(); id++) {
+            dense &= concurrent.getId(concurrent.getToken(id)) == id;
+        }
+        System.out.println("Tokens: " + concurrent.size()
+                + ", dense and consistent: " + dense);
+        
+        
+        //Many chains over the same vocabulary
+        final List<MarkovChain<String>> chains = new ArrayList<>();
+        for(int c=0; c<4; c++) {
+            final Random rand = new Random(c);
+            final MarkovChain<String> chain = new MarkovChain<>();
+            MarkovNode<String> current = chain.getOrCreateNode("$");
+            for(int i=0; i<200000; i++) {
+                final int token = (int)Math.abs(rand.nextGaussian() * 5000);
+                current = current.apply(chain, "w" + token);
+            }
+            chains.add(chain);
+        }
+        
+        long before = Heap.used();
+        final List<FrozenChain<String>> separate = new ArrayList<>();
+        for(MarkovChain<String> chain : chains) {
+            separate.add(chain.freeze());
+        }
+        final long separateSize = Heap.used() - before;
+        
+        before = Heap.used();
+        final TokenDictionary<String> shared = new TokenDictionary<>();
+        final List<FrozenChain<String>> sharing = new ArrayList<>();
+        for(MarkovChain<String> chain : chains) {
+            sharing.add(chain.freeze(shared));
+        }
+        final long sharedSize = Heap.used() - before;
+        System.out.printf("Separate dictionaries: %d bytes, "
+                + "shared dictionary: %d bytes%n", separateSize, sharedSize);
+        
+        
+        //A chain moved onto the shared dictionary keeps its weights
+        final FrozenChain<String> original = separate.get(3);
+        final FrozenChain<String> moved = original.withDictionary(shared);
+        boolean equal = moved.getEdgeCount() == original.getEdgeCount();
+        for(int i=0; i<original.size(); i++) {
+            final int id = moved.getId(original.getData(i));
+            equal &= original.getTotalWeights(i) == moved.getTotalWeights(id);
+            for(int e=original.getEdgeStart(i); e<original.getEdgeEnd(i);
+                    e++) {
+                final int target =
+                        moved.getId(original.getData(original.getTarget(e)));
+                equal &= original.getEdgeWeight(i, e)
+                        == moved.getWeight(id, target);
+            }
+        }
+        System.out.println("Same weights on the shared dictionary: " + equal);
+        
+        //Keep the chains reachable until their memory has been measured
+        System.out.println(separate.size() + sharing.size() + " chains");
+    }
+}
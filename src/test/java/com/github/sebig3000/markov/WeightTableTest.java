@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2020 Sebastian Gössl
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.github.sebig3000.markov;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+
+
+/**
+ * WeightTable test.
+ * First applies the same random operations to a WeightMap with each storage
+ * and a plain HashMap and checks that they end up with the same content.
+ * Then compares both storages by training throughput (accept calls per
+ * second) and by the heap they retain.
+ * 
+ * @author Sebastian Gössl
+ */
+public class WeightTableTest {
+    
+    public static void main(String[] args) {
+        
+        //Consistency
+        final Random rand = new Random(42);
+        final Map<Integer, Integer> expected = new HashMap<>();
+        final WeightMap<Integer> hash =
+                new WeightMap<>(WeightMap.Storage.HASH_MAP);
+        final WeightMap<Integer> table =
+                new WeightMap<>(WeightMap.Storage.TABLE);
+        final WeightMap<Integer> longTable =
+                new WeightMap<>(WeightMap.Storage.LONG_TABLE);
+        for(int i=0; i<1000000; i++) {
+            final Integer key = rand.nextInt(1000);
+            switch(rand.nextInt(4)) {
+                case 0:
+                    expected.remove(key);
+                    hash.remove(key);
+                    table.remove(key);
+                    longTable.remove(key);
+                    break;
+                case 1:
+                    expected.put(key, i);
+                    hash.put(key, i);
+                    table.put(key, i);
+                    longTable.put(key, i);
+                    break;
+                default:
+                    expected.merge(key, 1, Integer::sum);
+                    hash.accept(key);
+                    table.accept(key);
+                    longTable.accept(key);
+                    break;
+            }
+        }
+        System.out.println("HashMap storage consistent: "
+                + expected.equals(hash));
+        System.out.println("Table storage consistent: "
+                + expected.equals(table));
+        System.out.println("Long table storage consistent: "
+                + expected.equals(longTable));
+        System.out.println("Same total weights: "
+                + (hash.getTotalWeights() == table.getTotalWeights()
+                && hash.getTotalWeights() == longTable.getTotalWeights()));
+        
+        
+        //Performance
+        for(WeightMap.Storage storage : WeightMap.Storage.values()) {
+            //Warm up
+            train(storage, 100);
+            
+            final long begin = System.nanoTime();
+            final WeightMap<?>[] maps = train(storage, 1000);
+            final long end = System.nanoTime();
+            
+            System.out.printf("%-10s %12.0f accepts/s, %6d bytes/key%n",
+                    storage, 1000*1000*10 / ((end-begin) / 1e9),
+                    Heap.used() / (1000*1000));
+            //Keep the maps reachable until their memory has been measured
+            maps[0].clear();
+        }
+    }
+    
+    /**
+     * Trains the given number of maps with 1000 keys, each incremented 10
+     * times.
+     * 
+     * @param storage storage of the maps
+     * @param n number of maps
+     * @return trained maps
+     */
+    private static WeightMap<?>[] train(WeightMap.Storage storage, int n) {
+        final Integer[] keys = new Integer[1000];
+        for(int i=0; i<keys.length; i++) {
+            keys[i] = i;
+        }
+        
+        final WeightMap<?>[] maps = new WeightMap<?>[n];
+        for(int i=0; i<n; i++) {
+            final WeightMap<Integer> map = new WeightMap<>(storage);
+            for(int j=0; j<10; j++) {
+                for(Integer key : keys) {
+                    map.accept(key);
+                }
+            }
+            maps[i] = map;
+        }
+        return maps;
+    }
+}